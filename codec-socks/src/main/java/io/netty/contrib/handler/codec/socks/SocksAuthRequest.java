@@ -72,6 +72,11 @@ public final class SocksAuthRequest extends SocksRequest {
         return password;
     }
 
+    @Override
+    int encodedLength() {
+        return 3 + username.length() + password.length();
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         buffer.writeByte(SUBNEGOTIATION_VERSION.byteValue());
@@ -18,8 +18,7 @@ package io.netty.contrib.handler.codec.socks;
 import io.netty5.buffer.Buffer;
 import java.nio.charset.StandardCharsets;
 import io.netty5.util.NetUtil;
-
-import java.net.IDN;
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
 
 import static java.util.Objects.requireNonNull;
 
@@ -36,6 +35,16 @@ public final class SocksCmdRequest extends SocksRequest {
     private final int port;
 
     public SocksCmdRequest(SocksCmdType cmdType, SocksAddressType addressType, String host, int port) {
+        this(cmdType, addressType, host, port, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param trusted {@code true} if {@code host} has been decoded from the wire by {@link SocksCmdRequestDecoder},
+     *                which means a {@link SocksAddressType#DOMAIN} host is US-ASCII already and needs no IDN conversion
+     */
+    SocksCmdRequest(SocksCmdType cmdType, SocksAddressType addressType, String host, int port, boolean trusted) {
         super(SocksRequestType.CMD);
         requireNonNull(cmdType, "cmdType");
         requireNonNull(addressType, "addressType");
@@ -47,7 +56,10 @@ public final class SocksCmdRequest extends SocksRequest {
                 }
                 break;
             case DOMAIN:
-                String asciiHost = IDN.toASCII(host);
+                if (trusted) {
+                    break;
+                }
+                String asciiHost = SocksIdnUtil.toAscii(host);
                 if (asciiHost.length() > 255) {
                     throw new IllegalArgumentException(host + " IDN: " + asciiHost + " exceeds 255 char limit");
                 }
@@ -94,7 +106,7 @@ public final class SocksCmdRequest extends SocksRequest {
      * @return host that is used as a parameter in {@link SocksCmdType}
      */
     public String host() {
-        return addressType == SocksAddressType.DOMAIN ? IDN.toUnicode(host) : host;
+        return addressType == SocksAddressType.DOMAIN ? SocksIdnUtil.toUnicode(host) : host;
     }
 
     /**
@@ -106,6 +118,20 @@ public final class SocksCmdRequest extends SocksRequest {
         return port;
     }
 
+    @Override
+    int encodedLength() {
+        switch (addressType) {
+            case IPv4:
+                return 10;
+            case IPv6:
+                return 22;
+            case DOMAIN:
+                return 7 + host.length();
+            default:
+                return 4;
+        }
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         buffer.writeByte(protocolVersion().byteValue());
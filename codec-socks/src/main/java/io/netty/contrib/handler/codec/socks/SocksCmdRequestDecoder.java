@@ -81,7 +81,7 @@ public class SocksCmdRequestDecoder extends ByteToMessageDecoder {
                         buffer.skipReadableBytes(1);
                         String host = buffer.readCharSequence(fieldLength, StandardCharsets.US_ASCII).toString();
                         int port = buffer.readUnsignedShort();
-                        ctx.fireChannelRead(new SocksCmdRequest(cmdType, addressType, host, port));
+                        ctx.fireChannelRead(new SocksCmdRequest(cmdType, addressType, host, port, true));
                         break;
                     }
                     case IPv6: {
@@ -18,6 +18,7 @@ package io.netty.contrib.handler.codec.socks;
 import io.netty5.buffer.Buffer;
 import java.nio.charset.StandardCharsets;
 import io.netty5.util.NetUtil;
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
 
 import java.net.IDN;
 
@@ -73,7 +74,7 @@ public final class SocksCmdResponse extends SocksResponse {
                     }
                     break;
                 case DOMAIN:
-                    String asciiHost = IDN.toASCII(host);
+                    String asciiHost = SocksIdnUtil.toAscii(host);
                     if (asciiHost.length() > 255) {
                         throw new IllegalArgumentException(host + " IDN: " + asciiHost + " exceeds 255 char limit");
                     }
@@ -124,7 +125,7 @@ public final class SocksCmdResponse extends SocksResponse {
      *         or null when there was no host specified during response construction
      */
     public String host() {
-        return host != null && addressType == SocksAddressType.DOMAIN ? IDN.toUnicode(host) : host;
+        return host != null && addressType == SocksAddressType.DOMAIN ? SocksIdnUtil.toUnicode(host) : host;
     }
 
     /**
@@ -137,6 +138,20 @@ public final class SocksCmdResponse extends SocksResponse {
         return port;
     }
 
+    @Override
+    int encodedLength() {
+        switch (addressType) {
+            case IPv4:
+                return 10;
+            case IPv6:
+                return 22;
+            case DOMAIN:
+                return 7 + (host != null? host.length() : DOMAIN_ZEROED.length);
+            default:
+                return 4;
+        }
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         buffer.writeByte(protocolVersion().byteValue());
@@ -46,6 +46,11 @@ public final class SocksInitRequest extends SocksRequest {
         return Collections.unmodifiableList(authSchemes);
     }
 
+    @Override
+    int encodedLength() {
+        return 2 + authSchemes.size();
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         buffer.writeByte(protocolVersion().byteValue());
@@ -53,6 +53,15 @@ public abstract class SocksMessage {
         return protocolVersion;
     }
 
+    /**
+     * Returns the number of bytes {@link #encodeAsBuffer(Buffer)} writes, so that {@link SocksMessageEncoder} can
+     * allocate a buffer of the exact size.
+     */
+    int encodedLength() {
+        // Not overridden by a subclass outside this package; the buffer grows if this is not enough.
+        return 256;
+    }
+
     /**
      * @deprecated Do not use; this method was intended for an internal use only.
      */
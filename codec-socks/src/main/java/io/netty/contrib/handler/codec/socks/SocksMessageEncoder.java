@@ -29,7 +29,7 @@ public class SocksMessageEncoder extends MessageToByteEncoder<SocksMessage> {
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext ctx, SocksMessage msg) {
-        return ctx.bufferAllocator().allocate(256);
+        return ctx.bufferAllocator().allocate(msg.encodedLength());
     }
 
     @Override
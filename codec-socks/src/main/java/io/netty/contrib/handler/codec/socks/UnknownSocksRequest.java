@@ -30,6 +30,11 @@ public final class UnknownSocksRequest extends SocksRequest {
         super(SocksRequestType.UNKNOWN);
     }
 
+    @Override
+    int encodedLength() {
+        return 0;
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         // NOOP
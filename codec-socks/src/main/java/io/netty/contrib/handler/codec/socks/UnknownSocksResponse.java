@@ -30,6 +30,11 @@ public final class UnknownSocksResponse extends SocksResponse {
         super(SocksResponseType.UNKNOWN);
     }
 
+    @Override
+    int encodedLength() {
+        return 0;
+    }
+
     @Override
     public void encodeAsBuffer(Buffer buffer) {
         // NOOP
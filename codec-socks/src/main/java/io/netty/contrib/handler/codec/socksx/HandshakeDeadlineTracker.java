@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx;
+
+import io.netty5.util.concurrent.EventExecutor;
+import io.netty5.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A coarse, per-event-loop deadline tracker for handshake timeouts.
+ * <p>
+ * Scheduling a task on the event loop for every connection and cancelling it once the handshake completes costs
+ * an {@code O(log n)} insertion into and removal from the scheduled task queue, plus a new future per connection.
+ * This tracker instead keeps armed {@link Deadline}s in a hashed wheel of 10 millisecond buckets, linked
+ * through the {@link Deadline}s themselves, so arming and {@linkplain Deadline#cancel() cancelling} a deadline
+ * are {@code O(1)} and cancelling never allocates.  A single tick task per event loop expires the due buckets,
+ * and it is only scheduled while some deadline is armed.  Deadlines therefore fire up to one tick late.
+ * <p>
+ * An instance is bound to the event loop it was {@linkplain #get(EventExecutor) obtained} for; all its methods and
+ * those of the {@link Deadline}s armed on it must be called from that event loop.
+ */
+public final class HandshakeDeadlineTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(HandshakeDeadlineTracker.class);
+
+    static final long TICK_MILLIS = 10;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final FastThreadLocal<HandshakeDeadlineTracker> TRACKERS = new FastThreadLocal<>();
+
+    private final EventExecutor executor;
+    private final long startNanos;
+    private final Deadline[] wheel = new Deadline[WHEEL_SIZE];
+    private final Runnable tickTask = this::tick;
+    private long processedTick;
+    private long modCount;
+    private int armed;
+    private boolean tickScheduled;
+
+    private HandshakeDeadlineTracker(EventExecutor executor) {
+        this.executor = executor;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the tracker of the specified event loop, creating it if necessary.
+     *
+     * @throws IllegalStateException if not called from the specified event loop
+     */
+    public static HandshakeDeadlineTracker get(EventExecutor executor) {
+        requireNonNull(executor, "executor");
+        if (!executor.inEventLoop()) {
+            throw new IllegalStateException("must be called from the event loop of " + executor);
+        }
+        HandshakeDeadlineTracker tracker = TRACKERS.get();
+        if (tracker == null || tracker.executor != executor) {
+            tracker = new HandshakeDeadlineTracker(executor);
+            TRACKERS.set(tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Returns the event loop this tracker is bound to.
+     */
+    public EventExecutor executor() {
+        return executor;
+    }
+
+    /**
+     * Returns the number of currently armed deadlines.
+     */
+    public int armedDeadlines() {
+        return armed;
+    }
+
+    /**
+     * Arms the specified deadline so that its task runs once the specified delay has elapsed, unless it is
+     * {@linkplain Deadline#cancel() cancelled} first.  A deadline that is already armed is re-armed.
+     */
+    public void schedule(Deadline deadline, long delay, TimeUnit unit) {
+        requireNonNull(deadline, "deadline");
+        requireNonNull(unit, "unit");
+        assert executor.inEventLoop();
+
+        deadline.cancel();
+
+        final long delayNanos = Math.max(0, unit.toNanos(delay));
+        final long dueTick = (System.nanoTime() - startNanos + delayNanos + TICK_NANOS - 1) / TICK_NANOS;
+        deadline.tick = Math.max(dueTick, processedTick + 1);
+        link(deadline);
+
+        if (!tickScheduled) {
+            tickScheduled = true;
+            executor.schedule(tickTask, TICK_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void tick() {
+        tickScheduled = false;
+
+        final long currentTick = (System.nanoTime() - startNanos) / TICK_NANOS;
+        // Visiting one full round of buckets is enough to expire everything due, however late this tick runs.
+        final long lastTick = Math.min(currentTick, processedTick + WHEEL_SIZE);
+        for (long tick = processedTick + 1; tick <= lastTick; tick++) {
+            expire((int) (tick & WHEEL_MASK), currentTick);
+        }
+        processedTick = Math.max(processedTick, currentTick);
+
+        if (armed > 0 && !tickScheduled) {
+            tickScheduled = true;
+            executor.schedule(tickTask, TICK_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void expire(int bucket, long currentTick) {
+        Deadline deadline = wheel[bucket];
+        while (deadline != null) {
+            final Deadline next = deadline.next;
+            if (deadline.tick > currentTick) {
+                // Due in a later round of the wheel.
+                deadline = next;
+                continue;
+            }
+
+            unlink(deadline);
+            final long expectedModCount = modCount;
+            try {
+                deadline.task.run();
+            } catch (Throwable t) {
+                logger.warn("An exception was thrown by a handshake deadline task {}", deadline.task, t);
+            }
+            // Start over if the task armed or cancelled other deadlines, as 'next' may have moved.
+            deadline = expectedModCount == modCount ? next : wheel[bucket];
+        }
+    }
+
+    private void link(Deadline deadline) {
+        final int bucket = (int) (deadline.tick & WHEEL_MASK);
+        final Deadline head = wheel[bucket];
+        deadline.tracker = this;
+        deadline.prev = null;
+        deadline.next = head;
+        if (head != null) {
+            head.prev = deadline;
+        }
+        wheel[bucket] = deadline;
+        armed++;
+        modCount++;
+    }
+
+    void unlink(Deadline deadline) {
+        final Deadline prev = deadline.prev;
+        final Deadline next = deadline.next;
+        if (prev != null) {
+            prev.next = next;
+        } else {
+            wheel[(int) (deadline.tick & WHEEL_MASK)] = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        }
+        deadline.tracker = null;
+        deadline.prev = null;
+        deadline.next = null;
+        armed--;
+        modCount++;
+    }
+
+    /**
+     * A reusable deadline which runs its task when it expires.  The owner of a deadline usually creates it once
+     * and {@linkplain #schedule(Deadline, long, TimeUnit) arms} it for every handshake it times out.
+     */
+    public static final class Deadline {
+
+        private final Runnable task;
+        private HandshakeDeadlineTracker tracker;
+        private Deadline prev;
+        private Deadline next;
+        private long tick;
+
+        /**
+         * Creates a new deadline which runs the specified task when it expires.
+         */
+        public Deadline(Runnable task) {
+            this.task = requireNonNull(task, "task");
+        }
+
+        /**
+         * Returns {@code true} if this deadline is armed and has neither expired nor been cancelled yet.
+         */
+        public boolean isArmed() {
+            return tracker != null;
+        }
+
+        /**
+         * Disarms this deadline so that its task does not run.  Does nothing if it is not armed.
+         */
+        public void cancel() {
+            final HandshakeDeadlineTracker tracker = this.tracker;
+            if (tracker != null) {
+                tracker.unlink(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx;
+
+import io.netty5.util.internal.MathUtil;
+import io.netty5.util.internal.SystemPropertyUtil;
+
+import java.net.IDN;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Converts domain names between their Unicode and ASCII (IDNA) forms for the SOCKS messages.
+ * <p>
+ * A pure US-ASCII name, which is by far the most common case, is returned as-is after the label checks
+ * {@link IDN#toASCII(String)} would perform, without any IDNA processing. Other names are converted with
+ * {@link IDN} and the results are kept in a small, bounded, lock-free cache, whose size can be set with the
+ * {@code io.netty.contrib.socks.idnCacheSize} system property ({@code 0} disables it).
+ */
+public final class SocksIdnUtil {
+
+    private static final int MAX_LABEL_LENGTH = 63;
+    private static final String ACE_PREFIX = "xn--";
+
+    private static final AtomicReferenceArray<CacheEntry> TO_ASCII_CACHE;
+    private static final AtomicReferenceArray<CacheEntry> TO_UNICODE_CACHE;
+    private static final int CACHE_MASK;
+
+    static {
+        int cacheSize = SystemPropertyUtil.getInt("io.netty.contrib.socks.idnCacheSize", 256);
+        if (cacheSize > 0) {
+            cacheSize = MathUtil.findNextPositivePowerOfTwo(Math.min(cacheSize, 1 << 16));
+            TO_ASCII_CACHE = new AtomicReferenceArray<>(cacheSize);
+            TO_UNICODE_CACHE = new AtomicReferenceArray<>(cacheSize);
+            CACHE_MASK = cacheSize - 1;
+        } else {
+            TO_ASCII_CACHE = null;
+            TO_UNICODE_CACHE = null;
+            CACHE_MASK = 0;
+        }
+    }
+
+    /**
+     * Returns the same result as {@link IDN#toASCII(String)}.
+     *
+     * @throws IllegalArgumentException if the specified name is not a valid IDN
+     */
+    public static String toAscii(String name) {
+        if (isAscii(name)) {
+            checkLabels(name);
+            return name;
+        }
+        return convert(TO_ASCII_CACHE, name, true);
+    }
+
+    /**
+     * Returns the same result as {@link IDN#toUnicode(String)}.
+     */
+    public static String toUnicode(String name) {
+        if (isAscii(name) && !containsAcePrefix(name)) {
+            return name;
+        }
+        return convert(TO_UNICODE_CACHE, name, false);
+    }
+
+    /**
+     * Returns {@code true} if the specified string contains US-ASCII characters only.
+     */
+    public static boolean isAscii(String string) {
+        final int length = string.length();
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Performs the checks that {@link IDN#toASCII(String)} applies to the labels of a US-ASCII name.
+     */
+    private static void checkLabels(String name) {
+        final int length = name.length();
+        int labelStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) == '.') {
+                // An empty label is only allowed as the root label, i.e. "." or a trailing dot.
+                if (i == labelStart && length != 1) {
+                    throw new IllegalArgumentException("Empty label is not a legal name");
+                }
+                checkLabelLength(i - labelStart);
+                labelStart = i + 1;
+            }
+        }
+        checkLabelLength(length - labelStart);
+    }
+
+    private static void checkLabelLength(int labelLength) {
+        if (labelLength > MAX_LABEL_LENGTH) {
+            throw new IllegalArgumentException("The label in the input is too long");
+        }
+    }
+
+    /**
+     * Returns {@code true} if any label of the specified name starts with the ACE prefix {@code "xn--"}.
+     */
+    private static boolean containsAcePrefix(String name) {
+        final int length = name.length() - ACE_PREFIX.length();
+        for (int i = 0; i <= length; i++) {
+            if ((i == 0 || name.charAt(i - 1) == '.') &&
+                name.regionMatches(true, i, ACE_PREFIX, 0, ACE_PREFIX.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String convert(AtomicReferenceArray<CacheEntry> cache, String name, boolean toAscii) {
+        if (cache == null) {
+            return toAscii? IDN.toASCII(name) : IDN.toUnicode(name);
+        }
+
+        final int index = name.hashCode() & CACHE_MASK;
+        final CacheEntry entry = cache.get(index);
+        if (entry != null && entry.input.equals(name)) {
+            return entry.output;
+        }
+
+        final String output = toAscii? IDN.toASCII(name) : IDN.toUnicode(name);
+        cache.lazySet(index, new CacheEntry(name, output));
+        return output;
+    }
+
+    private static final class CacheEntry {
+        final String input;
+        final String output;
+
+        CacheEntry(String input, String output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    private SocksIdnUtil() { }
+}
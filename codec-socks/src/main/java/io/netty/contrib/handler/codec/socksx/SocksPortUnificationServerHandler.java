@@ -23,6 +23,7 @@ import io.netty.contrib.handler.codec.socksx.v4.Socks4ServerEncoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressEncoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialRequestDecoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerHandshakeDecoder;
 import io.netty5.handler.codec.ByteToMessageDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +32,7 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * Detects the version of the current SOCKS connection and initializes the pipeline with
- * {@link Socks4ServerDecoder} or {@link Socks5InitialRequestDecoder}.
+ * {@link Socks4ServerDecoder}, or with {@link Socks5InitialRequestDecoder} or {@link Socks5ServerHandshakeDecoder}.
  */
 public class SocksPortUnificationServerHandler extends ByteToMessageDecoder {
 
@@ -39,6 +40,7 @@ public class SocksPortUnificationServerHandler extends ByteToMessageDecoder {
             LoggerFactory.getLogger(SocksPortUnificationServerHandler.class);
 
     private final Socks5ServerEncoder socks5encoder;
+    private final boolean socks5HandshakeDecoder;
 
     /**
      * Creates a new instance with the default configuration.
@@ -52,9 +54,22 @@ public class SocksPortUnificationServerHandler extends ByteToMessageDecoder {
      * This constructor is useful when a user wants to use an alternative {@link Socks5AddressEncoder}.
      */
     public SocksPortUnificationServerHandler(Socks5ServerEncoder socks5encoder) {
+        this(socks5encoder, false);
+    }
+
+    /**
+     * Creates a new instance with the specified {@link Socks5ServerEncoder}.
+     *
+     * @param socks5HandshakeDecoder {@code true} to decode the whole SOCKS5 handshake with a single
+     *                               {@link Socks5ServerHandshakeDecoder}, so that the handler which answers the
+     *                               requests does not need to add the decoder of the next request to the pipeline.
+     *                               {@code false} to add a {@link Socks5InitialRequestDecoder} only.
+     */
+    public SocksPortUnificationServerHandler(Socks5ServerEncoder socks5encoder, boolean socks5HandshakeDecoder) {
         requireNonNull(socks5encoder, "socks5encoder");
 
         this.socks5encoder = socks5encoder;
+        this.socks5HandshakeDecoder = socks5HandshakeDecoder;
     }
 
     @Override
@@ -77,7 +92,8 @@ public class SocksPortUnificationServerHandler extends ByteToMessageDecoder {
         case SOCKS5:
             logKnownVersion(ctx, version);
             p.addAfter(ctx.name(), null, socks5encoder);
-            p.addAfter(ctx.name(), null, new Socks5InitialRequestDecoder());
+            p.addAfter(ctx.name(), null, socks5HandshakeDecoder? new Socks5ServerHandshakeDecoder()
+                                                               : new Socks5InitialRequestDecoder());
             break;
         default:
             logUnknownVersion(ctx, versionVal);
@@ -15,11 +15,10 @@
  */
 package io.netty.contrib.handler.codec.socksx.v4;
 
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
 import io.netty5.handler.codec.DecoderResult;
 import io.netty5.util.internal.StringUtil;
 
-import java.net.IDN;
-
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -52,6 +51,16 @@ public class DefaultSocks4CommandRequest extends AbstractSocks4Message implement
      * @param userId the {@code USERID} field of the request
      */
     public DefaultSocks4CommandRequest(Socks4CommandType type, String dstAddr, int dstPort, String userId) {
+        this(type, dstAddr, dstPort, userId, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param trusted {@code true} if {@code dstAddr} has been decoded from the wire by {@link Socks4ServerDecoder},
+     *                which means it is US-ASCII already and needs no IDN conversion
+     */
+    DefaultSocks4CommandRequest(Socks4CommandType type, String dstAddr, int dstPort, String userId, boolean trusted) {
         requireNonNull(type, "type");
         requireNonNull(dstAddr, "dstAddr");
         if (dstPort <= 0 || dstPort >= 65536) {
@@ -61,7 +70,7 @@ public class DefaultSocks4CommandRequest extends AbstractSocks4Message implement
 
         this.userId = userId;
         this.type = type;
-        this.dstAddr = IDN.toASCII(dstAddr);
+        this.dstAddr = trusted? dstAddr : SocksIdnUtil.toAscii(dstAddr);
         this.dstPort = dstPort;
     }
 
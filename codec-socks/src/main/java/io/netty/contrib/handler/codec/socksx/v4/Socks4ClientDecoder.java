@@ -22,8 +22,11 @@ import io.netty5.handler.codec.DecoderException;
 import io.netty5.handler.codec.DecoderResult;
 import io.netty5.util.NetUtil;
 
+import static java.util.Objects.requireNonNull;
+
 /**
- * Decodes a single {@link Socks4CommandResponse} from the inbound {@link Buffer}s.
+ * Decodes a single {@link Socks4CommandResponse} from the inbound {@link Buffer}s, or both replies of a
+ * {@link Socks4CommandType#BIND} request if it is created for one.
  * On successful decode, this decoder will forward the received data to the next handler, so that
  * other handler can remove this decoder later.  On failed decode, this decoder will discard the
  * received data, so that other handler closes the connection later.
@@ -36,9 +39,20 @@ public class Socks4ClientDecoder extends ByteToMessageDecoder {
         FAILURE
     }
 
+    private final int expectedResponses;
+    private int responses;
     private State state = State.START;
 
     public Socks4ClientDecoder() {
+        this(Socks4CommandType.CONNECT);
+    }
+
+    /**
+     * Creates a new instance which decodes the responses to a command of the specified type: two for
+     * {@link Socks4CommandType#BIND}, unless the first one is a failure, and one for the others.
+     */
+    public Socks4ClientDecoder(Socks4CommandType commandType) {
+        expectedResponses = requireNonNull(commandType, "commandType") == Socks4CommandType.BIND? 2 : 1;
         setSingleDecode(true);
     }
 
@@ -61,6 +75,10 @@ public class Socks4ClientDecoder extends ByteToMessageDecoder {
                 final String dstAddr = NetUtil.intToIpAddress(in.readInt());
 
                 ctx.fireChannelRead(new DefaultSocks4CommandResponse(status, dstAddr, dstPort));
+                if (status == Socks4CommandStatus.SUCCESS && ++responses < expectedResponses) {
+                    // The second reply of a BIND request follows once the server has accepted a connection.
+                    break;
+                }
                 state = State.SUCCESS;
                 // fall-through
             }
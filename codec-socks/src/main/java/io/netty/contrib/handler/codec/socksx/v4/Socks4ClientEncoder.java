@@ -37,7 +37,12 @@ public final class Socks4ClientEncoder extends MessageToByteEncoder<Socks4Comman
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext ctx, Socks4CommandRequest msg) {
-        return ctx.bufferAllocator().allocate(256);
+        // VN, CD, DSTPORT, DSTIP, USERID and NULL, followed by the domain name and NULL for SOCKS4a.
+        int length = 9 + msg.userId().length();
+        if (!NetUtil.isValidIpV4Address(msg.dstAddr())) {
+            length += msg.dstAddr().length() + 1;
+        }
+        return ctx.bufferAllocator().allocate(length);
     }
 
     @Override
@@ -87,7 +87,7 @@ public class Socks4ServerDecoder extends ByteToMessageDecoder {
                     }
                     dstAddr = addr;
                 }
-                ctx.fireChannelRead(new DefaultSocks4CommandRequest(type, dstAddr, dstPort, userId));
+                ctx.fireChannelRead(new DefaultSocks4CommandRequest(type, dstAddr, dstPort, userId, true));
                 state = State.SUCCESS;
             }
             case SUCCESS: {
@@ -33,7 +33,7 @@ public final class Socks4ServerEncoder extends MessageToByteEncoder<Socks4Comman
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext ctx, Socks4CommandResponse msg) {
-        return ctx.bufferAllocator().allocate(256);
+        return ctx.bufferAllocator().allocate(8);
     }
 
     @Override
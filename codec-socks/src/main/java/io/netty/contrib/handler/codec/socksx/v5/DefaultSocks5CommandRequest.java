@@ -15,12 +15,11 @@
  */
 package io.netty.contrib.handler.codec.socksx.v5;
 
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
 import io.netty5.handler.codec.DecoderResult;
 import io.netty5.util.NetUtil;
 import io.netty5.util.internal.StringUtil;
 
-import java.net.IDN;
-
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -31,6 +30,7 @@ public final class DefaultSocks5CommandRequest extends AbstractSocks5Message imp
     private final Socks5CommandType type;
     private final Socks5AddressType dstAddrType;
     private final String dstAddr;
+    private Socks5BinaryAddress binaryDstAddr;
     private final int dstPort;
 
     public DefaultSocks5CommandRequest(
@@ -44,7 +44,7 @@ public final class DefaultSocks5CommandRequest extends AbstractSocks5Message imp
                 throw new IllegalArgumentException("dstAddr: " + dstAddr + " (expected: a valid IPv4 address)");
             }
         } else if (dstAddrType == Socks5AddressType.DOMAIN) {
-            dstAddr = IDN.toASCII(dstAddr);
+            dstAddr = SocksIdnUtil.toAscii(dstAddr);
             if (dstAddr.length() > 255) {
                 throw new IllegalArgumentException("dstAddr: " + dstAddr + " (expected: less than 256 chars)");
             }
@@ -64,6 +64,25 @@ public final class DefaultSocks5CommandRequest extends AbstractSocks5Message imp
         this.dstPort = dstPort;
     }
 
+    /**
+     * Creates a new instance from the binary form of the {@code DST.ADDR} field. The string form returned by
+     * {@link #dstAddr()} is only computed when requested.
+     */
+    public DefaultSocks5CommandRequest(Socks5CommandType type, Socks5BinaryAddress dstAddr, int dstPort) {
+        requireNonNull(type, "type");
+        requireNonNull(dstAddr, "dstAddr");
+
+        if (dstPort < 0 || dstPort > 65535) {
+            throw new IllegalArgumentException("dstPort: " + dstPort + " (expected: 0~65535)");
+        }
+
+        this.type = type;
+        dstAddrType = dstAddr.type();
+        this.dstAddr = null;
+        binaryDstAddr = dstAddr;
+        this.dstPort = dstPort;
+    }
+
     @Override
     public Socks5CommandType type() {
         return type;
@@ -76,7 +95,16 @@ public final class DefaultSocks5CommandRequest extends AbstractSocks5Message imp
 
     @Override
     public String dstAddr() {
-        return dstAddr;
+        return dstAddr != null? dstAddr : binaryDstAddr.toString();
+    }
+
+    @Override
+    public Socks5BinaryAddress binaryDstAddr() {
+        Socks5BinaryAddress binaryDstAddr = this.binaryDstAddr;
+        if (binaryDstAddr == null) {
+            this.binaryDstAddr = binaryDstAddr = Socks5BinaryAddress.valueOf(dstAddrType, dstAddr);
+        }
+        return binaryDstAddr;
     }
 
     @Override
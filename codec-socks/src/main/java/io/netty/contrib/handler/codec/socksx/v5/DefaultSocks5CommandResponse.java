@@ -15,12 +15,11 @@
  */
 package io.netty.contrib.handler.codec.socksx.v5;
 
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
 import io.netty5.handler.codec.DecoderResult;
 import io.netty5.util.NetUtil;
 import io.netty5.util.internal.StringUtil;
 
-import java.net.IDN;
-
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -31,6 +30,7 @@ public final class DefaultSocks5CommandResponse extends AbstractSocks5Message im
     private final Socks5CommandStatus status;
     private final Socks5AddressType bndAddrType;
     private final String bndAddr;
+    private Socks5BinaryAddress binaryBndAddr;
     private final int bndPort;
 
     public DefaultSocks5CommandResponse(Socks5CommandStatus status, Socks5AddressType bndAddrType) {
@@ -47,7 +47,7 @@ public final class DefaultSocks5CommandResponse extends AbstractSocks5Message im
                     throw new IllegalArgumentException("bndAddr: " + bndAddr + " (expected: a valid IPv4 address)");
                 }
             } else if (bndAddrType == Socks5AddressType.DOMAIN) {
-                bndAddr = IDN.toASCII(bndAddr);
+                bndAddr = SocksIdnUtil.toAscii(bndAddr);
                 if (bndAddr.length() > 255) {
                     throw new IllegalArgumentException("bndAddr: " + bndAddr + " (expected: less than 256 chars)");
                 }
@@ -67,6 +67,24 @@ public final class DefaultSocks5CommandResponse extends AbstractSocks5Message im
         this.bndPort = bndPort;
     }
 
+    /**
+     * Creates a new instance from the binary form of the {@code BND.ADDR} field. The string form returned by
+     * {@link #bndAddr()} is only computed when requested.
+     */
+    public DefaultSocks5CommandResponse(Socks5CommandStatus status, Socks5BinaryAddress bndAddr, int bndPort) {
+        requireNonNull(status, "status");
+        requireNonNull(bndAddr, "bndAddr");
+
+        if (bndPort < 0 || bndPort > 65535) {
+            throw new IllegalArgumentException("bndPort: " + bndPort + " (expected: 0~65535)");
+        }
+        this.status = status;
+        bndAddrType = bndAddr.type();
+        this.bndAddr = null;
+        binaryBndAddr = bndAddr;
+        this.bndPort = bndPort;
+    }
+
     @Override
     public Socks5CommandStatus status() {
         return status;
@@ -79,7 +97,17 @@ public final class DefaultSocks5CommandResponse extends AbstractSocks5Message im
 
     @Override
     public String bndAddr() {
-        return bndAddr;
+        Socks5BinaryAddress binaryBndAddr = this.binaryBndAddr;
+        return bndAddr != null || binaryBndAddr == null? bndAddr : binaryBndAddr.toString();
+    }
+
+    @Override
+    public Socks5BinaryAddress binaryBndAddr() {
+        Socks5BinaryAddress binaryBndAddr = this.binaryBndAddr;
+        if (binaryBndAddr == null && bndAddr != null) {
+            this.binaryBndAddr = binaryBndAddr = Socks5BinaryAddress.valueOf(bndAddrType, bndAddr);
+        }
+        return binaryBndAddr;
     }
 
     @Override
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.util.NetUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The binary form of a SOCKS5 address field: a packed {@code int} for {@link Socks5AddressType#IPv4}, two
+ * {@code long}s for {@link Socks5AddressType#IPv6} and the raw US-ASCII bytes for {@link Socks5AddressType#DOMAIN}.
+ * Unlike the {@link String} form returned by {@link Socks5CommandRequest#dstAddr()}, it can be decoded from and
+ * encoded to the wire and converted to an {@link InetAddress} without any text conversion.
+ * The {@link String} form is only computed when {@link #toString()} is called.
+ */
+public final class Socks5BinaryAddress {
+
+    private static final int IPv4_LEN = 4;
+    private static final int IPv6_LEN = 16;
+
+    private final Socks5AddressType type;
+    private final int ipv4;
+    private final long ipv6High;
+    private final long ipv6Low;
+    private final byte[] domain;
+    private String text;
+
+    private Socks5BinaryAddress(Socks5AddressType type, int ipv4, long ipv6High, long ipv6Low, byte[] domain,
+                                String text) {
+        this.type = type;
+        this.ipv4 = ipv4;
+        this.ipv6High = ipv6High;
+        this.ipv6Low = ipv6Low;
+        this.domain = domain;
+        this.text = text;
+    }
+
+    /**
+     * Creates a new {@link Socks5AddressType#IPv4} address.
+     *
+     * @param address the address in network byte order, e.g. {@code 0x7f000001} for {@code 127.0.0.1}
+     */
+    public static Socks5BinaryAddress ipv4(int address) {
+        return new Socks5BinaryAddress(Socks5AddressType.IPv4, address, 0, 0, null, null);
+    }
+
+    /**
+     * Creates a new {@link Socks5AddressType#IPv6} address.
+     *
+     * @param high the most significant 8 bytes of the address in network byte order
+     * @param low the least significant 8 bytes of the address in network byte order
+     */
+    public static Socks5BinaryAddress ipv6(long high, long low) {
+        return new Socks5BinaryAddress(Socks5AddressType.IPv6, 0, high, low, null, null);
+    }
+
+    /**
+     * Creates a new {@link Socks5AddressType#DOMAIN} address.
+     *
+     * @param asciiName the US-ASCII encoded domain name, which is copied
+     */
+    public static Socks5BinaryAddress domain(byte[] asciiName) {
+        requireNonNull(asciiName, "asciiName");
+        if (asciiName.length > 255) {
+            throw new IllegalArgumentException(
+                    "asciiName: " + asciiName.length + " bytes (expected: less than 256 bytes)");
+        }
+        return new Socks5BinaryAddress(Socks5AddressType.DOMAIN, 0, 0, 0, asciiName.clone(), null);
+    }
+
+    /**
+     * Returns the binary form of the specified address.
+     *
+     * @param type the type of the address
+     * @param address the string representation of the address, as accepted by {@link Socks5AddressEncoder#DEFAULT}
+     * @return the binary address, or {@code null} if {@code address} is {@code null} or {@code type} is unknown
+     */
+    public static Socks5BinaryAddress valueOf(Socks5AddressType type, String address) {
+        requireNonNull(type, "type");
+        if (address == null) {
+            return null;
+        }
+        if (type == Socks5AddressType.IPv4) {
+            byte[] bytes = NetUtil.createByteArrayFromIpAddressString(address);
+            if (bytes == null || bytes.length != IPv4_LEN) {
+                throw new IllegalArgumentException("address: " + address + " (expected: a valid IPv4 address)");
+            }
+            return new Socks5BinaryAddress(type, getInt(bytes, 0), 0, 0, null, address);
+        }
+        if (type == Socks5AddressType.IPv6) {
+            byte[] bytes = NetUtil.createByteArrayFromIpAddressString(address);
+            if (bytes == null || bytes.length != IPv6_LEN) {
+                throw new IllegalArgumentException("address: " + address + " (expected: a valid IPv6 address)");
+            }
+            return new Socks5BinaryAddress(type, 0, getLong(bytes, 0), getLong(bytes, 8), null, address);
+        }
+        if (type == Socks5AddressType.DOMAIN) {
+            return new Socks5BinaryAddress(
+                    type, 0, 0, 0, address.getBytes(StandardCharsets.US_ASCII), address);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the {@link Socks5AddressType#IPv4} or {@link Socks5AddressType#IPv6} binary form of the specified
+     * address.  No name service lookup nor text conversion is performed.
+     */
+    public static Socks5BinaryAddress valueOf(InetAddress address) {
+        final byte[] bytes = requireNonNull(address, "address").getAddress();
+        if (bytes.length == IPv4_LEN) {
+            return ipv4(getInt(bytes, 0));
+        }
+        return ipv6(getLong(bytes, 0), getLong(bytes, 8));
+    }
+
+    /**
+     * Decodes a SOCKS5 address field of the specified type.
+     *
+     * @param type the type of the address
+     * @param in the input buffer which contains the SOCKS5 address field at its reader offset
+     * @return the address or {@code null} if not enough bytes are readable yet, in which case the reader offset is
+     *         left untouched
+     * @throws DecoderException if {@code type} is not supported
+     */
+    static Socks5BinaryAddress decode(Socks5AddressType type, Buffer in) {
+        final int readableBytes = in.readableBytes();
+        if (type == Socks5AddressType.IPv4) {
+            if (readableBytes < IPv4_LEN) {
+                return null;
+            }
+            return ipv4(in.readInt());
+        }
+        if (type == Socks5AddressType.DOMAIN) {
+            if (readableBytes < 1) {
+                return null;
+            }
+            final int length = in.getUnsignedByte(in.readerOffset());
+            if (readableBytes - 1 < length) {
+                return null;
+            }
+            in.skipReadableBytes(1);
+            byte[] name = new byte[length];
+            in.readBytes(name, 0, length);
+            return new Socks5BinaryAddress(type, 0, 0, 0, name, null);
+        }
+        if (type == Socks5AddressType.IPv6) {
+            if (readableBytes < IPv6_LEN) {
+                return null;
+            }
+            final long high = in.readLong();
+            return ipv6(high, in.readLong());
+        }
+        throw new DecoderException("unsupported address type: " + (type.byteValue() & 0xFF));
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode(Buffer)} writes.
+     */
+    int encodedLength() {
+        if (type == Socks5AddressType.IPv4) {
+            return 4;
+        }
+        if (type == Socks5AddressType.IPv6) {
+            return 16;
+        }
+        return 1 + domain.length;
+    }
+
+    /**
+     * Returns the number of bytes {@link Socks5AddressEncoder#DEFAULT} writes for the specified address, or
+     * {@code 0} if the address type is not known.
+     */
+    static int encodedLength(Socks5AddressType type, String address) {
+        if (type == Socks5AddressType.IPv4) {
+            return 4;
+        }
+        if (type == Socks5AddressType.IPv6) {
+            return 16;
+        }
+        if (type == Socks5AddressType.DOMAIN) {
+            return address != null? 1 + address.length() : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Encodes this address as a SOCKS5 address field, excluding the address type.
+     */
+    void encode(Buffer out) {
+        if (type == Socks5AddressType.IPv4) {
+            out.writeInt(ipv4);
+        } else if (type == Socks5AddressType.IPv6) {
+            out.writeLong(ipv6High);
+            out.writeLong(ipv6Low);
+        } else {
+            out.writeByte((byte) domain.length);
+            out.writeBytes(domain);
+        }
+    }
+
+    /**
+     * Returns the type of this address.
+     */
+    public Socks5AddressType type() {
+        return type;
+    }
+
+    /**
+     * Returns the {@link Socks5AddressType#IPv4} address in network byte order.
+     *
+     * @throws IllegalStateException if this address is not an {@link Socks5AddressType#IPv4} address
+     */
+    public int ipv4() {
+        checkType(Socks5AddressType.IPv4);
+        return ipv4;
+    }
+
+    /**
+     * Returns the most significant 8 bytes of the {@link Socks5AddressType#IPv6} address in network byte order.
+     *
+     * @throws IllegalStateException if this address is not an {@link Socks5AddressType#IPv6} address
+     */
+    public long ipv6High() {
+        checkType(Socks5AddressType.IPv6);
+        return ipv6High;
+    }
+
+    /**
+     * Returns the least significant 8 bytes of the {@link Socks5AddressType#IPv6} address in network byte order.
+     *
+     * @throws IllegalStateException if this address is not an {@link Socks5AddressType#IPv6} address
+     */
+    public long ipv6Low() {
+        checkType(Socks5AddressType.IPv6);
+        return ipv6Low;
+    }
+
+    /**
+     * Returns the length of the US-ASCII encoded {@link Socks5AddressType#DOMAIN} name.
+     *
+     * @throws IllegalStateException if this address is not a {@link Socks5AddressType#DOMAIN} address
+     */
+    public int domainLength() {
+        checkType(Socks5AddressType.DOMAIN);
+        return domain.length;
+    }
+
+    /**
+     * Copies the US-ASCII encoded {@link Socks5AddressType#DOMAIN} name into the specified array.
+     *
+     * @throws IllegalStateException if this address is not a {@link Socks5AddressType#DOMAIN} address
+     */
+    public void copyDomain(byte[] dst, int dstIndex) {
+        checkType(Socks5AddressType.DOMAIN);
+        System.arraycopy(domain, 0, dst, dstIndex, domain.length);
+    }
+
+    /**
+     * Returns the {@link InetAddress} of this {@link Socks5AddressType#IPv4} or {@link Socks5AddressType#IPv6}
+     * address. No name service lookup nor text parsing is performed.
+     *
+     * @throws IllegalStateException if this address is a {@link Socks5AddressType#DOMAIN} address
+     */
+    public InetAddress toInetAddress() {
+        if (type == Socks5AddressType.DOMAIN) {
+            throw new IllegalStateException("a DOMAIN address must be resolved: " + this);
+        }
+        try {
+            return InetAddress.getByAddress(toIpBytes());
+        } catch (UnknownHostException e) {
+            // Should never reach here because the length of the address is always valid.
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Returns a new {@link InetSocketAddress} of this address and the specified port. {@link Socks5AddressType#DOMAIN}
+     * addresses yield an {@linkplain InetSocketAddress#isUnresolved() unresolved} address.
+     */
+    public InetSocketAddress toSocketAddress(int port) {
+        if (type == Socks5AddressType.DOMAIN) {
+            return InetSocketAddress.createUnresolved(toString(), port);
+        }
+        return new InetSocketAddress(toInetAddress(), port);
+    }
+
+    private byte[] toIpBytes() {
+        if (type == Socks5AddressType.IPv4) {
+            byte[] bytes = new byte[IPv4_LEN];
+            setInt(bytes, 0, ipv4);
+            return bytes;
+        }
+        byte[] bytes = new byte[IPv6_LEN];
+        setLong(bytes, 0, ipv6High);
+        setLong(bytes, 8, ipv6Low);
+        return bytes;
+    }
+
+    private void checkType(Socks5AddressType expected) {
+        if (type != expected) {
+            throw new IllegalStateException("type: " + type + " (expected: " + expected + ')');
+        }
+    }
+
+    private static int getInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) << 24 |
+               (bytes[index + 1] & 0xFF) << 16 |
+               (bytes[index + 2] & 0xFF) << 8 |
+               bytes[index + 3] & 0xFF;
+    }
+
+    private static long getLong(byte[] bytes, int index) {
+        return (getInt(bytes, index) & 0xFFFFFFFFL) << 32 | getInt(bytes, index + 4) & 0xFFFFFFFFL;
+    }
+
+    private static void setInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+
+    private static void setLong(byte[] bytes, int index, long value) {
+        setInt(bytes, index, (int) (value >>> 32));
+        setInt(bytes, index + 4, (int) value);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = type.hashCode();
+        if (type == Socks5AddressType.IPv4) {
+            return hash * 31 + ipv4;
+        }
+        if (type == Socks5AddressType.IPv6) {
+            return (hash * 31 + Long.hashCode(ipv6High)) * 31 + Long.hashCode(ipv6Low);
+        }
+        return hash * 31 + Arrays.hashCode(domain);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Socks5BinaryAddress)) {
+            return false;
+        }
+        Socks5BinaryAddress that = (Socks5BinaryAddress) obj;
+        return type.equals(that.type) && ipv4 == that.ipv4 &&
+               ipv6High == that.ipv6High && ipv6Low == that.ipv6Low && Arrays.equals(domain, that.domain);
+    }
+
+    /**
+     * Returns the string representation of this address, as returned by {@link Socks5CommandRequest#dstAddr()}.
+     */
+    @Override
+    public String toString() {
+        String text = this.text;
+        if (text == null) {
+            if (type == Socks5AddressType.IPv4) {
+                text = NetUtil.intToIpAddress(ipv4);
+            } else if (type == Socks5AddressType.IPv6) {
+                text = NetUtil.bytesToIpAddress(toIpBytes());
+            } else {
+                text = new String(domain, StandardCharsets.US_ASCII);
+            }
+            this.text = text;
+        }
+        return text;
+    }
+}
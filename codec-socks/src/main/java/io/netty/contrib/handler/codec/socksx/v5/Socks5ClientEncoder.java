@@ -16,6 +16,7 @@
 package io.netty.contrib.handler.codec.socksx.v5;
 
 import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferAllocator;
 import io.netty5.channel.ChannelHandlerContext;
 import io.netty5.handler.codec.EncoderException;
 import io.netty5.handler.codec.MessageToByteEncoder;
@@ -24,6 +25,7 @@ import io.netty5.util.internal.StringUtil;
 
 import java.util.List;
 import java.util.RandomAccess;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -45,7 +47,7 @@ public class Socks5ClientEncoder extends MessageToByteEncoder<Socks5Message> {
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext ctx, Socks5Message msg) {
-        return ctx.bufferAllocator().allocate(256);
+        return ctx.bufferAllocator().allocate(encodedLength(msg));
     }
 
     /**
@@ -64,8 +66,61 @@ public class Socks5ClientEncoder extends MessageToByteEncoder<Socks5Message> {
         return addressEncoder;
     }
 
+    /**
+     * Encodes the specified message once and returns a {@link Supplier} of read-only {@link Buffer}s which share the
+     * encoded bytes.  Writing the supplied buffers instead of the message skips the encoding and the allocation
+     * this encoder performs for every message, which pays off for a message that is sent over and over again, such as
+     * the initial request or the password authentication request of a client with fixed credentials.
+     *
+     * @param allocator the {@link BufferAllocator} that allocates the shared memory of the supplied buffers
+     */
+    public final Supplier<Buffer> newConstBufferSupplier(BufferAllocator allocator, Socks5Message msg)
+            throws Exception {
+        requireNonNull(allocator, "allocator");
+        requireNonNull(msg, "msg");
+
+        final byte[] encoded;
+        try (Buffer buf = BufferAllocator.onHeapUnpooled().allocate(encodedLength(msg))) {
+            encode(msg, buf);
+            encoded = new byte[buf.readableBytes()];
+            buf.copyInto(buf.readerOffset(), encoded, 0, encoded.length);
+        }
+        return allocator.constBufferSupplier(encoded);
+    }
+
+    /**
+     * Returns the number of bytes this encoder writes for the specified message.
+     */
+    public int encodedLength(Socks5Message msg) {
+        if (msg instanceof Socks5InitialRequest) {
+            return 2 + ((Socks5InitialRequest) msg).authMethods().size();
+        }
+        if (msg instanceof Socks5PasswordAuthRequest) {
+            final Socks5PasswordAuthRequest req = (Socks5PasswordAuthRequest) msg;
+            return 3 + req.username().length() + req.password().length();
+        }
+        if (msg instanceof Socks5CommandRequest) {
+            final Socks5CommandRequest req = (Socks5CommandRequest) msg;
+            final Socks5BinaryAddress binaryDstAddr =
+                    addressEncoder == Socks5AddressEncoder.DEFAULT? req.binaryDstAddr() : null;
+            return 6 + (binaryDstAddr != null? binaryDstAddr.encodedLength()
+                                             : Socks5BinaryAddress.encodedLength(req.dstAddrType(), req.dstAddr()));
+        }
+        // Let encode() reject the unsupported message.
+        return 0;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, Socks5Message msg, Buffer out) throws Exception {
+        encode(msg, out);
+    }
+
+    /**
+     * Encodes the specified message into the specified {@link Buffer}.  Unlike the messages written to a channel,
+     * which are encoded into a new buffer of {@link #encodedLength(Socks5Message)} bytes each, this lets the caller
+     * encode into a buffer it provides and reuses, such as a per-thread scratch buffer.
+     */
+    public final void encode(Socks5Message msg, Buffer out) throws Exception {
         if (msg instanceof Socks5InitialRequest) {
             encodeAuthMethodRequest((Socks5InitialRequest) msg, out);
         } else if (msg instanceof Socks5PasswordAuthRequest) {
@@ -114,7 +169,13 @@ public class Socks5ClientEncoder extends MessageToByteEncoder<Socks5Message> {
 
         final Socks5AddressType dstAddrType = msg.dstAddrType();
         out.writeByte(dstAddrType.byteValue());
-        addressEncoder.encodeAddress(dstAddrType, msg.dstAddr(), out);
+        final Socks5BinaryAddress binaryDstAddr =
+                addressEncoder == Socks5AddressEncoder.DEFAULT? msg.binaryDstAddr() : null;
+        if (binaryDstAddr != null) {
+            binaryDstAddr.encode(out);
+        } else {
+            addressEncoder.encodeAddress(dstAddrType, msg.dstAddr(), out);
+        }
         out.writeShort((short) msg.dstPort());
     }
 
@@ -36,6 +36,16 @@ public interface Socks5CommandRequest extends Socks5Message {
      */
     String dstAddr();
 
+    /**
+     * Returns the {@code DST.ADDR} field of this request in its binary form, which, unlike {@link #dstAddr()},
+     * does not require a conversion from or to a {@link String} when decoded by {@link Socks5CommandRequestDecoder}.
+     *
+     * @return the binary address, or {@code null} if {@link #dstAddrType()} is unknown
+     */
+    default Socks5BinaryAddress binaryDstAddr() {
+        return Socks5BinaryAddress.valueOf(dstAddrType(), dstAddr());
+    }
+
     /**
      * Returns the {@code DST.PORT} field of this request.
      */
@@ -69,15 +69,25 @@ public class Socks5CommandRequestDecoder extends ByteToMessageDecoder {
                 in.skipReadableBytes(1); // RSV
                 final Socks5AddressType dstAddrType = Socks5AddressType.valueOf(in.readByte());
 
-                final String dstAddr = addressDecoder.decodeAddress(dstAddrType, in);
-                if (dstAddr == null || in.readableBytes() < 2) {
-                    in.readerOffset(readerIndex);
-                    return;
+                final Socks5CommandRequest request;
+                if (addressDecoder == Socks5AddressDecoder.DEFAULT) {
+                    // Keep the address in its binary form; its string form is only built when requested.
+                    final Socks5BinaryAddress dstAddr = Socks5BinaryAddress.decode(dstAddrType, in);
+                    if (dstAddr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    request = new DefaultSocks5CommandRequest(type, dstAddr, in.readUnsignedShort());
+                } else {
+                    final String dstAddr = addressDecoder.decodeAddress(dstAddrType, in);
+                    if (dstAddr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    request = new DefaultSocks5CommandRequest(type, dstAddrType, dstAddr, in.readUnsignedShort());
                 }
 
-                final int dstPort = in.readUnsignedShort();
-
-                ctx.fireChannelRead(new DefaultSocks5CommandRequest(type, dstAddrType, dstAddr, dstPort));
+                ctx.fireChannelRead(request);
                 state = State.SUCCESS;
             }
             case SUCCESS: {
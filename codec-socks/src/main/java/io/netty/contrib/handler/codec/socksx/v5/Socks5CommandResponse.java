@@ -36,6 +36,17 @@ public interface Socks5CommandResponse extends Socks5Message {
      */
     String bndAddr();
 
+    /**
+     * Returns the {@code BND.ADDR} field of this response in its binary form, which, unlike {@link #bndAddr()},
+     * does not require a conversion from or to a {@link String} when decoded by {@link Socks5CommandResponseDecoder}.
+     *
+     * @return the binary address, or {@code null} if {@link #bndAddr()} is {@code null} or
+     *         {@link #bndAddrType()} is unknown
+     */
+    default Socks5BinaryAddress binaryBndAddr() {
+        return Socks5BinaryAddress.valueOf(bndAddrType(), bndAddr());
+    }
+
     /**
      * Returns the {@code BND.PORT} field of this response.
      */
@@ -25,7 +25,8 @@ import io.netty.contrib.handler.codec.socksx.SocksVersion;
 import static java.util.Objects.requireNonNull;
 
 /**
- * Decodes a single {@link Socks5CommandResponse} from the inbound {@link Buffer}s.
+ * Decodes a single {@link Socks5CommandResponse} from the inbound {@link Buffer}s, or both replies of a
+ * {@link Socks5CommandType#BIND} request if it is created for one.
  * On successful decode, this decoder will forward the received data to the next handler, so that
  * other handler can remove or replace this decoder later.  On failed decode, this decoder will
  * discard the received data, so that other handler closes the connection later.
@@ -39,13 +40,24 @@ public class Socks5CommandResponseDecoder extends ByteToMessageDecoder {
     }
 
     private final Socks5AddressDecoder addressDecoder;
+    private final int expectedResponses;
+    private int responses;
     private State state = State.INIT;
     public Socks5CommandResponseDecoder() {
         this(Socks5AddressDecoder.DEFAULT);
     }
 
     public Socks5CommandResponseDecoder(Socks5AddressDecoder addressDecoder) {
+        this(addressDecoder, Socks5CommandType.CONNECT);
+    }
+
+    /**
+     * Creates a new instance which decodes the responses to a command of the specified type: two for
+     * {@link Socks5CommandType#BIND}, unless the first one is a failure, and one for the others.
+     */
+    public Socks5CommandResponseDecoder(Socks5AddressDecoder addressDecoder, Socks5CommandType commandType) {
         this.addressDecoder = requireNonNull(addressDecoder, "addressDecoder");
+        expectedResponses = requireNonNull(commandType, "commandType") == Socks5CommandType.BIND? 2 : 1;
     }
 
     @Override
@@ -65,14 +77,29 @@ public class Socks5CommandResponseDecoder extends ByteToMessageDecoder {
                 final Socks5CommandStatus status = Socks5CommandStatus.valueOf(in.readByte());
                 in.skipReadableBytes(1); // Reserved
                 final Socks5AddressType addrType = Socks5AddressType.valueOf(in.readByte());
-                final String addr = addressDecoder.decodeAddress(addrType, in);
-                if (addr == null || in.readableBytes() < 2) {
-                    in.readerOffset(readerIndex);
-                    return;
+                final Socks5CommandResponse response;
+                if (addressDecoder == Socks5AddressDecoder.DEFAULT) {
+                    // Keep the address in its binary form; its string form is only built when requested.
+                    final Socks5BinaryAddress addr = Socks5BinaryAddress.decode(addrType, in);
+                    if (addr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    response = new DefaultSocks5CommandResponse(status, addr, in.readUnsignedShort());
+                } else {
+                    final String addr = addressDecoder.decodeAddress(addrType, in);
+                    if (addr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    response = new DefaultSocks5CommandResponse(status, addrType, addr, in.readUnsignedShort());
                 }
-                final int port = in.readUnsignedShort();
 
-                ctx.fireChannelRead(new DefaultSocks5CommandResponse(status, addrType, addr, port));
+                ctx.fireChannelRead(response);
+                if (response.status() == Socks5CommandStatus.SUCCESS && ++responses < expectedResponses) {
+                    // The second reply of a BIND request follows once the server has accepted a connection.
+                    break;
+                }
                 state = State.SUCCESS;
             }
             case SUCCESS: {
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty.contrib.handler.codec.socksx.SocksVersion;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.handler.codec.ByteToMessageDecoder;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.handler.codec.DecoderResult;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decodes, in order, a {@link Socks5InitialResponse}, a {@link Socks5PasswordAuthResponse} if the server selected
+ * {@link Socks5AuthMethod#PASSWORD}, and a {@link Socks5CommandResponse} from the inbound {@link Buffer}s.  If it is
+ * created for a {@link Socks5CommandType#BIND} request, it decodes both of its {@link Socks5CommandResponse}s.
+ * <p>
+ * Unlike {@link Socks5InitialResponseDecoder}, {@link Socks5PasswordAuthResponseDecoder} and
+ * {@link Socks5CommandResponseDecoder}, which have to replace each other between the responses, this decoder stays
+ * in the pipeline for the whole handshake. It is therefore suitable for a client that sends its initial request,
+ * its authentication request and its command request at once, and receives all the responses in one read.
+ * After the {@link Socks5CommandResponse}, this decoder will forward the received data to the next handler, so
+ * that other handler can remove this decoder later.  On failed decode, this decoder will discard the received
+ * data, so that other handler closes the connection later.
+ */
+public class Socks5PipelinedResponseDecoder extends ByteToMessageDecoder {
+
+    private enum State {
+        INITIAL_RESPONSE,
+        PASSWORD_AUTH_RESPONSE,
+        COMMAND_RESPONSE,
+        SUCCESS,
+        FAILURE
+    }
+
+    private final Socks5AddressDecoder addressDecoder;
+    private final int expectedCommandResponses;
+    private int commandResponses;
+    private State state = State.INITIAL_RESPONSE;
+
+    public Socks5PipelinedResponseDecoder() {
+        this(Socks5AddressDecoder.DEFAULT);
+    }
+
+    public Socks5PipelinedResponseDecoder(Socks5AddressDecoder addressDecoder) {
+        this(addressDecoder, Socks5CommandType.CONNECT);
+    }
+
+    /**
+     * Creates a new instance which decodes the responses to a command of the specified type: two for
+     * {@link Socks5CommandType#BIND}, unless the first one is a failure, and one for the others.
+     */
+    public Socks5PipelinedResponseDecoder(Socks5AddressDecoder addressDecoder, Socks5CommandType commandType) {
+        this.addressDecoder = requireNonNull(addressDecoder, "addressDecoder");
+        expectedCommandResponses = requireNonNull(commandType, "commandType") == Socks5CommandType.BIND? 2 : 1;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, Buffer in) throws Exception {
+        try {
+            switch (state) {
+            case INITIAL_RESPONSE: {
+                if (in.readableBytes() < 2) {
+                    return;
+                }
+                final byte version = in.readByte();
+                if (version != SocksVersion.SOCKS5.byteValue()) {
+                    throw new DecoderException(
+                            "unsupported version: " + version + " (expected: " + SocksVersion.SOCKS5.byteValue() + ')');
+                }
+
+                final Socks5AuthMethod authMethod = Socks5AuthMethod.valueOf(in.readByte());
+                if (authMethod == Socks5AuthMethod.PASSWORD) {
+                    state = State.PASSWORD_AUTH_RESPONSE;
+                } else if (authMethod == Socks5AuthMethod.NO_AUTH) {
+                    state = State.COMMAND_RESPONSE;
+                } else {
+                    // The server will not respond any further; let the next handler deal with the rest.
+                    state = State.SUCCESS;
+                }
+                // The remaining responses, if already received, are decoded by the next decode() call.
+                ctx.fireChannelRead(new DefaultSocks5InitialResponse(authMethod));
+                break;
+            }
+            case PASSWORD_AUTH_RESPONSE: {
+                if (in.readableBytes() < 2) {
+                    return;
+                }
+                final byte version = in.readByte();
+                if (version != 1) {
+                    throw new DecoderException("unsupported subnegotiation version: " + version + " (expected: 1)");
+                }
+
+                final Socks5PasswordAuthStatus status = Socks5PasswordAuthStatus.valueOf(in.readByte());
+                state = State.COMMAND_RESPONSE;
+                ctx.fireChannelRead(new DefaultSocks5PasswordAuthResponse(status));
+                break;
+            }
+            case COMMAND_RESPONSE: {
+                if (in.readableBytes() < 6) {
+                    return;
+                }
+                int readerIndex = in.readerOffset();
+                final byte version = in.readByte();
+                if (version != SocksVersion.SOCKS5.byteValue()) {
+                    throw new DecoderException(
+                            "unsupported version: " + version + " (expected: " + SocksVersion.SOCKS5.byteValue() + ')');
+                }
+                final Socks5CommandStatus status = Socks5CommandStatus.valueOf(in.readByte());
+                in.skipReadableBytes(1); // Reserved
+                final Socks5AddressType addrType = Socks5AddressType.valueOf(in.readByte());
+
+                final Socks5CommandResponse response;
+                if (addressDecoder == Socks5AddressDecoder.DEFAULT) {
+                    final Socks5BinaryAddress addr = Socks5BinaryAddress.decode(addrType, in);
+                    if (addr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    response = new DefaultSocks5CommandResponse(status, addr, in.readUnsignedShort());
+                } else {
+                    final String addr = addressDecoder.decodeAddress(addrType, in);
+                    if (addr == null || in.readableBytes() < 2) {
+                        in.readerOffset(readerIndex);
+                        return;
+                    }
+                    response = new DefaultSocks5CommandResponse(status, addrType, addr, in.readUnsignedShort());
+                }
+
+                if (status == Socks5CommandStatus.SUCCESS && ++commandResponses < expectedCommandResponses) {
+                    // The second reply of a BIND request follows once the server has accepted a connection.
+                    ctx.fireChannelRead(response);
+                    break;
+                }
+                state = State.SUCCESS;
+                ctx.fireChannelRead(response);
+            }
+            case SUCCESS: {
+                int readableBytes = actualReadableBytes();
+                if (readableBytes > 0) {
+                    ctx.fireChannelRead(in.readSplit(readableBytes));
+                }
+                break;
+            }
+            case FAILURE: {
+                in.skipReadableBytes(actualReadableBytes());
+                break;
+            }
+            }
+        } catch (Exception e) {
+            fail(ctx, e);
+        }
+    }
+
+    private void fail(ChannelHandlerContext ctx, Exception cause) {
+        if (!(cause instanceof DecoderException)) {
+            cause = new DecoderException(cause);
+        }
+
+        final Socks5Message m;
+        switch (state) {
+        case INITIAL_RESPONSE:
+            m = new DefaultSocks5InitialResponse(Socks5AuthMethod.UNACCEPTED);
+            break;
+        case PASSWORD_AUTH_RESPONSE:
+            m = new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.FAILURE);
+            break;
+        default:
+            m = new DefaultSocks5CommandResponse(Socks5CommandStatus.FAILURE, Socks5AddressType.IPv4, null, 0);
+            break;
+        }
+
+        state = State.FAILURE;
+
+        m.setDecoderResult(DecoderResult.failure(cause));
+        ctx.fireChannelRead(m);
+    }
+}
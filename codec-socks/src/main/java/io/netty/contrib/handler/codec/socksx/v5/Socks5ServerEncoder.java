@@ -41,7 +41,7 @@ public class Socks5ServerEncoder extends MessageToByteEncoder<Socks5Message> {
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext ctx, Socks5Message msg) {
-        return ctx.bufferAllocator().allocate(256);
+        return ctx.bufferAllocator().allocate(encodedLength(msg));
     }
 
     /**
@@ -60,8 +60,35 @@ public class Socks5ServerEncoder extends MessageToByteEncoder<Socks5Message> {
         return addressEncoder;
     }
 
+    /**
+     * Returns the number of bytes this encoder writes for the specified message.
+     */
+    public int encodedLength(Socks5Message msg) {
+        if (msg instanceof Socks5InitialResponse || msg instanceof Socks5PasswordAuthResponse) {
+            return 2;
+        }
+        if (msg instanceof Socks5CommandResponse) {
+            final Socks5CommandResponse res = (Socks5CommandResponse) msg;
+            final Socks5BinaryAddress binaryBndAddr =
+                    addressEncoder == Socks5AddressEncoder.DEFAULT? res.binaryBndAddr() : null;
+            return 6 + (binaryBndAddr != null? binaryBndAddr.encodedLength()
+                                             : Socks5BinaryAddress.encodedLength(res.bndAddrType(), res.bndAddr()));
+        }
+        // Let encode() reject the unsupported message.
+        return 0;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, Socks5Message msg, Buffer out) throws Exception {
+        encode(msg, out);
+    }
+
+    /**
+     * Encodes the specified message into the specified {@link Buffer}.  Unlike the messages written to a channel,
+     * which are encoded into a new buffer of {@link #encodedLength(Socks5Message)} bytes each, this lets the caller
+     * encode into a buffer it provides and reuses, such as a per-thread scratch buffer.
+     */
+    public final void encode(Socks5Message msg, Buffer out) throws Exception {
         if (msg instanceof Socks5InitialResponse) {
             encodeAuthMethodResponse((Socks5InitialResponse) msg, out);
         } else if (msg instanceof Socks5PasswordAuthResponse) {
@@ -90,7 +117,13 @@ public class Socks5ServerEncoder extends MessageToByteEncoder<Socks5Message> {
 
         final Socks5AddressType bndAddrType = msg.bndAddrType();
         out.writeByte(bndAddrType.byteValue());
-        addressEncoder.encodeAddress(bndAddrType, msg.bndAddr(), out);
+        final Socks5BinaryAddress binaryBndAddr =
+                addressEncoder == Socks5AddressEncoder.DEFAULT? msg.binaryBndAddr() : null;
+        if (binaryBndAddr != null) {
+            binaryBndAddr.encode(out);
+        } else {
+            addressEncoder.encodeAddress(bndAddrType, msg.bndAddr(), out);
+        }
 
         out.writeShort((short) msg.bndPort());
     }
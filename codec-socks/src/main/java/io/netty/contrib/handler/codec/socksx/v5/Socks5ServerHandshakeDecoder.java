@@ -0,0 +1,216 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty.contrib.handler.codec.socksx.SocksVersion;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.handler.codec.ByteToMessageDecoder;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.handler.codec.DecoderResult;
+
+import java.nio.charset.StandardCharsets;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decodes, in order, a {@link Socks5InitialRequest}, an optional {@link Socks5PasswordAuthRequest} and a
+ * {@link Socks5CommandRequest} from the inbound {@link Buffer}s.
+ * <p>
+ * Unlike {@link Socks5InitialRequestDecoder}, {@link Socks5PasswordAuthRequestDecoder} and
+ * {@link Socks5CommandRequestDecoder}, which have to be added to the pipeline one after another as the handshake
+ * proceeds, this decoder handles the whole handshake by itself.  The request that follows the initial request is
+ * told apart by its version field, which is {@code 1} for a password authentication request and {@code 5} for a
+ * command request, so the handler that answers the requests does not need to touch the pipeline.
+ * After the {@link Socks5CommandRequest}, this decoder removes itself from the pipeline, forwarding any data
+ * received after the request to the next handler.  On failed decode, this decoder will discard the received data,
+ * so that other handler closes the connection later.
+ */
+public class Socks5ServerHandshakeDecoder extends ByteToMessageDecoder {
+
+    private enum State {
+        INITIAL_REQUEST,
+        AUTH_OR_COMMAND_REQUEST,
+        COMMAND_REQUEST,
+        SUCCESS,
+        FAILURE
+    }
+
+    private static final byte PASSWORD_AUTH_VERSION = 1;
+
+    private final Socks5AddressDecoder addressDecoder;
+    private State state = State.INITIAL_REQUEST;
+
+    public Socks5ServerHandshakeDecoder() {
+        this(Socks5AddressDecoder.DEFAULT);
+    }
+
+    public Socks5ServerHandshakeDecoder(Socks5AddressDecoder addressDecoder) {
+        this.addressDecoder = requireNonNull(addressDecoder, "addressDecoder");
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, Buffer in) throws Exception {
+        try {
+            switch (state) {
+            case INITIAL_REQUEST: {
+                if (in.readableBytes() < 2) {
+                    return;
+                }
+                final int readerIndex = in.readerOffset();
+                final byte version = in.readByte();
+                if (version != SocksVersion.SOCKS5.byteValue()) {
+                    throw new DecoderException(
+                            "unsupported version: " + version + " (expected: " + SocksVersion.SOCKS5.byteValue() + ')');
+                }
+
+                final int authMethodCnt = in.readUnsignedByte();
+                if (in.readableBytes() < authMethodCnt) {
+                    in.readerOffset(readerIndex);
+                    return;
+                }
+                final Socks5AuthMethod[] authMethods = new Socks5AuthMethod[authMethodCnt];
+                for (int i = 0; i < authMethodCnt; i++) {
+                    authMethods[i] = Socks5AuthMethod.valueOf(in.readByte());
+                }
+
+                state = State.AUTH_OR_COMMAND_REQUEST;
+                // The next request, if already received, is decoded by the next decode() call.
+                ctx.fireChannelRead(new DefaultSocks5InitialRequest(authMethods));
+                break;
+            }
+            case AUTH_OR_COMMAND_REQUEST: {
+                if (in.readableBytes() < 1) {
+                    return;
+                }
+                final byte version = in.getByte(in.readerOffset());
+                if (version == PASSWORD_AUTH_VERSION) {
+                    decodePasswordAuthRequest(ctx, in);
+                } else if (version == SocksVersion.SOCKS5.byteValue()) {
+                    decodeCommandRequest(ctx, in);
+                } else {
+                    throw new DecoderException("unsupported version: " + version + " (expected: " +
+                            PASSWORD_AUTH_VERSION + " or " + SocksVersion.SOCKS5.byteValue() + ')');
+                }
+                break;
+            }
+            case COMMAND_REQUEST: {
+                decodeCommandRequest(ctx, in);
+                break;
+            }
+            case SUCCESS: {
+                // Only reached if the handler of the command request prevented the removal by removing this
+                // decoder itself; forward the remainder just like the per-phase decoders do.
+                int readableBytes = actualReadableBytes();
+                if (readableBytes > 0) {
+                    ctx.fireChannelRead(in.readSplit(readableBytes));
+                }
+                break;
+            }
+            case FAILURE: {
+                in.skipReadableBytes(actualReadableBytes());
+                break;
+            }
+            }
+        } catch (Exception e) {
+            fail(ctx, e);
+        }
+    }
+
+    private void decodePasswordAuthRequest(ChannelHandlerContext ctx, Buffer in) {
+        if (in.readableBytes() < 3) {
+            return;
+        }
+        final int startOffset = in.readerOffset();
+        final int usernameLength = in.getUnsignedByte(startOffset + 1);
+        if (in.readableBytes() < usernameLength + 3) {
+            return;
+        }
+        final int passwordLength = in.getUnsignedByte(startOffset + 2 + usernameLength);
+        if (in.readableBytes() < usernameLength + passwordLength + 3) {
+            return;
+        }
+        in.skipReadableBytes(2);
+        String username = in.readCharSequence(usernameLength, StandardCharsets.US_ASCII).toString();
+        in.skipReadableBytes(1);
+        String password = in.readCharSequence(passwordLength, StandardCharsets.US_ASCII).toString();
+
+        state = State.COMMAND_REQUEST;
+        ctx.fireChannelRead(new DefaultSocks5PasswordAuthRequest(username, password));
+    }
+
+    private void decodeCommandRequest(ChannelHandlerContext ctx, Buffer in) throws Exception {
+        if (in.readableBytes() < 6) {
+            return;
+        }
+        final int readerIndex = in.readerOffset();
+        final byte version = in.readByte();
+        if (version != SocksVersion.SOCKS5.byteValue()) {
+            throw new DecoderException(
+                    "unsupported version: " + version + " (expected: " + SocksVersion.SOCKS5.byteValue() + ')');
+        }
+
+        final Socks5CommandType type = Socks5CommandType.valueOf(in.readByte());
+        in.skipReadableBytes(1); // RSV
+        final Socks5AddressType dstAddrType = Socks5AddressType.valueOf(in.readByte());
+
+        final Socks5CommandRequest request;
+        if (addressDecoder == Socks5AddressDecoder.DEFAULT) {
+            final Socks5BinaryAddress dstAddr = Socks5BinaryAddress.decode(dstAddrType, in);
+            if (dstAddr == null || in.readableBytes() < 2) {
+                in.readerOffset(readerIndex);
+                return;
+            }
+            request = new DefaultSocks5CommandRequest(type, dstAddr, in.readUnsignedShort());
+        } else {
+            final String dstAddr = addressDecoder.decodeAddress(dstAddrType, in);
+            if (dstAddr == null || in.readableBytes() < 2) {
+                in.readerOffset(readerIndex);
+                return;
+            }
+            request = new DefaultSocks5CommandRequest(type, dstAddrType, dstAddr, in.readUnsignedShort());
+        }
+
+        state = State.SUCCESS;
+        ctx.fireChannelRead(request);
+
+        // The handshake is complete.  Removing this decoder forwards the data received so far to the next handler.
+        if (!ctx.isRemoved()) {
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    private void fail(ChannelHandlerContext ctx, Exception cause) {
+        if (!(cause instanceof DecoderException)) {
+            cause = new DecoderException(cause);
+        }
+
+        final Socks5Message m;
+        switch (state) {
+        case INITIAL_REQUEST:
+            m = new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH);
+            break;
+        default:
+            m = new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "0.0.0.0", 1);
+            break;
+        }
+
+        state = State.FAILURE;
+
+        m.setDecoderResult(DecoderResult.failure(cause));
+        ctx.fireChannelRead(m);
+    }
+}
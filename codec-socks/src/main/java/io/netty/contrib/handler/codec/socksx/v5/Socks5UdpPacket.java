@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferHolder;
+import io.netty5.util.internal.StringUtil;
+
+import java.net.SocketAddress;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A datagram relayed through a SOCKS5 {@link Socks5CommandType#UDP_ASSOCIATE} association, as defined in
+ * <a href="https://www.rfc-editor.org/rfc/rfc1928#section-7">RFC 1928, section 7</a>.  It carries the
+ * {@code FRAG}, {@code DST.ADDR} and {@code DST.PORT} fields of the UDP request header, the payload that follows
+ * them, and the addresses of the enclosing datagram.
+ *
+ * @see Socks5UdpPacketDecoder
+ * @see Socks5UdpPacketEncoder
+ */
+public final class Socks5UdpPacket extends BufferHolder<Socks5UdpPacket> {
+
+    private final int frag;
+    private final Socks5BinaryAddress dstAddr;
+    private final int dstPort;
+    private final SocketAddress recipient;
+    private final SocketAddress sender;
+
+    /**
+     * Creates a new unfragmented packet to be sent to the specified recipient.
+     *
+     * @param content the payload
+     * @param dstAddr the {@code DST.ADDR} field
+     * @param dstPort the {@code DST.PORT} field
+     * @param recipient the address of the relay or client this packet is sent to
+     */
+    public Socks5UdpPacket(Buffer content, Socks5BinaryAddress dstAddr, int dstPort, SocketAddress recipient) {
+        this(content, 0, dstAddr, dstPort, recipient, null);
+    }
+
+    /**
+     * Creates a new packet.
+     *
+     * @param content the payload
+     * @param frag the {@code FRAG} field, {@code 0} for a standalone datagram
+     * @param dstAddr the {@code DST.ADDR} field
+     * @param dstPort the {@code DST.PORT} field
+     * @param recipient the address of the enclosing datagram's recipient
+     * @param sender the address of the enclosing datagram's sender, or {@code null}
+     */
+    public Socks5UdpPacket(Buffer content, int frag, Socks5BinaryAddress dstAddr, int dstPort,
+                           SocketAddress recipient, SocketAddress sender) {
+        super(content);
+        requireNonNull(dstAddr, "dstAddr");
+        requireNonNull(recipient, "recipient");
+        if (frag < 0 || frag > 255) {
+            throw new IllegalArgumentException("frag: " + frag + " (expected: 0~255)");
+        }
+        if (dstPort < 0 || dstPort > 65535) {
+            throw new IllegalArgumentException("dstPort: " + dstPort + " (expected: 0~65535)");
+        }
+
+        this.frag = frag;
+        this.dstAddr = dstAddr;
+        this.dstPort = dstPort;
+        this.recipient = recipient;
+        this.sender = sender;
+    }
+
+    @Override
+    protected Socks5UdpPacket receive(Buffer buf) {
+        return new Socks5UdpPacket(buf, frag, dstAddr, dstPort, recipient, sender);
+    }
+
+    /**
+     * Returns the payload of this packet.
+     */
+    public Buffer content() {
+        return getBuffer();
+    }
+
+    /**
+     * Returns the {@code FRAG} field of this packet, {@code 0} if it is a standalone datagram.
+     */
+    public int frag() {
+        return frag;
+    }
+
+    /**
+     * Returns the {@code DST.ADDR} field of this packet.  For a packet sent by a client it is the address the
+     * payload should be relayed to, and for a packet sent by a relay it is the address the payload was received from.
+     */
+    public Socks5BinaryAddress dstAddr() {
+        return dstAddr;
+    }
+
+    /**
+     * Returns the {@code DST.PORT} field of this packet.
+     */
+    public int dstPort() {
+        return dstPort;
+    }
+
+    /**
+     * Returns the address of the enclosing datagram's recipient.
+     */
+    public SocketAddress recipient() {
+        return recipient;
+    }
+
+    /**
+     * Returns the address of the enclosing datagram's sender, or {@code null} if unknown.
+     */
+    public SocketAddress sender() {
+        return sender;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(128);
+        buf.append(StringUtil.simpleClassName(this));
+        buf.append("(frag: ");
+        buf.append(frag);
+        buf.append(", dstAddrType: ");
+        buf.append(dstAddr.type());
+        buf.append(", dstAddr: ");
+        buf.append(dstAddr);
+        buf.append(", dstPort: ");
+        buf.append(dstPort);
+        buf.append(", recipient: ");
+        buf.append(recipient);
+        buf.append(", sender: ");
+        buf.append(sender);
+        buf.append(')');
+
+        return buf.toString();
+    }
+}
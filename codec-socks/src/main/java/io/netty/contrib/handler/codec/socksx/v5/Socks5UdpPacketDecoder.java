@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.handler.codec.MessageToMessageDecoder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decodes a {@link DatagramPacket} which starts with a SOCKS5 UDP request header into a {@link Socks5UdpPacket}.
+ * The payload of the decoded packet is split off the datagram's buffer, so it is never copied.  A datagram whose
+ * header is malformed or truncated is dropped with a {@link DecoderException}; unlike a stream, a datagram never
+ * receives more bytes later.
+ */
+public class Socks5UdpPacketDecoder extends MessageToMessageDecoder<DatagramPacket> {
+
+    private final Socks5AddressDecoder addressDecoder;
+
+    public Socks5UdpPacketDecoder() {
+        this(Socks5AddressDecoder.DEFAULT);
+    }
+
+    public Socks5UdpPacketDecoder(Socks5AddressDecoder addressDecoder) {
+        this.addressDecoder = requireNonNull(addressDecoder, "addressDecoder");
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, DatagramPacket msg) throws Exception {
+        final Buffer in = msg.content();
+        if (in.readableBytes() < 4) {
+            throw new DecoderException("truncated SOCKS5 UDP request header: " + in.readableBytes() + " bytes");
+        }
+        in.skipReadableBytes(2); // RSV
+        final int frag = in.readUnsignedByte();
+        final Socks5AddressType dstAddrType = Socks5AddressType.valueOf(in.readByte());
+
+        final Socks5BinaryAddress dstAddr;
+        if (addressDecoder == Socks5AddressDecoder.DEFAULT) {
+            dstAddr = Socks5BinaryAddress.decode(dstAddrType, in);
+        } else {
+            dstAddr = Socks5BinaryAddress.valueOf(dstAddrType, addressDecoder.decodeAddress(dstAddrType, in));
+        }
+        if (dstAddr == null || in.readableBytes() < 2) {
+            throw new DecoderException("truncated SOCKS5 UDP request header: " + dstAddrType);
+        }
+        final int dstPort = in.readUnsignedShort();
+
+        ctx.fireChannelRead(new Socks5UdpPacket(
+                in.readSplit(in.readableBytes()), frag, dstAddr, dstPort, msg.recipient(), msg.sender()));
+    }
+}
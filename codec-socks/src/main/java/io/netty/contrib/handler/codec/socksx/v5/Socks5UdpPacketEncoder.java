@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferAllocator;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encodes a {@link Socks5UdpPacket} into a {@link DatagramPacket} which starts with a SOCKS5 UDP request header.
+ * Each datagram is encoded into a single buffer of exactly the header and payload length.
+ */
+public class Socks5UdpPacketEncoder extends MessageToMessageEncoder<Socks5UdpPacket> {
+
+    public static final Socks5UdpPacketEncoder DEFAULT = new Socks5UdpPacketEncoder(Socks5AddressEncoder.DEFAULT);
+
+    private final Socks5AddressEncoder addressEncoder;
+
+    /**
+     * Creates a new instance with the default {@link Socks5AddressEncoder}.
+     */
+    protected Socks5UdpPacketEncoder() {
+        this(Socks5AddressEncoder.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance with the specified {@link Socks5AddressEncoder}.
+     */
+    public Socks5UdpPacketEncoder(Socks5AddressEncoder addressEncoder) {
+        this.addressEncoder = requireNonNull(addressEncoder, "addressEncoder");
+    }
+
+    /**
+     * Returns the {@link Socks5AddressEncoder} of this encoder.
+     */
+    protected final Socks5AddressEncoder addressEncoder() {
+        return addressEncoder;
+    }
+
+    /**
+     * Returns the number of bytes of the SOCKS5 UDP request header this encoder writes for the specified packet.
+     */
+    public int headerLength(Socks5UdpPacket msg) {
+        return headerLength(msg.dstAddr());
+    }
+
+    /**
+     * Returns the number of bytes of the SOCKS5 UDP request header this encoder writes for the specified destination.
+     */
+    public int headerLength(Socks5BinaryAddress dstAddr) {
+        return 6 + (addressEncoder == Socks5AddressEncoder.DEFAULT?
+                dstAddr.encodedLength() : Socks5BinaryAddress.encodedLength(dstAddr.type(), dstAddr.toString()));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Socks5UdpPacket msg, List<Object> out) throws Exception {
+        final Buffer content = msg.content();
+        final Buffer buf = ctx.bufferAllocator().allocate(headerLength(msg) + content.readableBytes());
+        try {
+            encodeHeader(msg, buf);
+            buf.writeBytes(content);
+        } catch (Throwable t) {
+            buf.close();
+            throw t;
+        }
+        out.add(new DatagramPacket(buf, msg.recipient(), msg.sender()));
+    }
+
+    /**
+     * Encodes the SOCKS5 UDP request header of the specified packet into the specified {@link Buffer}.
+     */
+    public final void encodeHeader(Socks5UdpPacket msg, Buffer out) throws Exception {
+        encodeHeader(msg.frag(), msg.dstAddr(), msg.dstPort(), out);
+    }
+
+    /**
+     * Encodes a SOCKS5 UDP request header with the specified fields into the specified {@link Buffer}.
+     */
+    public final void encodeHeader(int frag, Socks5BinaryAddress dstAddr, int dstPort, Buffer out) throws Exception {
+        out.writeShort((short) 0); // RSV
+        out.writeByte((byte) frag);
+
+        out.writeByte(dstAddr.type().byteValue());
+        if (addressEncoder == Socks5AddressEncoder.DEFAULT) {
+            dstAddr.encode(out);
+        } else {
+            addressEncoder.encodeAddress(dstAddr.type(), dstAddr.toString(), out);
+        }
+
+        out.writeShort((short) dstPort);
+    }
+
+    /**
+     * Encodes the unfragmented SOCKS5 UDP request header for the specified destination once and returns a
+     * {@link Supplier} of read-only {@link Buffer}s which share the encoded bytes.  A client which sends many
+     * datagrams to the same destination can prepend the supplied buffers to its payloads instead of encoding and
+     * allocating a header for every datagram.
+     *
+     * @param allocator the {@link BufferAllocator} that allocates the shared memory of the supplied buffers
+     */
+    public final Supplier<Buffer> newConstHeaderSupplier(
+            BufferAllocator allocator, Socks5BinaryAddress dstAddr, int dstPort) throws Exception {
+        requireNonNull(allocator, "allocator");
+        requireNonNull(dstAddr, "dstAddr");
+
+        final byte[] encoded;
+        try (Buffer buf = BufferAllocator.onHeapUnpooled().allocate(headerLength(dstAddr))) {
+            encodeHeader(0, dstAddr, dstPort, buf);
+            encoded = new byte[buf.readableBytes()];
+            buf.copyInto(buf.readerOffset(), encoded, 0, encoded.length);
+        }
+        return allocator.constBufferSupplier(encoded);
+    }
+
+    @Override
+    public boolean isSharable() {
+        return true;
+    }
+}
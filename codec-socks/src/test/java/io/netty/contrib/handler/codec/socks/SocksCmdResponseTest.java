@@ -31,6 +31,23 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SocksCmdResponseTest {
+    private static void assertEncodedLength(SocksCmdResponse response) {
+        try (Buffer buffer = preferredAllocator().allocate(256)) {
+            response.encodeAsBuffer(buffer);
+            assertEquals(buffer.readableBytes(), response.encodedLength());
+        }
+    }
+
+    @Test
+    public void testEncodedLength() {
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.SUCCESS, SocksAddressType.IPv4, "10.0.0.1", 80));
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.SUCCESS, SocksAddressType.IPv6, "::1", 80));
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.SUCCESS, SocksAddressType.DOMAIN, "netty.io", 80));
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.SUCCESS, SocksAddressType.DOMAIN));
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.FAILURE, SocksAddressType.IPv4));
+        assertEncodedLength(new SocksCmdResponse(SocksCmdStatus.FAILURE, SocksAddressType.UNKNOWN));
+    }
+
     @Test
     public void testConstructorParamsAreNotNull() {
         assertThrows(NullPointerException.class, () -> new SocksCmdResponse(null, SocksAddressType.UNKNOWN));
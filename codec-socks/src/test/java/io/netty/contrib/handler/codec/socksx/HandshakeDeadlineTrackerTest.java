@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx;
+
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker.Deadline;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HandshakeDeadlineTrackerTest {
+
+    private EmbeddedChannel channel;
+    private HandshakeDeadlineTracker tracker;
+
+    @BeforeEach
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        tracker = HandshakeDeadlineTracker.get(channel.executor());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private void advance(long millis) throws InterruptedException {
+        Thread.sleep(millis + HandshakeDeadlineTracker.TICK_MILLIS);
+        channel.runScheduledPendingTasks();
+    }
+
+    @Test
+    public void testSameTrackerPerEventLoop() {
+        assertSame(tracker, HandshakeDeadlineTracker.get(channel.executor()));
+        assertSame(channel.executor(), tracker.executor());
+    }
+
+    @Test
+    public void testExpireAndCancel() throws Exception {
+        AtomicInteger expired = new AtomicInteger();
+        Deadline soon = new Deadline(expired::incrementAndGet);
+        Deadline cancelled = new Deadline(expired::incrementAndGet);
+        Deadline late = new Deadline(expired::incrementAndGet);
+        tracker.schedule(soon, 20, TimeUnit.MILLISECONDS);
+        tracker.schedule(cancelled, 20, TimeUnit.MILLISECONDS);
+        tracker.schedule(late, 1, TimeUnit.MINUTES);
+        assertEquals(3, tracker.armedDeadlines());
+
+        cancelled.cancel();
+        assertFalse(cancelled.isArmed());
+        assertEquals(2, tracker.armedDeadlines());
+
+        advance(20);
+        assertEquals(1, expired.get());
+        assertFalse(soon.isArmed());
+        assertTrue(late.isArmed());
+        assertEquals(1, tracker.armedDeadlines());
+
+        late.cancel();
+        assertEquals(0, tracker.armedDeadlines());
+    }
+
+    @Test
+    public void testRearm() throws Exception {
+        AtomicInteger expired = new AtomicInteger();
+        Deadline deadline = new Deadline(expired::incrementAndGet);
+        tracker.schedule(deadline, 20, TimeUnit.MILLISECONDS);
+        tracker.schedule(deadline, 1, TimeUnit.MINUTES);
+        assertEquals(1, tracker.armedDeadlines());
+
+        advance(20);
+        assertEquals(0, expired.get());
+
+        tracker.schedule(deadline, 0, TimeUnit.MILLISECONDS);
+        advance(0);
+        assertEquals(1, expired.get());
+
+        // Reused once it has expired.
+        tracker.schedule(deadline, 0, TimeUnit.MILLISECONDS);
+        advance(0);
+        assertEquals(2, expired.get());
+    }
+
+    @Test
+    public void testCancelledByAnotherExpiringDeadline() throws Exception {
+        AtomicInteger expired = new AtomicInteger();
+        Deadline[] deadlines = new Deadline[2];
+        deadlines[0] = new Deadline(() -> {
+            expired.incrementAndGet();
+            deadlines[1].cancel();
+        });
+        deadlines[1] = new Deadline(() -> {
+            expired.incrementAndGet();
+            deadlines[0].cancel();
+        });
+        tracker.schedule(deadlines[0], 0, TimeUnit.MILLISECONDS);
+        tracker.schedule(deadlines[1], 0, TimeUnit.MILLISECONDS);
+
+        advance(0);
+        assertEquals(1, expired.get());
+        assertEquals(0, tracker.armedDeadlines());
+    }
+
+    @Test
+    public void testExceptionDoesNotStopExpiry() throws Exception {
+        AtomicInteger expired = new AtomicInteger();
+        tracker.schedule(new Deadline(() -> {
+            throw new IllegalStateException("expected");
+        }), 0, TimeUnit.MILLISECONDS);
+        tracker.schedule(new Deadline(expired::incrementAndGet), 0, TimeUnit.MILLISECONDS);
+
+        advance(0);
+        assertEquals(1, expired.get());
+        assertEquals(0, tracker.armedDeadlines());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.IDN;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SocksIdnUtilTest {
+
+    private static final String[] NAMES = {
+            "", ".", "netty.io", "netty.io.", "NETTY.IO", "xn--e1afmkfd.xn--80akhbyknj4f", "XN--E1AFMKFD.com",
+            "пример.испытание", "例子.测试", "παράδειγμα.δοκιμή", "a_b c!", "a--b.xn--",
+    };
+
+    @Test
+    public void testSameResultAsIdn() {
+        for (String name : NAMES) {
+            assertEquals(IDN.toASCII(name), SocksIdnUtil.toAscii(name), name);
+            // Twice to hit the cache.
+            assertEquals(IDN.toASCII(name), SocksIdnUtil.toAscii(name), name);
+            assertEquals(IDN.toUnicode(name), SocksIdnUtil.toUnicode(name), name);
+            assertEquals(IDN.toUnicode(name), SocksIdnUtil.toUnicode(name), name);
+        }
+    }
+
+    @Test
+    public void testAsciiNameIsReturnedAsIs() {
+        String name = "www.netty.io";
+        assertSame(name, SocksIdnUtil.toAscii(name));
+        assertSame(name, SocksIdnUtil.toUnicode(name));
+    }
+
+    @Test
+    public void testInvalidAsciiLabels() {
+        String longLabel = "a".repeat(64);
+        for (String name : new String[] { "a..b", "..", ".a", longLabel, longLabel + ".com", "netty." + longLabel }) {
+            assertThrows(IllegalArgumentException.class, () -> IDN.toASCII(name), name);
+            assertThrows(IllegalArgumentException.class, () -> SocksIdnUtil.toAscii(name), name);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5BinaryAddressTest {
+
+    @Test
+    public void testIPv4() throws Exception {
+        Socks5BinaryAddress addr = Socks5BinaryAddress.ipv4(0x7f000001);
+        assertEquals(Socks5AddressType.IPv4, addr.type());
+        assertEquals("127.0.0.1", addr.toString());
+        assertEquals(InetAddress.getByName("127.0.0.1"), addr.toInetAddress());
+        assertEquals(addr, Socks5BinaryAddress.valueOf(Socks5AddressType.IPv4, "127.0.0.1"));
+        assertThrows(IllegalStateException.class, addr::ipv6High);
+    }
+
+    @Test
+    public void testIPv6() throws Exception {
+        Socks5BinaryAddress addr = Socks5BinaryAddress.valueOf(Socks5AddressType.IPv6, "2001:db8::1");
+        assertEquals(0x20010db800000000L, addr.ipv6High());
+        assertEquals(1L, addr.ipv6Low());
+        assertEquals(InetAddress.getByName("2001:db8::1"), addr.toInetAddress());
+        assertEquals("2001:db8::1", Socks5BinaryAddress.ipv6(0x20010db800000000L, 1L).toString());
+    }
+
+    @Test
+    public void testDomain() {
+        Socks5BinaryAddress addr = Socks5BinaryAddress.domain("netty.io".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("netty.io", addr.toString());
+        assertEquals(8, addr.domainLength());
+        byte[] name = new byte[8];
+        addr.copyDomain(name, 0);
+        assertArrayEquals("netty.io".getBytes(StandardCharsets.US_ASCII), name);
+        assertThrows(IllegalStateException.class, addr::toInetAddress);
+
+        InetSocketAddress socketAddress = addr.toSocketAddress(443);
+        assertTrue(socketAddress.isUnresolved());
+        assertEquals("netty.io", socketAddress.getHostString());
+        assertEquals(443, socketAddress.getPort());
+    }
+
+    @Test
+    public void testValueOfNullOrUnknown() {
+        assertNull(Socks5BinaryAddress.valueOf(Socks5AddressType.IPv4, null));
+        assertNull(Socks5BinaryAddress.valueOf(new Socks5AddressType(0x02), "127.0.0.1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Socks5BinaryAddress.valueOf(Socks5AddressType.IPv4, "netty.io"));
+    }
+
+    @Test
+    public void testDecodeEncode() {
+        try (Buffer buf = preferredAllocator().allocate(64)) {
+            buf.writeByte((byte) 8);
+            buf.writeCharSequence("netty.io", StandardCharsets.US_ASCII);
+            buf.writeInt(0x7f000001);
+            buf.writeLong(0x20010db800000000L);
+            buf.writeLong(1L);
+
+            Socks5BinaryAddress domain = Socks5BinaryAddress.decode(Socks5AddressType.DOMAIN, buf);
+            Socks5BinaryAddress ipv4 = Socks5BinaryAddress.decode(Socks5AddressType.IPv4, buf);
+            Socks5BinaryAddress ipv6 = Socks5BinaryAddress.decode(Socks5AddressType.IPv6, buf);
+            assertEquals("netty.io", domain.toString());
+            assertEquals("127.0.0.1", ipv4.toString());
+            assertEquals("2001:db8::1", ipv6.toString());
+            assertEquals(0, buf.readableBytes());
+
+            domain.encode(buf);
+            ipv4.encode(buf);
+            ipv6.encode(buf);
+            assertEquals(9 + 4 + 16, buf.readableBytes());
+            assertEquals(domain, Socks5BinaryAddress.decode(Socks5AddressType.DOMAIN, buf));
+            assertEquals(ipv4, Socks5BinaryAddress.decode(Socks5AddressType.IPv4, buf));
+            assertEquals(ipv6, Socks5BinaryAddress.decode(Socks5AddressType.IPv6, buf));
+        }
+    }
+
+    @Test
+    public void testDecodeNotEnoughBytes() {
+        try (Buffer buf = preferredAllocator().allocate(8)) {
+            buf.writeByte((byte) 8);
+            buf.writeCharSequence("netty", StandardCharsets.US_ASCII);
+            assertNull(Socks5BinaryAddress.decode(Socks5AddressType.DOMAIN, buf));
+            assertNull(Socks5BinaryAddress.decode(Socks5AddressType.IPv6, buf));
+            assertEquals(0, buf.readerOffset());
+            assertThrows(DecoderException.class,
+                    () -> Socks5BinaryAddress.decode(new Socks5AddressType(0x02), buf));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5ClientEncoderTest {
+
+    private static void testConstBufferSupplier(Socks5Message msg) throws Exception {
+        Supplier<Buffer> supplier = Socks5ClientEncoder.DEFAULT.newConstBufferSupplier(preferredAllocator(), msg);
+        try (Buffer expected = Socks5CommonTestUtils.encodeClient(msg);
+             Buffer first = supplier.get();
+             Buffer second = supplier.get()) {
+            assertTrue(first.readOnly());
+            assertEquals(expected, first);
+            assertEquals(expected, second);
+        }
+    }
+
+    private static void testEncodedLength(Socks5Message msg) throws Exception {
+        try (Buffer encoded = Socks5CommonTestUtils.encodeClient(msg)) {
+            assertEquals(encoded.readableBytes(), Socks5ClientEncoder.DEFAULT.encodedLength(msg));
+        }
+    }
+
+    @Test
+    public void testEncodedLength() throws Exception {
+        testEncodedLength(new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH));
+        testEncodedLength(new DefaultSocks5PasswordAuthRequest("user", "secret"));
+        testEncodedLength(new DefaultSocks5CommandRequest(
+                Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        testEncodedLength(new DefaultSocks5CommandRequest(
+                Socks5CommandType.CONNECT, Socks5AddressType.IPv6, "::1", 80));
+        testEncodedLength(new DefaultSocks5CommandRequest(
+                Socks5CommandType.CONNECT, Socks5AddressType.DOMAIN, "netty.io", 80));
+    }
+
+    @Test
+    public void testEncodeIntoScratchBuffer() throws Exception {
+        Socks5Message msg = new DefaultSocks5CommandRequest(
+                Socks5CommandType.CONNECT, Socks5AddressType.DOMAIN, "netty.io", 80);
+        try (Buffer expected = Socks5CommonTestUtils.encodeClient(msg);
+             Buffer scratch = preferredAllocator().allocate(64)) {
+            for (int i = 0; i < 2; i ++) {
+                scratch.resetOffsets();
+                Socks5ClientEncoder.DEFAULT.encode(msg, scratch);
+                assertEquals(expected, scratch);
+            }
+        }
+    }
+
+    @Test
+    public void testConstInitialRequest() throws Exception {
+        testConstBufferSupplier(new DefaultSocks5InitialRequest(
+                Arrays.asList(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD)));
+    }
+
+    @Test
+    public void testConstPasswordAuthRequest() throws Exception {
+        testConstBufferSupplier(new DefaultSocks5PasswordAuthRequest("user", "secret"));
+    }
+}
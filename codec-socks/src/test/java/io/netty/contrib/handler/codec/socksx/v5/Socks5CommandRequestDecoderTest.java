@@ -48,6 +48,7 @@ public class Socks5CommandRequestDecoderTest {
         assertSame(msg.type(), type);
         assertSame(msg.dstAddrType(), dstAddrType);
         assertEquals(msg.dstAddr(), IDN.toASCII(dstAddr));
+        assertEquals(msg.binaryDstAddr(), Socks5BinaryAddress.valueOf(dstAddrType, IDN.toASCII(dstAddr)));
         assertEquals(msg.dstPort(), dstPort);
         assertNull(embedder.readInbound());
     }
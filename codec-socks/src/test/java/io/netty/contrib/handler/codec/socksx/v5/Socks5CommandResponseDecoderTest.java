@@ -15,6 +15,7 @@
  */
 package io.netty.contrib.handler.codec.socksx.v5;
 
+import io.netty5.buffer.Buffer;
 import io.netty5.channel.embedded.EmbeddedChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +23,10 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -98,4 +102,37 @@ public class Socks5CommandResponseDecoderTest {
                  "1111:111:11:1::1", 80);
         }
     }
+
+    /**
+     * Verifies that both replies to a BIND request are decoded, even if they are received at once.
+     */
+    @Test
+    public void testBindResponses() {
+        Buffer buf = preferredAllocator().allocate(32);
+        for (Socks5CommandResponse res : Arrays.asList(
+                new DefaultSocks5CommandResponse(
+                        Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4, "10.0.0.1", 40000),
+                new DefaultSocks5CommandResponse(
+                        Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4, "10.0.0.2", 21))) {
+            try (Buffer encoded = Socks5CommonTestUtils.encodeServer(res)) {
+                buf.writeBytes(encoded);
+            }
+        }
+        buf.writeByte((byte) 42);
+
+        EmbeddedChannel embedder = new EmbeddedChannel(
+                new Socks5CommandResponseDecoder(Socks5AddressDecoder.DEFAULT, Socks5CommandType.BIND));
+        embedder.writeInbound(buf);
+        Socks5CommandResponse first = embedder.readInbound();
+        assertEquals("10.0.0.1", first.bndAddr());
+        assertEquals(40000, first.bndPort());
+        Socks5CommandResponse second = embedder.readInbound();
+        assertEquals("10.0.0.2", second.bndAddr());
+        assertEquals(21, second.bndPort());
+        try (Buffer trailing = embedder.readInbound()) {
+            assertEquals(42, trailing.readByte());
+        }
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
 }
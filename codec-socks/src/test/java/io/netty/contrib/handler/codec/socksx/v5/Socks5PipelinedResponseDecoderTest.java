@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5PipelinedResponseDecoderTest {
+
+    private static Buffer concat(Socks5Message... msgs) {
+        Buffer buf = preferredAllocator().allocate(64);
+        for (Socks5Message msg : msgs) {
+            try (Buffer encoded = Socks5CommonTestUtils.encodeServer(msg)) {
+                buf.writeBytes(encoded);
+            }
+        }
+        return buf;
+    }
+
+    @Test
+    public void testPasswordAuthInOneRead() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5PipelinedResponseDecoder());
+        embedder.writeInbound(concat(
+                new DefaultSocks5InitialResponse(Socks5AuthMethod.PASSWORD),
+                new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.SUCCESS),
+                new DefaultSocks5CommandResponse(Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4, "1.2.3.4", 80)));
+
+        Socks5InitialResponse initial = embedder.readInbound();
+        assertSame(Socks5AuthMethod.PASSWORD, initial.authMethod());
+        Socks5PasswordAuthResponse auth = embedder.readInbound();
+        assertSame(Socks5PasswordAuthStatus.SUCCESS, auth.status());
+        Socks5CommandResponse cmd = embedder.readInbound();
+        assertSame(Socks5CommandStatus.SUCCESS, cmd.status());
+        assertEquals("1.2.3.4", cmd.bndAddr());
+        assertEquals(80, cmd.bndPort());
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testNoAuthWithTrailingData() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5PipelinedResponseDecoder());
+        Buffer buf = concat(
+                new DefaultSocks5InitialResponse(Socks5AuthMethod.NO_AUTH),
+                new DefaultSocks5CommandResponse(Socks5CommandStatus.SUCCESS, Socks5AddressType.DOMAIN, "foo", 443));
+        buf.writeByte((byte) 42);
+        embedder.writeInbound(buf);
+
+        Socks5InitialResponse initial = embedder.readInbound();
+        assertSame(Socks5AuthMethod.NO_AUTH, initial.authMethod());
+        Socks5CommandResponse cmd = embedder.readInbound();
+        assertEquals("foo", cmd.bndAddr());
+        assertEquals(443, cmd.bndPort());
+        try (Buffer trailing = embedder.readInbound()) {
+            assertEquals(1, trailing.readableBytes());
+            assertEquals(42, trailing.readByte());
+        }
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testSplitResponses() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5PipelinedResponseDecoder());
+        Buffer buf = concat(
+                new DefaultSocks5InitialResponse(Socks5AuthMethod.NO_AUTH),
+                new DefaultSocks5CommandResponse(Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4, "1.2.3.4", 80));
+        embedder.writeInbound(buf.readSplit(3));
+        Socks5InitialResponse initial = embedder.readInbound();
+        assertSame(Socks5AuthMethod.NO_AUTH, initial.authMethod());
+        assertNull(embedder.readInbound());
+
+        embedder.writeInbound(buf);
+        Socks5CommandResponse cmd = embedder.readInbound();
+        assertEquals("1.2.3.4", cmd.bndAddr());
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testInvalidVersion() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5PipelinedResponseDecoder());
+        embedder.writeInbound(preferredAllocator().copyOf(new byte[] { 4, 0 }));
+        Socks5InitialResponse initial = embedder.readInbound();
+        assertTrue(initial.decoderResult().isFailure());
+        assertSame(Socks5AuthMethod.UNACCEPTED, initial.authMethod());
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
+}
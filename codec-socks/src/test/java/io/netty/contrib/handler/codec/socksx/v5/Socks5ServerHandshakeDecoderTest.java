@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5ServerHandshakeDecoderTest {
+
+    private static Buffer concat(Socks5Message... msgs) {
+        Buffer buf = preferredAllocator().allocate(64);
+        for (Socks5Message msg : msgs) {
+            try (Buffer encoded = Socks5CommonTestUtils.encodeClient(msg)) {
+                buf.writeBytes(encoded);
+            }
+        }
+        return buf;
+    }
+
+    @Test
+    public void testPasswordAuthInOneRead() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5ServerHandshakeDecoder());
+        Buffer buf = concat(
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.PASSWORD),
+                new DefaultSocks5PasswordAuthRequest("user", "secret"),
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.DOMAIN, "netty.io", 443));
+        buf.writeByte((byte) 42);
+        embedder.writeInbound(buf);
+
+        Socks5InitialRequest initial = embedder.readInbound();
+        assertEquals(1, initial.authMethods().size());
+        assertSame(Socks5AuthMethod.PASSWORD, initial.authMethods().get(0));
+        Socks5PasswordAuthRequest auth = embedder.readInbound();
+        assertEquals("user", auth.username());
+        assertEquals("secret", auth.password());
+        Socks5CommandRequest cmd = embedder.readInbound();
+        assertSame(Socks5CommandType.CONNECT, cmd.type());
+        assertEquals("netty.io", cmd.dstAddr());
+        assertEquals(443, cmd.dstPort());
+        try (Buffer trailing = embedder.readInbound()) {
+            assertEquals(1, trailing.readableBytes());
+            assertEquals(42, trailing.readByte());
+        }
+        assertNull(embedder.readInbound());
+        assertNull(embedder.pipeline().get(Socks5ServerHandshakeDecoder.class));
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testNoAuthInSeparateReads() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5ServerHandshakeDecoder());
+        Socks5CommonTestUtils.writeFromClientToServer(
+                embedder, new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH));
+        Socks5InitialRequest initial = embedder.readInbound();
+        assertSame(Socks5AuthMethod.NO_AUTH, initial.authMethods().get(0));
+        assertNull(embedder.readInbound());
+
+        Socks5CommonTestUtils.writeFromClientToServer(embedder, new DefaultSocks5CommandRequest(
+                Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        Socks5CommandRequest cmd = embedder.readInbound();
+        assertEquals("10.0.0.1", cmd.dstAddr());
+        assertEquals(80, cmd.dstPort());
+        assertNull(embedder.readInbound());
+        assertNull(embedder.pipeline().get(Socks5ServerHandshakeDecoder.class));
+        assertFalse(embedder.finish());
+    }
+
+    @Test
+    public void testUnsupportedSubsequentVersion() {
+        EmbeddedChannel embedder = new EmbeddedChannel(new Socks5ServerHandshakeDecoder());
+        Buffer buf = concat(new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH));
+        buf.writeByte((byte) 4);
+        embedder.writeInbound(buf);
+
+        Socks5InitialRequest initial = embedder.readInbound();
+        assertTrue(initial.decoderResult().isSuccess());
+        Socks5CommandRequest cmd = embedder.readInbound();
+        assertTrue(cmd.decoderResult().isFailure());
+        assertNull(embedder.readInbound());
+        assertFalse(embedder.finish());
+    }
+}
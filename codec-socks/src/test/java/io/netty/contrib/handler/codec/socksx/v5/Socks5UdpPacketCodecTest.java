@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.codec.socksx.v5;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5UdpPacketCodecTest {
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 40000);
+    private static final InetSocketAddress RELAY = new InetSocketAddress("127.0.0.1", 1080);
+
+    private static Buffer payload(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return preferredAllocator().allocate(bytes.length).writeBytes(bytes);
+    }
+
+    private static void testRoundTrip(Socks5BinaryAddress dstAddr, int dstPort) {
+        EmbeddedChannel encoder = new EmbeddedChannel(Socks5UdpPacketEncoder.DEFAULT);
+        encoder.writeOutbound(new Socks5UdpPacket(payload("hello"), dstAddr, dstPort, RELAY));
+        DatagramPacket datagram = encoder.readOutbound();
+        assertEquals(RELAY, datagram.recipient());
+        assertEquals(6 + dstAddr.encodedLength() + 5, datagram.content().readableBytes());
+        assertFalse(encoder.finish());
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new Socks5UdpPacketDecoder());
+        decoder.writeInbound(new DatagramPacket(datagram.content().split(), RELAY, CLIENT));
+        datagram.close();
+        try (Socks5UdpPacket packet = decoder.readInbound()) {
+            assertEquals(0, packet.frag());
+            assertEquals(dstAddr, packet.dstAddr());
+            assertEquals(dstPort, packet.dstPort());
+            assertEquals(RELAY, packet.recipient());
+            assertEquals(CLIENT, packet.sender());
+            assertEquals("hello", packet.content().toString(StandardCharsets.US_ASCII));
+        }
+        assertNull(decoder.readInbound());
+        assertFalse(decoder.finish());
+    }
+
+    @Test
+    public void testIPv4() {
+        testRoundTrip(Socks5BinaryAddress.valueOf(Socks5AddressType.IPv4, "8.8.8.8"), 53);
+    }
+
+    @Test
+    public void testIPv6() {
+        testRoundTrip(Socks5BinaryAddress.valueOf(Socks5AddressType.IPv6, "2001:db8::1"), 443);
+    }
+
+    @Test
+    public void testDomain() {
+        testRoundTrip(Socks5BinaryAddress.valueOf(Socks5AddressType.DOMAIN, "netty.io"), 65535);
+    }
+
+    @Test
+    public void testFragmentIsDecoded() {
+        Buffer buf = preferredAllocator().allocate(16);
+        buf.writeShort((short) 0);
+        buf.writeByte((byte) 3);
+        buf.writeByte(Socks5AddressType.IPv4.byteValue());
+        buf.writeInt(0x0a000001);
+        buf.writeShort((short) 5353);
+        buf.writeByte((byte) 42);
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new Socks5UdpPacketDecoder());
+        decoder.writeInbound(new DatagramPacket(buf, RELAY, CLIENT));
+        try (Socks5UdpPacket packet = decoder.readInbound()) {
+            assertEquals(3, packet.frag());
+            assertEquals(Socks5BinaryAddress.ipv4(0x0a000001), packet.dstAddr());
+            assertEquals(5353, packet.dstPort());
+            assertEquals(1, packet.content().readableBytes());
+            assertEquals(42, packet.content().readByte());
+        }
+        assertFalse(decoder.finish());
+    }
+
+    @Test
+    public void testTruncatedHeader() {
+        Buffer buf = preferredAllocator().allocate(8);
+        buf.writeShort((short) 0);
+        buf.writeByte((byte) 0);
+        buf.writeByte(Socks5AddressType.IPv4.byteValue());
+        buf.writeShort((short) 0x0a00);
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new Socks5UdpPacketDecoder());
+        assertThrows(DecoderException.class, () -> decoder.writeInbound(new DatagramPacket(buf, RELAY, CLIENT)));
+        assertNull(decoder.readInbound());
+        assertFalse(decoder.finish());
+    }
+
+    @Test
+    public void testConstHeaderSupplier() throws Exception {
+        Socks5BinaryAddress dstAddr = Socks5BinaryAddress.valueOf(Socks5AddressType.DOMAIN, "netty.io");
+        Supplier<Buffer> headers = Socks5UdpPacketEncoder.DEFAULT.newConstHeaderSupplier(
+                preferredAllocator(), dstAddr, 443);
+
+        try (Socks5UdpPacket packet = new Socks5UdpPacket(payload(""), dstAddr, 443, RELAY);
+             Buffer expected = preferredAllocator().allocate(Socks5UdpPacketEncoder.DEFAULT.headerLength(packet));
+             Buffer first = headers.get();
+             Buffer second = headers.get()) {
+            Socks5UdpPacketEncoder.DEFAULT.encodeHeader(packet, expected);
+            assertTrue(first.readOnly());
+            assertEquals(expected, first);
+            assertEquals(expected, second);
+        }
+    }
+}
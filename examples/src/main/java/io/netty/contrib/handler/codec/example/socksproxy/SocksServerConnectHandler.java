@@ -85,8 +85,7 @@ public final class SocksServerConnectHandler extends SimpleChannelInboundHandler
                     Future<Void> responseFuture =
                             ctx.channel().writeAndFlush(new DefaultSocks5CommandResponse(
                                     Socks5CommandStatus.SUCCESS,
-                                    request.dstAddrType(),
-                                    request.dstAddr(),
+                                    request.binaryDstAddr(),
                                     request.dstPort()));
 
                     responseFuture.addListener(fut -> {
@@ -108,7 +107,8 @@ public final class SocksServerConnectHandler extends SimpleChannelInboundHandler
                     .option(ChannelOption.SO_KEEPALIVE, true)
                     .handler(new DirectClientHandler(promise));
 
-            b.connect(request.dstAddr(), request.dstPort()).addListener(future -> {
+            // IP addresses are used as-is, without a round trip through their string form.
+            b.connect(request.binaryDstAddr().toSocketAddress(request.dstPort())).addListener(future -> {
                 if (future.isSuccess()) {
                     // Connection established use handler provided results
                 } else {
@@ -24,7 +24,6 @@ import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialResponse;
 import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthResponse;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest;
-import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequestDecoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialRequest;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthRequest;
@@ -52,12 +51,9 @@ public final class SocksServerHandler extends SimpleChannelInboundHandler<SocksM
             case SOCKS5:
                 if (socksRequest instanceof Socks5InitialRequest) {
                     // auth support example
-                    //ctx.pipeline().addFirst(new Socks5PasswordAuthRequestDecoder());
                     //ctx.write(new DefaultSocks5AuthMethodResponse(Socks5AuthMethod.PASSWORD));
-                    ctx.pipeline().addFirst(new Socks5CommandRequestDecoder());
                     ctx.write(new DefaultSocks5InitialResponse(Socks5AuthMethod.NO_AUTH));
                 } else if (socksRequest instanceof Socks5PasswordAuthRequest) {
-                    ctx.pipeline().addFirst(new Socks5CommandRequestDecoder());
                     ctx.write(new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.SUCCESS));
                 } else if (socksRequest instanceof Socks5CommandRequest) {
                     Socks5CommandRequest socks5CmdRequest = (Socks5CommandRequest) socksRequest;
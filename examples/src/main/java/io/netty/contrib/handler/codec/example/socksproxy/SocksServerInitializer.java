@@ -18,6 +18,7 @@ package io.netty.contrib.handler.codec.example.socksproxy;
 import io.netty5.channel.ChannelInitializer;
 import io.netty5.channel.socket.SocketChannel;
 import io.netty.contrib.handler.codec.socksx.SocksPortUnificationServerHandler;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
 import io.netty5.handler.logging.LogLevel;
 import io.netty5.handler.logging.LoggingHandler;
 
@@ -26,7 +27,8 @@ public final class SocksServerInitializer extends ChannelInitializer<SocketChann
     public void initChannel(SocketChannel ch) throws Exception {
         ch.pipeline().addLast(
                 new LoggingHandler(LogLevel.DEBUG),
-                new SocksPortUnificationServerHandler(),
+                // Decode the whole SOCKS5 handshake with one decoder, so SocksServerHandler does not add any.
+                new SocksPortUnificationServerHandler(Socks5ServerEncoder.DEFAULT, true),
                 SocksServerHandler.INSTANCE);
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import java.util.Arrays;
+
+/**
+ * Records the {@link ProxyHandshakePhase}s of one connection attempt of a {@link ProxyHandler}.  Only accessed from
+ * the event loop of the channel.
+ */
+final class HandshakeTimer {
+
+    private boolean started;
+    private long startNanos;
+    private long connectedNanos = -1;
+    private long initialMessageSentNanos = -1;
+    private long[] responseReceivedNanos = new long[4];
+    private int responses;
+    private long codecRemovedNanos = -1;
+    private long pendingWritesFlushedNanos = -1;
+
+    /**
+     * Starts a new attempt, forgetting the phases of the previous one.
+     */
+    void start() {
+        started = true;
+        startNanos = System.nanoTime();
+        connectedNanos = -1;
+        initialMessageSentNanos = -1;
+        responses = 0;
+        codecRemovedNanos = -1;
+        pendingWritesFlushedNanos = -1;
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Records that the specified phase has been reached now, unless it was reached before.
+     *
+     * @return the time since the attempt started, or {@code -1} if nothing was recorded
+     */
+    long mark(ProxyHandshakePhase phase) {
+        if (!started) {
+            return -1;
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        switch (phase) {
+        case CONNECTED:
+            if (connectedNanos >= 0) {
+                return -1;
+            }
+            connectedNanos = elapsedNanos;
+            break;
+        case INITIAL_MESSAGE_SENT:
+            if (initialMessageSentNanos >= 0) {
+                return -1;
+            }
+            initialMessageSentNanos = elapsedNanos;
+            break;
+        case RESPONSE_RECEIVED:
+            if (responses == responseReceivedNanos.length) {
+                responseReceivedNanos = Arrays.copyOf(responseReceivedNanos, responses << 1);
+            }
+            responseReceivedNanos[responses++] = elapsedNanos;
+            break;
+        case CODEC_REMOVED:
+            if (codecRemovedNanos >= 0) {
+                return -1;
+            }
+            codecRemovedNanos = elapsedNanos;
+            break;
+        case PENDING_WRITES_FLUSHED:
+            if (pendingWritesFlushedNanos >= 0) {
+                return -1;
+            }
+            pendingWritesFlushedNanos = elapsedNanos;
+            break;
+        default:
+            throw new Error();
+        }
+        return elapsedNanos;
+    }
+
+    ProxyHandshakeTimings timings() {
+        return new ProxyHandshakeTimings(connectedNanos, initialMessageSentNanos,
+                                         Arrays.copyOf(responseReceivedNanos, responses),
+                                         codecRemovedNanos, pendingWritesFlushedNanos);
+    }
+}
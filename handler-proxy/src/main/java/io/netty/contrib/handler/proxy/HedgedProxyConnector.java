@@ -0,0 +1,337 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connects through one of several equivalent proxy servers, hedging against a slow one.  The handshake with the
+ * first proxy server starts right away; if it has not completed within the hedge delay, a handshake with the next
+ * proxy server starts as well.  The connection whose {@link ProxyHandler} completes first is kept and the other one
+ * is closed, so that one slow proxy server costs the hedge delay rather than its own latency.  A failed handshake
+ * starts the next one right away, until every proxy server has been tried, and the hedge delay starts over for it.
+ * <p>
+ * The proxy servers are tried in the given order, best first, or in the order a {@link ProxyEndpointSelector}
+ * chooses them, in which case the outcome of every handshake, including the failure to reach the proxy server, is
+ * recorded to the selector; a handshake that lost the race is not counted.  As with {@link ProxyConnectionPool},
+ * the handlers of the application are added to the pipeline of the returned channel, after the
+ * {@link ProxyHandler}.
+ */
+public final class HedgedProxyConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedProxyConnector.class);
+
+    private final Bootstrap bootstrap;
+    private final Function<? super SocketAddress, ? extends ProxyHandler> handlerFactory;
+    private final List<SocketAddress> proxyAddresses;
+    private final ProxyEndpointSelector selector;
+    private final long hedgeDelayMillis;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bootstrap the {@link Bootstrap} the connections are made with, whose event loop group, channel type and
+     *                  options are already set; its handler is replaced
+     * @param handlerFactory creates the {@link ProxyHandler} of a connection to the given proxy address
+     * @param proxyAddresses the addresses of the proxy servers, best first
+     * @param hedgeDelayMillis how long a handshake may take before the next proxy server is tried in parallel
+     */
+    public HedgedProxyConnector(Bootstrap bootstrap,
+                                Function<? super SocketAddress, ? extends ProxyHandler> handlerFactory,
+                                List<? extends SocketAddress> proxyAddresses, long hedgeDelayMillis) {
+        this(bootstrap, handlerFactory, copyOf(proxyAddresses), null, hedgeDelayMillis);
+    }
+
+    /**
+     * Creates a new instance which tries the proxy servers in the order the specified selector chooses them.
+     *
+     * @param bootstrap the {@link Bootstrap} the connections are made with, whose event loop group, channel type and
+     *                  options are already set; its handler is replaced
+     * @param handlerFactory creates the {@link ProxyHandler} of a connection to the given proxy address
+     * @param selector chooses the proxy servers and records the outcomes of the handshakes
+     * @param hedgeDelayMillis how long a handshake may take before the next proxy server is tried in parallel
+     */
+    public HedgedProxyConnector(Bootstrap bootstrap,
+                                Function<? super SocketAddress, ? extends ProxyHandler> handlerFactory,
+                                ProxyEndpointSelector selector, long hedgeDelayMillis) {
+        this(bootstrap, handlerFactory, requireNonNull(selector, "selector").proxyAddresses(), selector,
+             hedgeDelayMillis);
+    }
+
+    private HedgedProxyConnector(Bootstrap bootstrap,
+                                 Function<? super SocketAddress, ? extends ProxyHandler> handlerFactory,
+                                 List<SocketAddress> proxyAddresses, ProxyEndpointSelector selector,
+                                 long hedgeDelayMillis) {
+        this.bootstrap = requireNonNull(bootstrap, "bootstrap");
+        this.handlerFactory = requireNonNull(handlerFactory, "handlerFactory");
+        this.proxyAddresses = proxyAddresses;
+        this.selector = selector;
+        if (hedgeDelayMillis <= 0) {
+            throw new IllegalArgumentException("hedgeDelayMillis: " + hedgeDelayMillis + " (expected: > 0)");
+        }
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    private static List<SocketAddress> copyOf(List<? extends SocketAddress> proxyAddresses) {
+        requireNonNull(proxyAddresses, "proxyAddresses");
+        if (proxyAddresses.isEmpty()) {
+            throw new IllegalArgumentException("proxyAddresses is empty");
+        }
+        final List<SocketAddress> list = new ArrayList<>(proxyAddresses.size());
+        for (SocketAddress proxyAddress : proxyAddresses) {
+            list.add(requireNonNull(proxyAddress, "proxyAddress"));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the addresses of the proxy servers, best first unless they are chosen by a
+     * {@link ProxyEndpointSelector}.
+     */
+    public List<SocketAddress> proxyAddresses() {
+        return proxyAddresses;
+    }
+
+    /**
+     * Returns the {@link ProxyEndpointSelector} which chooses the proxy servers, or {@code null} if they are tried in
+     * the given order.
+     */
+    public ProxyEndpointSelector selector() {
+        return selector;
+    }
+
+    /**
+     * Returns how long a handshake may take before the next proxy server is tried in parallel.
+     */
+    public long hedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    /**
+     * Connects to the specified destination through the first proxy server that completes the handshake.
+     * Cancelling the returned {@link Future} closes the connections of all attempts.
+     *
+     * @return the {@link Future} which is notified with the channel whose {@link ProxyHandler} has completed the
+     *         handshake first
+     */
+    public Future<Channel> connect(SocketAddress destination) {
+        requireNonNull(destination, "destination");
+        final Race race = new Race(destination);
+        race.start();
+        return race.promise.asFuture();
+    }
+
+    /**
+     * The handshakes for one destination.  Their listeners may run on different event loops, hence the locking.
+     */
+    private final class Race {
+
+        final Promise<Channel> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        private final SocketAddress destination;
+        private final List<Channel> attempts = new ArrayList<>(2);
+        private final List<SocketAddress> triedProxies = new ArrayList<>(2);
+        private Future<?> hedgeFuture;
+        private int pendingAttempts;
+
+        Race(SocketAddress destination) {
+            this.destination = destination;
+        }
+
+        void start() {
+            promise.asFuture().addListener(future -> {
+                if (future.isCancelled()) {
+                    closeAttempts(null);
+                }
+            });
+            startNextAttempt();
+        }
+
+        private void startNextAttempt() {
+            final Attempt attempt;
+            synchronized (this) {
+                final SocketAddress proxyAddress = promise.isDone()? null : nextProxyAddress();
+                if (proxyAddress == null) {
+                    return;
+                }
+                attempt = new Attempt(proxyAddress);
+                triedProxies.add(proxyAddress);
+                pendingAttempts++;
+                // Only an attempt running alone is hedged, so that at most one more runs in parallel with it.
+                if (pendingAttempts == 1 && triedProxies.size() < proxyAddresses.size()) {
+                    hedgeFuture = bootstrap.config().group().schedule(
+                            () -> hedge(attempt), hedgeDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            final ProxyHandler handler = handlerFactory.apply(attempt.proxyAddress);
+            attempt.startNanos = System.nanoTime();
+            handler.connectFuture().addListener(future -> {
+                if (future.isSuccess()) {
+                    attemptSucceeded(attempt, future.getNow());
+                } else {
+                    attemptFailed(attempt, future.cause());
+                }
+            });
+            bootstrap.clone().handler(handler).register().addListener(registered -> {
+                if (!registered.isSuccess()) {
+                    attemptFailed(attempt, registered.cause());
+                    return;
+                }
+                final Channel channel = registered.getNow();
+                synchronized (this) {
+                    if (!promise.isDone()) {
+                        attempts.add(channel);
+                        // The ProxyHandler sees no handshake if the proxy server cannot be reached at all.
+                        channel.connect(destination).addListener(connected -> {
+                            if (connected.isFailed()) {
+                                channel.close();
+                                attemptFailed(attempt, connected.cause());
+                            }
+                        });
+                        return;
+                    }
+                }
+                channel.close();
+            });
+        }
+
+        private void hedge(Attempt attempt) {
+            synchronized (this) {
+                if (attempt.isComplete()) {
+                    // Failed just as the timer fired, and the next attempt has been started with a timer of its own.
+                    return;
+                }
+            }
+            startNextAttempt();
+        }
+
+        private SocketAddress nextProxyAddress() {
+            if (selector != null) {
+                return selector.select(triedProxies);
+            }
+            return triedProxies.size() < proxyAddresses.size()? proxyAddresses.get(triedProxies.size()) : null;
+        }
+
+        private void attemptSucceeded(Attempt attempt, Channel channel) {
+            synchronized (this) {
+                if (!attempt.complete()) {
+                    return;
+                }
+                pendingAttempts--;
+                attempts.remove(channel);
+            }
+            if (selector != null) {
+                selector.recordSuccess(attempt.proxyAddress, System.nanoTime() - attempt.startNanos);
+            }
+            if (!promise.trySuccess(channel)) {
+                channel.close();
+                return;
+            }
+            logger.debug("{} Won the handshake race through {}", channel, attempt.proxyAddress);
+            closeAttempts(channel);
+        }
+
+        private void attemptFailed(Attempt attempt, Throwable cause) {
+            final boolean failed;
+            synchronized (this) {
+                if (!attempt.complete()) {
+                    return;
+                }
+                pendingAttempts--;
+                if (promise.isDone()) {
+                    // Lost the race, or cancelled.
+                    return;
+                }
+                logger.debug("Failed to connect through {}", attempt.proxyAddress, cause);
+                failed = pendingAttempts == 0 && triedProxies.size() == proxyAddresses.size();
+                if (hedgeFuture != null) {
+                    // The delay starts over for the next attempt, rather than hedging it early.
+                    hedgeFuture.cancel();
+                    hedgeFuture = null;
+                }
+            }
+            if (selector != null) {
+                selector.recordFailure(attempt.proxyAddress);
+            }
+            if (failed) {
+                promise.tryFailure(cause);
+            } else {
+                startNextAttempt();
+            }
+        }
+
+        private void closeAttempts(Channel winner) {
+            final List<Channel> losers;
+            synchronized (this) {
+                if (hedgeFuture != null) {
+                    hedgeFuture.cancel();
+                }
+                losers = new ArrayList<>(attempts);
+                attempts.clear();
+            }
+            for (Channel channel : losers) {
+                if (channel != winner) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The handshake with one proxy server, which completes once, whether by its {@link ProxyHandler} or by a failure
+     * to reach the proxy server.
+     */
+    private static final class Attempt {
+
+        final SocketAddress proxyAddress;
+        long startNanos;
+        private boolean completed;
+
+        Attempt(SocketAddress proxyAddress) {
+            this.proxyAddress = proxyAddress;
+        }
+
+        boolean isComplete() {
+            return completed;
+        }
+
+        /**
+         * Marks this attempt completed, and returns {@code false} if it was completed already.
+         */
+        boolean complete() {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            return true;
+        }
+    }
+}
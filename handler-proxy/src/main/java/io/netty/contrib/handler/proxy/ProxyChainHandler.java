@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connects to the destination through a chain of proxy servers over one channel.  Each hop is a
+ * {@link ProxyHandler} whose proxy server is reached through the hops before it: the first hop connects the channel
+ * to its proxy server, and every other hop asks the previous one for a connection to its own proxy server.  When
+ * this handler is added to the pipeline, it adds the hops before itself, in order, and {@link #connectFuture()} is
+ * notified once the last hop is connected to the destination, or as soon as any hop fails.
+ * <p>
+ * Every hop fires its own {@link ProxyConnectionEvent}, with the {@linkplain ProxyConnectionEvent#handshakeNanos()
+ * time} of its handshake alone; {@link #connectionEvents()} returns them in the order of the hops.  The
+ * {@linkplain ProxyHandler#connectTimeoutMillis() connect timeout} of a hop includes the time of the hops before it.
+ * <p>
+ * By default, a hop holds the handshake of the next one until it is connected.  With pipelining, a hop whose
+ * {@linkplain ProxyHandler#isWholeRequestInInitialMessage() whole request is sent up front}, such as a
+ * {@link Socks4ProxyHandler} or a {@linkplain Socks5ProxyHandler#isPipelinedHandshake() pipelined}
+ * {@link Socks5ProxyHandler}, lets the handshake of the next hop follow its request right away, which saves a round
+ * trip per such hop.  The proxy servers must then read ahead of their replies.
+ * <p>
+ * This handler must be added before the channel is connected, and its hops must not be added anywhere else.
+ */
+public final class ProxyChainHandler implements ChannelHandler {
+
+    private final List<ProxyHandler> hops;
+    private final boolean pipelined;
+    private final Promise<Channel> connectPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+    private final List<ProxyConnectionEvent> connectionEvents;
+
+    /**
+     * Creates a new instance that tunnels through the specified hops, the first of which is connected to first.
+     */
+    public ProxyChainHandler(ProxyHandler... hops) {
+        this(false, hops);
+    }
+
+    /**
+     * Creates a new instance that tunnels through the specified hops, the first of which is connected to first.
+     *
+     * @param pipelined {@code true} to send the handshake of a hop before the previous hop is connected, where the
+     *                  previous hop allows it
+     */
+    public ProxyChainHandler(boolean pipelined, ProxyHandler... hops) {
+        this(pipelined, Arrays.asList(requireNonNull(hops, "hops")));
+    }
+
+    /**
+     * Creates a new instance that tunnels through the specified hops, the first of which is connected to first.
+     *
+     * @param pipelined {@code true} to send the handshake of a hop before the previous hop is connected, where the
+     *                  previous hop allows it
+     */
+    public ProxyChainHandler(boolean pipelined, List<? extends ProxyHandler> hops) {
+        requireNonNull(hops, "hops");
+        if (hops.isEmpty()) {
+            throw new IllegalArgumentException("hops is empty");
+        }
+        for (int i = 0; i < hops.size(); i++) {
+            requireNonNull(hops.get(i), "hops[" + i + ']');
+        }
+        this.hops = Collections.unmodifiableList(new ArrayList<>(hops));
+        this.pipelined = pipelined;
+        connectionEvents = new ArrayList<>(hops.size());
+    }
+
+    /**
+     * Returns the hops, in the order they are connected to.
+     */
+    public List<ProxyHandler> hops() {
+        return hops;
+    }
+
+    /**
+     * Returns {@code true} if the handshakes of consecutive hops are pipelined where possible.
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Returns a {@link Future} that is notified when the last hop has connected to the destination, or when any hop
+     * has failed.
+     */
+    public Future<Channel> connectFuture() {
+        return connectPromise.asFuture();
+    }
+
+    /**
+     * Returns the {@link ProxyConnectionEvent}s of the hops connected so far, in the order of the hops.
+     */
+    public List<ProxyConnectionEvent> connectionEvents() {
+        return Collections.unmodifiableList(connectionEvents);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        final int lastIndex = hops.size() - 1;
+        for (int i = 0; i <= lastIndex; i++) {
+            final ProxyHandler hop = hops.get(i);
+            // The last hop carries the traffic of the application, which must wait for the destination.
+            hop.setWritesPipelined(pipelined && i < lastIndex);
+            ctx.pipeline().addBefore(ctx.name(), null, hop);
+
+            if (i < lastIndex) {
+                hop.connectFuture().addListener(future -> {
+                    if (future.isFailed()) {
+                        connectPromise.tryFailure(future.cause());
+                    }
+                });
+            } else {
+                hop.connectFuture().cascadeTo(connectPromise);
+            }
+        }
+    }
+
+    @Override
+    public void channelInboundEvent(ChannelHandlerContext ctx, Object evt) {
+        if (evt instanceof ProxyConnectionEvent) {
+            connectionEvents.add((ProxyConnectionEvent) evt);
+        }
+        ctx.fireChannelInboundEvent(evt);
+    }
+}
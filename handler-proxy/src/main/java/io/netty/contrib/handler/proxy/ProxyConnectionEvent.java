@@ -27,6 +27,7 @@ public final class ProxyConnectionEvent {
     private final String authScheme;
     private final SocketAddress proxyAddress;
     private final SocketAddress destinationAddress;
+    private final ProxyHandshakeTimings timings;
     private String strVal;
 
     /**
@@ -34,6 +35,17 @@ public final class ProxyConnectionEvent {
      */
     public ProxyConnectionEvent(
             String protocol, String authScheme, SocketAddress proxyAddress, SocketAddress destinationAddress) {
+        this(protocol, authScheme, proxyAddress, destinationAddress, null);
+    }
+
+    /**
+     * Creates a new event that indicates a successful connection attempt to the destination address.
+     *
+     * @param timings the phases of the connection attempt up to the last response of the proxy server, or
+     *                {@code null} if unknown
+     */
+    public ProxyConnectionEvent(String protocol, String authScheme, SocketAddress proxyAddress,
+                                SocketAddress destinationAddress, ProxyHandshakeTimings timings) {
         requireNonNull(protocol, "protocol");
         requireNonNull(authScheme, "authScheme");
         requireNonNull(proxyAddress, "proxyAddress");
@@ -43,6 +55,7 @@ public final class ProxyConnectionEvent {
         this.authScheme = authScheme;
         this.proxyAddress = proxyAddress;
         this.destinationAddress = destinationAddress;
+        this.timings = timings;
     }
 
     /**
@@ -75,6 +88,23 @@ public final class ProxyConnectionEvent {
         return (T) destinationAddress;
     }
 
+    /**
+     * Returns the time in nanoseconds from when the first handshake message was sent to the proxy server until the
+     * connection to the destination was established, or {@code -1} if unknown.  When proxy servers are chained,
+     * this is the time of this hop alone.
+     */
+    public long handshakeNanos() {
+        return timings != null? timings.handshakeNanos() : -1;
+    }
+
+    /**
+     * Returns the phases of the connection attempt up to the last response of the proxy server, or {@code null} if
+     * unknown.  The complete phases are passed to the {@link ProxyHandshakeListener} of the {@link ProxyHandler}.
+     */
+    public ProxyHandshakeTimings timings() {
+        return timings;
+    }
+
     @Override
     public String toString() {
         if (strVal != null) {
@@ -90,8 +120,12 @@ public final class ProxyConnectionEvent {
             .append(", ")
             .append(proxyAddress)
             .append(" => ")
-            .append(destinationAddress)
-            .append(')');
+            .append(destinationAddress);
+        final long handshakeNanos = handshakeNanos();
+        if (handshakeNanos >= 0) {
+            buf.append(", ").append(handshakeNanos / 1000).append("us");
+        }
+        buf.append(')');
 
         return strVal = buf.toString();
     }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a number of connections to one proxy server warm: connected, and through the part of the proxy handshake
+ * that does not depend on the destination, such as the SOCKS5 greeting and password authentication.
+ * {@link #acquire(SocketAddress)} hands out a warm connection, which only has to send the request for its
+ * destination, and a new connection is warmed up in the background to replace it.  If no warm connection is left,
+ * a new connection is made as if no pool was used.
+ * <p>
+ * A connection is used for one destination only and never returns to the pool.  The handlers of the application are
+ * added to the pipeline of the acquired channel, after the {@link ProxyHandler}; as a warm channel is active already,
+ * they see no {@code channelActive} event.  Warm connections that the proxy server closes are replaced as well.
+ * <p>
+ * A warm connection waits for its destination in the middle of the handshake, which proxy servers do not wait for
+ * forever: the SOCKS server of this project, for example, closes a connection that has not sent its command within
+ * {@code handshakeTimeoutMillis}, 10 seconds by default.  As such connections are replaced at once, a pool that is
+ * rarely acquired from reconnects every {@link #maxWarmConnections()} connections once per such timeout, so keep the
+ * pool small, or raise the timeout of the proxy server, when the acquisitions are far apart.
+ */
+public final class ProxyConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyConnectionPool.class);
+
+    /**
+     * The delay before warming up again after a failed attempt, so that an unreachable proxy server is not retried
+     * in a busy loop.
+     */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Bootstrap bootstrap;
+    private final Supplier<? extends ProxyHandler> handlerFactory;
+    private final int maxWarmConnections;
+    private final Queue<ProxyHandler> warmHandlers = new ConcurrentLinkedQueue<>();
+    // The number of connections which are warm or warming up.
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new instance and starts warming up connections.
+     *
+     * @param bootstrap the {@link Bootstrap} the connections are made with, whose event loop group, channel type and
+     *                  options are already set; its handler is replaced
+     * @param handlerFactory creates the {@link ProxyHandler} of each connection; all of them must have the same
+     *                       {@linkplain ProxyHandler#proxyAddress() proxy address}
+     * @param maxWarmConnections the number of connections to keep warm
+     */
+    public ProxyConnectionPool(Bootstrap bootstrap, Supplier<? extends ProxyHandler> handlerFactory,
+                               int maxWarmConnections) {
+        this.bootstrap = requireNonNull(bootstrap, "bootstrap");
+        this.handlerFactory = requireNonNull(handlerFactory, "handlerFactory");
+        if (maxWarmConnections <= 0) {
+            throw new IllegalArgumentException("maxWarmConnections: " + maxWarmConnections + " (expected: > 0)");
+        }
+        this.maxWarmConnections = maxWarmConnections;
+        fill();
+    }
+
+    /**
+     * Returns the number of connections to keep warm.
+     */
+    public int maxWarmConnections() {
+        return maxWarmConnections;
+    }
+
+    /**
+     * Returns the number of connections which are warm and ready to be acquired.
+     */
+    public int warmConnections() {
+        return warmHandlers.size();
+    }
+
+    /**
+     * Connects to the specified destination through the proxy server, with a warm connection if one is left.
+     *
+     * @return the {@linkplain ProxyHandler#connectFuture() connect future} of the connection's {@link ProxyHandler}
+     */
+    public Future<Channel> acquire(SocketAddress destination) {
+        requireNonNull(destination, "destination");
+        if (closed) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(new IllegalStateException("pool closed"));
+        }
+
+        ProxyHandler handler;
+        while ((handler = warmHandlers.poll()) != null) {
+            size.decrementAndGet();
+            final Channel channel = handler.warmUpFuture().getNow();
+            if (channel.isActive()) {
+                fill();
+                // The ProxyHandler takes the destination and sends the rest of its handshake.
+                channel.connect(destination);
+                return handler.connectFuture();
+            }
+        }
+        fill();
+
+        // No warm connection is left; connect as usual.
+        handler = handlerFactory.get();
+        final Promise<Channel> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        bootstrap.clone().handler(handler).connect(destination).addListener(future -> {
+            if (future.isFailed()) {
+                promise.tryFailure(future.cause());
+            }
+        });
+        handler.connectFuture().cascadeTo(promise);
+        return promise.asFuture();
+    }
+
+    private void fill() {
+        for (;;) {
+            final int size = this.size.get();
+            if (closed || size >= maxWarmConnections) {
+                return;
+            }
+            if (this.size.compareAndSet(size, size + 1)) {
+                warmUp();
+            }
+        }
+    }
+
+    private void warmUp() {
+        final ProxyHandler handler = handlerFactory.get();
+        bootstrap.clone().handler(new WarmUpHandler(handler)).connect(handler.proxyAddress()).addListener(future -> {
+            if (future.isFailed()) {
+                retry(future.cause());
+            }
+        });
+        handler.warmUpFuture().addListener(future -> {
+            if (future.isFailed()) {
+                retry(future.cause());
+                return;
+            }
+            final Channel channel = future.getNow();
+            if (closed) {
+                size.decrementAndGet();
+                channel.close();
+                return;
+            }
+            warmHandlers.add(handler);
+            if (closed && warmHandlers.remove(handler)) {
+                // close() has drained the pool between the check above and the add.
+                size.decrementAndGet();
+                channel.close();
+                return;
+            }
+            channel.closeFuture().addListener(closeFuture -> {
+                // Replace a warm connection the proxy server has closed.
+                if (warmHandlers.remove(handler)) {
+                    size.decrementAndGet();
+                    fill();
+                }
+            });
+        });
+    }
+
+    private void retry(Throwable cause) {
+        logger.debug("Failed to warm up a proxy connection", cause);
+        size.decrementAndGet();
+        if (!closed) {
+            bootstrap.config().group().schedule(this::fill, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes the warm connections and stops warming up new ones.  The connections already acquired are not
+     * affected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ProxyHandler handler;
+        while ((handler = warmHandlers.poll()) != null) {
+            size.decrementAndGet();
+            handler.warmUpFuture().getNow().close();
+        }
+    }
+
+    /**
+     * Adds the {@link ProxyHandler} once the channel is connected to the proxy server, so that the handler warms up
+     * instead of taking the proxy server as its destination.
+     */
+    private static final class WarmUpHandler implements ChannelHandler {
+
+        private final ProxyHandler proxyHandler;
+
+        WarmUpHandler(ProxyHandler proxyHandler) {
+            this.proxyHandler = proxyHandler;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.pipeline().replace(this, null, proxyHandler);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Chooses among equivalent proxy servers by their health.  For every proxy server, it tracks an exponentially
+ * weighted moving average of the handshake latency and of the failure rate, and a circuit breaker: after a number of
+ * consecutive failures, the circuit opens and the proxy server is not chosen for a while.  Then one attempt is let
+ * through as a probe; the circuit closes if it succeeds and opens again if it fails.
+ * <p>
+ * {@link #select()} compares two proxy servers picked at random among those whose circuit is closed, and chooses
+ * the one with the lower expected latency, which is the latency divided by the success rate.  Comparing two random
+ * proxy servers rather than all of them spreads the connections of many clients instead of sending them all to the
+ * one that looked best last.  Selecting and recording never lock, so one instance can be shared by all the event
+ * loops of an application.
+ * <p>
+ * The outcomes are recorded by {@link #recordSuccess(SocketAddress, long)} and
+ * {@link #recordFailure(SocketAddress)}, or by {@linkplain ProxyHandler#setHandshakeListener(ProxyHandshakeListener)
+ * setting} this selector as the {@link ProxyHandshakeListener} of the {@link ProxyHandler}s it chose for, which
+ * records the time until the last response of a successful handshake, and counts a {@link ProxyConnectException}
+ * as a failure.  A {@link ProxyHandler} does not see the failure to connect to the proxy server at all; that one has
+ * to be recorded by the application.
+ * <pre>
+ * ProxyHandler handler = new Socks5ProxyHandler(selector.select());
+ * handler.setHandshakeListener(selector);
+ * </pre>
+ */
+public final class ProxyEndpointSelector implements ProxyHandshakeListener {
+
+    /**
+     * The weight of the latest outcome in the moving averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final Endpoint[] endpoints;
+    private final Map<SocketAddress, Endpoint> endpointsByAddress;
+    private final List<SocketAddress> proxyAddresses;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    /**
+     * Creates a new instance which opens the circuit of a proxy server after 5 consecutive failures, for 10 seconds.
+     *
+     * @param proxyAddresses the addresses of the equivalent proxy servers
+     */
+    public ProxyEndpointSelector(List<? extends SocketAddress> proxyAddresses) {
+        this(proxyAddresses, 5, 10000);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param proxyAddresses the addresses of the equivalent proxy servers
+     * @param failureThreshold the number of consecutive failures which open the circuit of a proxy server
+     * @param openMillis how long an open circuit stays open before a probe is let through
+     */
+    public ProxyEndpointSelector(List<? extends SocketAddress> proxyAddresses, int failureThreshold,
+                                 long openMillis) {
+        requireNonNull(proxyAddresses, "proxyAddresses");
+        if (proxyAddresses.isEmpty()) {
+            throw new IllegalArgumentException("proxyAddresses is empty");
+        }
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold: " + failureThreshold + " (expected: > 0)");
+        }
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("openMillis: " + openMillis + " (expected: > 0)");
+        }
+
+        endpoints = new Endpoint[proxyAddresses.size()];
+        final Map<SocketAddress, Endpoint> endpointsByAddress = new HashMap<>();
+        final List<SocketAddress> addresses = new ArrayList<>(proxyAddresses.size());
+        for (int i = 0; i < endpoints.length; i++) {
+            final SocketAddress address = requireNonNull(proxyAddresses.get(i), "proxyAddress");
+            if (endpointsByAddress.containsKey(address)) {
+                throw new IllegalArgumentException("duplicate proxyAddress: " + address);
+            }
+            endpoints[i] = new Endpoint(address);
+            endpointsByAddress.put(address, endpoints[i]);
+            addresses.add(address);
+        }
+        this.endpointsByAddress = endpointsByAddress;
+        this.proxyAddresses = Collections.unmodifiableList(addresses);
+        this.failureThreshold = failureThreshold;
+        openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Returns the addresses of the proxy servers.
+     */
+    public List<SocketAddress> proxyAddresses() {
+        return proxyAddresses;
+    }
+
+    /**
+     * Chooses a proxy server.  If the circuits of all proxy servers are open, one of them is chosen anyway, so that
+     * the connections fail on their own rather than for lack of a proxy server.
+     */
+    public SocketAddress select() {
+        return select(Collections.emptyList());
+    }
+
+    /**
+     * Chooses a proxy server other than the specified ones, such as those already tried for a connection.
+     *
+     * @return the chosen proxy server, or {@code null} if all are excluded
+     */
+    public SocketAddress select(Collection<? extends SocketAddress> excluded) {
+        requireNonNull(excluded, "excluded");
+        return select(excluded, excluded);
+    }
+
+    /**
+     * Chooses a proxy server other than the skipped ones, which are the excluded ones and those whose probe another
+     * caller has taken, and falls back to any proxy server which is not excluded.
+     */
+    private SocketAddress select(Collection<? extends SocketAddress> excluded,
+                                 Collection<? extends SocketAddress> skipped) {
+        final long nowNanos = System.nanoTime();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int n = endpoints.length;
+
+        // Two choices at random; the second one is distinct from the first unless there is only one proxy server.
+        final int first = random.nextInt(n);
+        final int second = n == 1? first : (first + 1 + random.nextInt(n - 1)) % n;
+        Endpoint a = candidate(endpoints[first], skipped, nowNanos);
+        Endpoint b = candidate(endpoints[second], skipped, nowNanos);
+        if (a == null && b == null) {
+            // Both are excluded or unavailable; look for any other one, starting at a random index.
+            final int start = random.nextInt(n);
+            for (int i = 0; i < n && a == null; i++) {
+                a = candidate(endpoints[(start + i) % n], skipped, nowNanos);
+            }
+            if (a == null) {
+                return fallback(excluded, start);
+            }
+        }
+        if (a == null || b != null && b.score() < a.score()) {
+            a = b;
+        }
+        if (a.tryAcquire(nowNanos)) {
+            return a.address;
+        }
+        // Another caller took the probe; retry without this proxy server, which is still a fallback.
+        final List<SocketAddress> moreSkipped = new ArrayList<>(skipped.size() + 1);
+        moreSkipped.addAll(skipped);
+        moreSkipped.add(a.address);
+        return select(excluded, moreSkipped);
+    }
+
+    private Endpoint candidate(Endpoint endpoint, Collection<? extends SocketAddress> skipped, long nowNanos) {
+        if (!skipped.isEmpty() && skipped.contains(endpoint.address)) {
+            return null;
+        }
+        return endpoint.isAvailable(nowNanos)? endpoint : null;
+    }
+
+    private SocketAddress fallback(Collection<? extends SocketAddress> excluded, int start) {
+        for (int i = 0; i < endpoints.length; i++) {
+            final Endpoint endpoint = endpoints[(start + i) % endpoints.length];
+            if (excluded.isEmpty() || !excluded.contains(endpoint.address)) {
+                return endpoint.address;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a successful connection through the specified proxy server, which took the specified time.
+     */
+    public void recordSuccess(SocketAddress proxyAddress, long latencyNanos) {
+        final Endpoint endpoint = endpoint(proxyAddress);
+        if (endpoint != null) {
+            endpoint.recordSuccess(Math.max(0, latencyNanos));
+        }
+    }
+
+    /**
+     * Records a failed connection through the specified proxy server.
+     */
+    public void recordFailure(SocketAddress proxyAddress) {
+        final Endpoint endpoint = endpoint(proxyAddress);
+        if (endpoint != null) {
+            endpoint.recordFailure(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void handshakeCompleted(ProxyHandler handler, ProxyHandshakeTimings timings, Throwable cause) {
+        if (cause == null) {
+            final long responseNanos = timings.phaseNanos(ProxyHandshakePhase.RESPONSE_RECEIVED);
+            recordSuccess(handler.proxyAddress(), responseNanos >= 0? responseNanos : timings.totalNanos());
+        } else if (cause instanceof ProxyConnectException) {
+            recordFailure(handler.proxyAddress());
+        }
+    }
+
+    /**
+     * Returns the moving average of the latency of the specified proxy server, in nanoseconds, {@code 0} if no
+     * latency was recorded yet, or {@code -1} if it is not one of the proxy servers of this selector.
+     */
+    public long latencyNanos(SocketAddress proxyAddress) {
+        final Endpoint endpoint = endpoint(proxyAddress);
+        // A NaN, which is no latency recorded, is converted to 0.
+        return endpoint != null? (long) endpoint.latencyNanos() : -1;
+    }
+
+    /**
+     * Returns the moving average of the failure rate of the specified proxy server, between {@code 0} and
+     * {@code 1}, or {@code -1} if it is not one of the proxy servers of this selector.
+     */
+    public double failureRate(SocketAddress proxyAddress) {
+        final Endpoint endpoint = endpoint(proxyAddress);
+        return endpoint != null? endpoint.failureRate() : -1;
+    }
+
+    /**
+     * Returns {@code true} if the circuit of the specified proxy server is open or half-open, that is, if it is
+     * not chosen by {@link #select()} unless as a probe.
+     */
+    public boolean isCircuitOpen(SocketAddress proxyAddress) {
+        final Endpoint endpoint = endpoint(proxyAddress);
+        return endpoint != null && endpoint.state.get() != CLOSED;
+    }
+
+    private Endpoint endpoint(SocketAddress proxyAddress) {
+        return endpointsByAddress.get(requireNonNull(proxyAddress, "proxyAddress"));
+    }
+
+    private final class Endpoint {
+
+        final SocketAddress address;
+        // NaN until the first latency is recorded.
+        private final AtomicLong latencyBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+        private final AtomicLong failureRateBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final AtomicInteger state = new AtomicInteger(CLOSED);
+        // When the circuit opened, or when the last probe was let through.
+        private final AtomicLong stateNanos = new AtomicLong();
+
+        Endpoint(SocketAddress address) {
+            this.address = address;
+        }
+
+        double latencyNanos() {
+            return Double.longBitsToDouble(latencyBits.get());
+        }
+
+        double failureRate() {
+            return Double.longBitsToDouble(failureRateBits.get());
+        }
+
+        /**
+         * Returns the expected latency, counting the failures as retries.  A proxy server without any recorded
+         * latency scores best, so that it is tried.
+         */
+        double score() {
+            final double latencyNanos = latencyNanos();
+            return Double.isNaN(latencyNanos)? 0 : latencyNanos / Math.max(0.01, 1 - failureRate());
+        }
+
+        boolean isAvailable(long nowNanos) {
+            // An open circuit lets a probe through once it has been open long enough, and a half-open one lets
+            // another probe through if the outcome of the last one was never recorded.
+            return state.get() == CLOSED || nowNanos - stateNanos.get() >= openNanos;
+        }
+
+        /**
+         * Takes the probe of a circuit which is not closed.  Returns {@code false} if another caller took it first.
+         */
+        boolean tryAcquire(long nowNanos) {
+            final int state = this.state.get();
+            if (state == CLOSED) {
+                return true;
+            }
+            final long stateNanos = this.stateNanos.get();
+            if (nowNanos - stateNanos < openNanos || !this.stateNanos.compareAndSet(stateNanos, nowNanos)) {
+                return false;
+            }
+            // Fails only if an outcome closed the circuit meanwhile, when the probe is not needed anymore.
+            this.state.compareAndSet(state, HALF_OPEN);
+            return true;
+        }
+
+        void recordSuccess(long latencyNanos) {
+            update(latencyBits, latencyNanos);
+            update(failureRateBits, 0);
+            consecutiveFailures.set(0);
+            state.set(CLOSED);
+        }
+
+        void recordFailure(long nowNanos) {
+            update(failureRateBits, 1);
+            final int failures = consecutiveFailures.incrementAndGet();
+            final int state = this.state.get();
+            if (state == HALF_OPEN || state == CLOSED && failures >= failureThreshold) {
+                stateNanos.set(nowNanos);
+                this.state.set(OPEN);
+            }
+        }
+
+        private void update(AtomicLong bits, double sample) {
+            for (;;) {
+                final long oldBits = bits.get();
+                final double old = Double.longBitsToDouble(oldBits);
+                final double updated = Double.isNaN(old)? sample : old + ALPHA * (sample - old);
+                if (bits.compareAndSet(oldBits, Double.doubleToRawLongBits(updated))) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.netty.contrib.handler.proxy;
 
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker;
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker.Deadline;
 import io.netty5.channel.Channel;
 import io.netty5.channel.ChannelHandler;
 import io.netty5.channel.ChannelHandlerContext;
@@ -35,6 +37,16 @@ import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Connects to the destination through a proxy server.  The destination is the address the channel is connected to;
+ * this handler connects the channel to the proxy server instead, performs the handshake, and then lets the traffic
+ * through.
+ * <p>
+ * If this handler is added to a channel that is already connected to the proxy server, it only performs the part of
+ * the handshake that does not depend on the destination, and notifies {@link #warmUpFuture()}.  The channel is then
+ * <em>warm</em>: connecting it to a destination sends the rest of the handshake right away, which saves the time of
+ * the TCP connection and of any authentication.  {@link ProxyConnectionPool} keeps such channels ready.
+ */
 public abstract class ProxyHandler implements ChannelHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyHandler.class);
@@ -56,13 +68,26 @@ public abstract class ProxyHandler implements ChannelHandler {
     private volatile ChannelHandlerContext ctx;
     private PendingWriteQueue pendingWrites;
     private boolean finished;
+    private boolean warm;
+    private boolean writesPipelined;
+    private boolean requestSent;
+    private final HandshakeTimer timer = new HandshakeTimer();
+    private volatile ProxyHandshakeListener handshakeListener;
     private boolean suppressChannelReadComplete;
     private boolean flushedPrematurely;
     private final Promise<Channel> connectPromise = new LazyPromise();
-    private Future<?> connectTimeoutFuture;
+    private final Promise<Channel> warmUpPromise = new LazyPromise();
+    private final Deadline connectDeadline = new Deadline(() -> {
+        if (!connectPromise.isDone()) {
+            setConnectFailure(new ProxyConnectException(exceptionMessage("timeout")));
+        }
+    });
     private final FutureListener<Void> writeListener = future -> {
         if (future.isFailed()) {
             setConnectFailure(future.cause());
+        } else {
+            // The handshake starts when its first message leaves, which may be after the hops before this one.
+            mark(ProxyHandshakePhase.INITIAL_MESSAGE_SENT);
         }
     };
 
@@ -112,6 +137,32 @@ public abstract class ProxyHandler implements ChannelHandler {
         return connectPromise.asFuture();
     }
 
+    /**
+     * Returns the {@link ProxyHandshakeListener} notified of the progress of the connection attempt, or {@code null}
+     * if none is set.
+     */
+    public final ProxyHandshakeListener handshakeListener() {
+        return handshakeListener;
+    }
+
+    /**
+     * Sets the {@link ProxyHandshakeListener} notified of the progress of the connection attempt.  It must be set
+     * before the channel is connected to the destination.
+     */
+    public final void setHandshakeListener(ProxyHandshakeListener handshakeListener) {
+        this.handshakeListener = handshakeListener;
+    }
+
+    /**
+     * Returns a {@link Future} that is notified when the channel, which was already connected to the proxy server
+     * when this handler was added, has performed the part of the handshake that does not depend on the destination,
+     * or when the attempt has failed.  The {@linkplain #connectTimeoutMillis() connect timeout} applies to the
+     * warm-up and, once the channel is connected to a destination, to the rest of the handshake.
+     */
+    public final Future<Channel> warmUpFuture() {
+        return warmUpPromise.asFuture();
+    }
+
     /**
      * Returns the connect timeout in millis.  If the connection attempt to the destination does not finish within
      * the timeout, the connection attempt will be failed.
@@ -168,8 +219,25 @@ public abstract class ProxyHandler implements ChannelHandler {
         if (destinationAddress != null) {
             return ctx.newFailedFuture(new ConnectionPendingException());
         }
+        if (warm) {
+            // Already connected to the proxy server; only the destination-specific handshake is left.
+            warm = false;
+            destinationAddress = remoteAddress;
+            timer.start();
+            try {
+                sendDestinationMessage(ctx);
+            } catch (Exception e) {
+                setConnectFailure(e);
+            }
+            return ctx.newSucceededFuture();
+        }
+        if (ctx.channel().isActive()) {
+            // Still warming up.
+            return ctx.newFailedFuture(new ConnectionPendingException());
+        }
 
         destinationAddress = remoteAddress;
+        timer.start();
         return ctx.connect(proxyAddress, localAddress);
     }
 
@@ -180,34 +248,108 @@ public abstract class ProxyHandler implements ChannelHandler {
     }
 
     /**
-     * Sends the initial message to be sent to the proxy server. This method also starts a timeout task which marks
+     * Sends the initial message to be sent to the proxy server. This method also arms a handshake deadline which marks
      * the {@link #connectPromise} as failure if the connection attempt does not success within the timeout.
      */
     private void sendInitialMessage(final ChannelHandlerContext ctx) throws Exception {
-        final long connectTimeoutMillis = this.connectTimeoutMillis;
-        if (connectTimeoutMillis > 0) {
-            connectTimeoutFuture = ctx.executor().schedule(() -> {
-                if (!connectPromise.isDone()) {
-                    setConnectFailure(new ProxyConnectException(exceptionMessage("timeout")));
-                }
-            }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (destinationAddress == null) {
+            // Added to a channel connected to the proxy server directly; warm up until a destination is given.
+            final Object warmUpMessage = newWarmUpMessage(ctx);
+            if (warmUpMessage == null) {
+                setWarmUpSuccess();
+                return;
+            }
+            scheduleConnectTimeout(ctx);
+            sendToProxyServer(warmUpMessage);
+        } else {
+            mark(ProxyHandshakePhase.CONNECTED);
+            scheduleConnectTimeout(ctx);
+            final Object initialMessage = newInitialMessage(ctx);
+            if (initialMessage != null) {
+                sendToProxyServer(initialMessage);
+            }
+            requestSent = isWholeRequestInInitialMessage();
         }
 
-        final Object initialMessage = newInitialMessage(ctx);
-        if (initialMessage != null) {
-            sendToProxyServer(initialMessage);
+        readIfNeeded(ctx);
+    }
+
+    private void sendDestinationMessage(ChannelHandlerContext ctx) throws Exception {
+        scheduleConnectTimeout(ctx);
+
+        final Object destinationMessage = newDestinationMessage(ctx);
+        if (destinationMessage != null) {
+            sendToProxyServer(destinationMessage);
         }
 
         readIfNeeded(ctx);
     }
 
+    private void scheduleConnectTimeout(ChannelHandlerContext ctx) {
+        final long connectTimeoutMillis = this.connectTimeoutMillis;
+        if (connectTimeoutMillis > 0) {
+            HandshakeDeadlineTracker.get(ctx.executor())
+                    .schedule(connectDeadline, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
      * Returns a new message that is sent at first time when the connection to the proxy server has been established.
+     * An implementation that sends several messages before the first response may write the preceding ones with
+     * {@link #writeToProxyServer(Object)}; they are flushed together with the returned message.
      *
      * @return the initial message, or {@code null} if the proxy server is expected to send the first message instead
      */
     protected abstract Object newInitialMessage(ChannelHandlerContext ctx) throws Exception;
 
+    /**
+     * Returns {@code true} if {@link #newInitialMessage(ChannelHandlerContext)} and the messages written before it
+     * carry the whole request for the destination, so that the data that follows may be sent before the response
+     * arrives.  {@link ProxyChainHandler} relies on it to pipeline the handshakes of consecutive hops.  The default
+     * implementation returns {@code false}.
+     */
+    protected boolean isWholeRequestInInitialMessage() {
+        return false;
+    }
+
+    /**
+     * Lets the messages written after the whole request through before the response arrives, if
+     * {@link #isWholeRequestInInitialMessage()} allows it, instead of holding them until the connection to the
+     * destination is established.
+     */
+    final void setWritesPipelined(boolean writesPipelined) {
+        this.writesPipelined = writesPipelined;
+    }
+
+    /**
+     * Returns a new message that starts the part of the handshake that does not depend on the destination, when
+     * this handler was added to a channel already connected to the proxy server.  The implementation calls
+     * {@link #setWarmUpSuccess()} once that part is done.  The default implementation returns {@code null}.
+     *
+     * @return the first warm-up message, or {@code null} if there is nothing to do before the destination is known
+     */
+    protected Object newWarmUpMessage(ChannelHandlerContext ctx) throws Exception {
+        return null;
+    }
+
+    /**
+     * Returns a new message that starts the rest of the handshake once a warm channel is connected to its
+     * destination.  The default implementation returns {@link #newInitialMessage(ChannelHandlerContext)}.
+     */
+    protected Object newDestinationMessage(ChannelHandlerContext ctx) throws Exception {
+        return newInitialMessage(ctx);
+    }
+
+    /**
+     * Marks the warm-up as done, so that the channel waits for its destination.  Responses that complete the warm-up
+     * are handled in {@link #handleResponse(ChannelHandlerContext, Object)}, which returns {@code false} then.
+     */
+    protected final void setWarmUpSuccess() {
+        cancelConnectTimeoutFuture();
+        warm = true;
+        warmUpPromise.trySuccess(ctx.channel());
+    }
+
     /**
      * Sends the specified message to the proxy server.  Use this method to send a response to the proxy server in
      * {@link #handleResponse(ChannelHandlerContext, Object)}.
@@ -216,6 +358,14 @@ public abstract class ProxyHandler implements ChannelHandler {
         ctx.writeAndFlush(msg).addListener(writeListener);
     }
 
+    /**
+     * Writes the specified message to the proxy server without flushing it, so that it is sent together with the
+     * next message passed to {@link #sendToProxyServer(Object)}.
+     */
+    protected final void writeToProxyServer(Object msg) {
+        ctx.write(msg).addListener(writeListener);
+    }
+
     @Override
     public final void channelInactive(ChannelHandlerContext ctx) throws Exception {
         if (finished) {
@@ -244,6 +394,7 @@ public abstract class ProxyHandler implements ChannelHandler {
             ctx.fireChannelRead(msg);
         } else {
             suppressChannelReadComplete = true;
+            mark(ProxyHandshakePhase.RESPONSE_RECEIVED);
             Throwable cause = null;
             try {
                 boolean done = handleResponse(ctx, msg);
@@ -279,18 +430,22 @@ public abstract class ProxyHandler implements ChannelHandler {
 
             removedCodec &= safeRemoveEncoder();
 
-            ctx.fireChannelInboundEvent(
-                    new ProxyConnectionEvent(protocol(), authScheme(), proxyAddress, destinationAddress));
+            ctx.fireChannelInboundEvent(new ProxyConnectionEvent(
+                    protocol(), authScheme(), proxyAddress, destinationAddress, timer.timings()));
 
             removedCodec &= safeRemoveDecoder();
 
             if (removedCodec) {
+                mark(ProxyHandshakePhase.CODEC_REMOVED);
                 writePendingWrites(ctx);
 
                 if (flushedPrematurely) {
                     ctx.flush();
                 }
-                connectPromise.trySuccess(ctx.channel());
+                mark(ProxyHandshakePhase.PENDING_WRITES_FLUSHED);
+                if (connectPromise.trySuccess(ctx.channel())) {
+                    notifyHandshakeCompleted(null);
+                }
             } else {
                 // We are at inconsistent state because we failed to remove all codec handlers.
                 Exception cause = new ProxyConnectException(
@@ -341,18 +496,41 @@ public abstract class ProxyHandler implements ChannelHandler {
 
     private void failPendingWritesAndClose(Throwable cause) {
         failPendingWrites(cause);
-        connectPromise.tryFailure(cause);
+        warmUpPromise.tryFailure(cause);
+        if (connectPromise.tryFailure(cause)) {
+            notifyHandshakeCompleted(cause);
+        }
         ctx.fireChannelExceptionCaught(cause);
         ctx.close();
     }
 
-    private void cancelConnectTimeoutFuture() {
-        if (connectTimeoutFuture != null) {
-            connectTimeoutFuture.cancel();
-            connectTimeoutFuture = null;
+    private void mark(ProxyHandshakePhase phase) {
+        final long elapsedNanos = timer.mark(phase);
+        final ProxyHandshakeListener listener = handshakeListener;
+        if (elapsedNanos >= 0 && listener != null) {
+            try {
+                listener.phaseReached(this, phase, elapsedNanos);
+            } catch (Throwable t) {
+                logger.warn("An exception was thrown by {}.phaseReached()", listener, t);
+            }
+        }
+    }
+
+    private void notifyHandshakeCompleted(Throwable cause) {
+        final ProxyHandshakeListener listener = handshakeListener;
+        if (listener != null && timer.isStarted()) {
+            try {
+                listener.handshakeCompleted(this, timer.timings(), cause);
+            } catch (Throwable t) {
+                logger.warn("An exception was thrown by {}.handshakeCompleted()", listener, t);
+            }
         }
     }
 
+    private void cancelConnectTimeoutFuture() {
+        connectDeadline.cancel();
+    }
+
     /**
      * Decorates the specified exception message with the common information such as the current protocol,
      * authentication scheme, proxy address, and destination address.
@@ -390,7 +568,7 @@ public abstract class ProxyHandler implements ChannelHandler {
 
     @Override
     public final Future<Void> write(ChannelHandlerContext ctx, Object msg) {
-        if (finished) {
+        if (finished || writesPipelined && requestSent) {
             writePendingWrites(ctx);
             return ctx.write(msg);
         }
@@ -401,7 +579,7 @@ public abstract class ProxyHandler implements ChannelHandler {
 
     @Override
     public final void flush(ChannelHandlerContext ctx) {
-        if (finished) {
+        if (finished || writesPipelined && requestSent) {
             writePendingWrites(ctx);
             ctx.flush();
         } else {
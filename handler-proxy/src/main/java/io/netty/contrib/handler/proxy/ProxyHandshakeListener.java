@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+/**
+ * Receives the progress of the connection attempts of the {@link ProxyHandler}s it is
+ * {@linkplain ProxyHandler#setHandshakeListener(ProxyHandshakeListener) set} to.  The methods are called from the
+ * event loop of the channel and must not block.
+ *
+ * @see ProxyHandshakeRecorder
+ */
+public interface ProxyHandshakeListener {
+
+    /**
+     * Called when the connection attempt of the specified handler reaches the specified phase.  The default
+     * implementation does nothing.
+     *
+     * @param elapsedNanos the time since the attempt started
+     */
+    default void phaseReached(ProxyHandler handler, ProxyHandshakePhase phase, long elapsedNanos) {
+    }
+
+    /**
+     * Called when the connection attempt of the specified handler has finished.
+     *
+     * @param cause the cause of the failure, or {@code null} if the connection to the destination was established
+     */
+    void handshakeCompleted(ProxyHandler handler, ProxyHandshakeTimings timings, Throwable cause);
+}
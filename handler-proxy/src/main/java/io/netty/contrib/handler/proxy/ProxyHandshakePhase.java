@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+/**
+ * The points of a {@link ProxyHandler}'s connection attempt which {@link ProxyHandshakeTimings} records, in the
+ * order they are reached.
+ */
+public enum ProxyHandshakePhase {
+    /**
+     * The channel has connected to the proxy server.  Not reached by a channel which was warm already.
+     */
+    CONNECTED,
+    /**
+     * The first handshake message has been written to the proxy server.
+     */
+    INITIAL_MESSAGE_SENT,
+    /**
+     * A response has been received from the proxy server; reached once per response.
+     */
+    RESPONSE_RECEIVED,
+    /**
+     * The codec handlers of the proxy protocol have been removed from the pipeline.
+     */
+    CODEC_REMOVED,
+    /**
+     * The messages the application wrote during the handshake have been written and flushed.
+     */
+    PENDING_WRITES_FLUSHED
+}
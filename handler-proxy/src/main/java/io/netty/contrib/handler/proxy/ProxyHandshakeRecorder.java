@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ProxyHandshakeListener} which aggregates the connection attempts of many {@link ProxyHandler}s per proxy
+ * server address.  For every phase, it records how long it took from the phase reached before, so that a slow
+ * TCP connection, authentication or {@code CONNECT} request can be told apart.  The responses are also recorded
+ * by their index, as the first response of a SOCKS5 handshake answers the greeting, the second the authentication
+ * and so on.  One instance is usually shared by all the handlers of an application.
+ */
+public final class ProxyHandshakeRecorder implements ProxyHandshakeListener {
+
+    /**
+     * The number of responses which are recorded by their index.
+     */
+    private static final int MAX_INDEXED_RESPONSES = 4;
+
+    private final ConcurrentMap<SocketAddress, Stats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void handshakeCompleted(ProxyHandler handler, ProxyHandshakeTimings timings, Throwable cause) {
+        final Stats stats = this.stats.computeIfAbsent(handler.proxyAddress(), address -> new Stats());
+        if (cause != null) {
+            stats.failures.increment();
+            return;
+        }
+
+        long previousNanos = 0;
+        previousNanos = record(stats, ProxyHandshakePhase.CONNECTED,
+                               timings.phaseNanos(ProxyHandshakePhase.CONNECTED), previousNanos);
+        previousNanos = record(stats, ProxyHandshakePhase.INITIAL_MESSAGE_SENT,
+                               timings.phaseNanos(ProxyHandshakePhase.INITIAL_MESSAGE_SENT), previousNanos);
+        for (int i = 0; i < timings.responses(); i++) {
+            final long nanos = timings.responseReceivedNanos(i);
+            if (i < MAX_INDEXED_RESPONSES) {
+                stats.responses[i].record(nanos - previousNanos);
+            }
+            previousNanos = record(stats, ProxyHandshakePhase.RESPONSE_RECEIVED, nanos, previousNanos);
+        }
+        previousNanos = record(stats, ProxyHandshakePhase.CODEC_REMOVED,
+                               timings.phaseNanos(ProxyHandshakePhase.CODEC_REMOVED), previousNanos);
+        record(stats, ProxyHandshakePhase.PENDING_WRITES_FLUSHED,
+               timings.phaseNanos(ProxyHandshakePhase.PENDING_WRITES_FLUSHED), previousNanos);
+        stats.total.record(timings.totalNanos());
+    }
+
+    private static long record(Stats stats, ProxyHandshakePhase phase, long nanos, long previousNanos) {
+        if (nanos < 0) {
+            // Not reached.
+            return previousNanos;
+        }
+        stats.phases.get(phase).record(nanos - previousNanos);
+        return nanos;
+    }
+
+    /**
+     * Returns the addresses of the proxy servers recorded so far.
+     */
+    public Set<SocketAddress> proxyAddresses() {
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    /**
+     * Returns the durations of the specified phase of the successful attempts to the specified proxy server, each
+     * measured from the phase reached before, or {@code null} if no attempt was recorded.
+     */
+    public ProxyHandshakeHistogram phaseHistogram(SocketAddress proxyAddress, ProxyHandshakePhase phase) {
+        requireNonNull(phase, "phase");
+        final Stats stats = this.stats.get(requireNonNull(proxyAddress, "proxyAddress"));
+        return stats != null? stats.phases.get(phase) : null;
+    }
+
+    /**
+     * Returns the round trip times of the response with the specified index, each measured from the phase reached
+     * before, or {@code null} if no attempt was recorded.
+     *
+     * @param index the index of the response, less than {@value #MAX_INDEXED_RESPONSES}
+     */
+    public ProxyHandshakeHistogram responseHistogram(SocketAddress proxyAddress, int index) {
+        if (index < 0 || index >= MAX_INDEXED_RESPONSES) {
+            throw new IllegalArgumentException(
+                    "index: " + index + " (expected: 0-" + (MAX_INDEXED_RESPONSES - 1) + ')');
+        }
+        final Stats stats = this.stats.get(requireNonNull(proxyAddress, "proxyAddress"));
+        return stats != null? stats.responses[index] : null;
+    }
+
+    /**
+     * Returns the total durations of the successful attempts to the specified proxy server, or {@code null} if no
+     * attempt was recorded.
+     */
+    public ProxyHandshakeHistogram totalHistogram(SocketAddress proxyAddress) {
+        final Stats stats = this.stats.get(requireNonNull(proxyAddress, "proxyAddress"));
+        return stats != null? stats.total : null;
+    }
+
+    /**
+     * Returns the number of failed attempts to the specified proxy server.
+     */
+    public long failures(SocketAddress proxyAddress) {
+        final Stats stats = this.stats.get(requireNonNull(proxyAddress, "proxyAddress"));
+        return stats != null? stats.failures.sum() : 0;
+    }
+
+    private static final class Stats {
+        final Map<ProxyHandshakePhase, ProxyHandshakeHistogram> phases = new EnumMap<>(ProxyHandshakePhase.class);
+        final ProxyHandshakeHistogram[] responses = new ProxyHandshakeHistogram[MAX_INDEXED_RESPONSES];
+        final ProxyHandshakeHistogram total = new ProxyHandshakeHistogram();
+        final LongAdder failures = new LongAdder();
+
+        Stats() {
+            for (ProxyHandshakePhase phase : ProxyHandshakePhase.values()) {
+                phases.put(phase, new ProxyHandshakeHistogram());
+            }
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = new ProxyHandshakeHistogram();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.util.internal.StringUtil;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The times at which a {@link ProxyHandler}'s connection attempt reached each {@link ProxyHandshakePhase}, in
+ * nanoseconds since the attempt started.  An attempt starts when the channel is connected to the destination, which
+ * for a channel that was warm already is after it has connected to the proxy server.
+ */
+public final class ProxyHandshakeTimings {
+
+    private static final long[] EMPTY_NANOS = new long[0];
+
+    private final long connectedNanos;
+    private final long initialMessageSentNanos;
+    private final long[] responseReceivedNanos;
+    private final long codecRemovedNanos;
+    private final long pendingWritesFlushedNanos;
+
+    ProxyHandshakeTimings(long connectedNanos, long initialMessageSentNanos, long[] responseReceivedNanos,
+                          long codecRemovedNanos, long pendingWritesFlushedNanos) {
+        this.connectedNanos = connectedNanos;
+        this.initialMessageSentNanos = initialMessageSentNanos;
+        this.responseReceivedNanos = responseReceivedNanos.length == 0? EMPTY_NANOS : responseReceivedNanos;
+        this.codecRemovedNanos = codecRemovedNanos;
+        this.pendingWritesFlushedNanos = pendingWritesFlushedNanos;
+    }
+
+    /**
+     * Returns the time at which the specified phase was reached, or {@code -1} if it was not.  For
+     * {@link ProxyHandshakePhase#RESPONSE_RECEIVED}, this is the time of the last response.
+     */
+    public long phaseNanos(ProxyHandshakePhase phase) {
+        switch (requireNonNull(phase, "phase")) {
+        case CONNECTED:
+            return connectedNanos;
+        case INITIAL_MESSAGE_SENT:
+            return initialMessageSentNanos;
+        case RESPONSE_RECEIVED:
+            return responseReceivedNanos.length == 0? -1 : responseReceivedNanos[responseReceivedNanos.length - 1];
+        case CODEC_REMOVED:
+            return codecRemovedNanos;
+        case PENDING_WRITES_FLUSHED:
+            return pendingWritesFlushedNanos;
+        default:
+            throw new Error();
+        }
+    }
+
+    /**
+     * Returns the number of responses received from the proxy server.
+     */
+    public int responses() {
+        return responseReceivedNanos.length;
+    }
+
+    /**
+     * Returns the time at which the response with the specified index was received.
+     */
+    public long responseReceivedNanos(int index) {
+        return responseReceivedNanos[index];
+    }
+
+    /**
+     * Returns the time from when the first handshake message was written until the last response was received, or
+     * {@code -1} if either did not happen.
+     */
+    public long handshakeNanos() {
+        final long lastResponseNanos = phaseNanos(ProxyHandshakePhase.RESPONSE_RECEIVED);
+        if (initialMessageSentNanos < 0 || lastResponseNanos < 0) {
+            return -1;
+        }
+        return lastResponseNanos - initialMessageSentNanos;
+    }
+
+    /**
+     * Returns the time of the last phase that was reached, or {@code 0} if none was.
+     */
+    public long totalNanos() {
+        long total = Math.max(connectedNanos, initialMessageSentNanos);
+        total = Math.max(total, phaseNanos(ProxyHandshakePhase.RESPONSE_RECEIVED));
+        total = Math.max(total, codecRemovedNanos);
+        return Math.max(0, Math.max(total, pendingWritesFlushedNanos));
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) +
+               "(connected: " + connectedNanos +
+               ", initialMessageSent: " + initialMessageSentNanos +
+               ", responseReceived: " + Arrays.toString(responseReceivedNanos) +
+               ", codecRemoved: " + codecRemovedNanos +
+               ", pendingWritesFlushed: " + pendingWritesFlushedNanos + ')';
+    }
+}
@@ -23,16 +23,29 @@ import io.netty.contrib.handler.codec.socksx.v4.Socks4ClientEncoder;
 import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandResponse;
 import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandStatus;
 import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandType;
+import io.netty5.util.NetUtil;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connects to the destination through a SOCKS4a proxy server.  With {@link Socks4CommandType#BIND}, it asks the
+ * proxy server to accept one connection from the destination instead, as {@link Socks5ProxyHandler} does.
+ */
 public final class Socks4ProxyHandler extends ProxyHandler {
 
     private static final String PROTOCOL = "socks4";
     private static final String AUTH_USERNAME = "username";
 
     private final String username;
+    private final Socks4CommandType commandType;
+    private final Promise<InetSocketAddress> bindPromise;
+    private volatile InetSocketAddress bindPeerAddress;
 
     private String decoderName;
     private String encoderName;
@@ -42,11 +55,32 @@ public final class Socks4ProxyHandler extends ProxyHandler {
     }
 
     public Socks4ProxyHandler(SocketAddress proxyAddress, String username) {
+        this(proxyAddress, username, Socks4CommandType.CONNECT);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param commandType {@link Socks4CommandType#CONNECT}, or {@link Socks4CommandType#BIND} to accept a connection
+     *                    from the destination, whose address is the one the channel is connected to
+     */
+    public Socks4ProxyHandler(SocketAddress proxyAddress, String username, Socks4CommandType commandType) {
         super(proxyAddress);
+        this.commandType = requireNonNull(commandType, "commandType");
         if (username != null && username.isEmpty()) {
             username = null;
         }
         this.username = username;
+        if (commandType == Socks4CommandType.BIND) {
+            bindPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+            connectFuture().addListener(future -> {
+                if (future.isFailed()) {
+                    bindPromise.tryFailure(future.cause());
+                }
+            });
+        } else {
+            bindPromise = null;
+        }
     }
 
     @Override
@@ -63,12 +97,41 @@ public final class Socks4ProxyHandler extends ProxyHandler {
         return username;
     }
 
+    /**
+     * Returns the type of the command this handler sends.
+     */
+    public Socks4CommandType commandType() {
+        return commandType;
+    }
+
+    /**
+     * Returns a {@link Future} that is notified with the address the proxy server listens on for the connection from
+     * the destination, as sent in the first reply to the {@link Socks4CommandType#BIND} request.
+     *
+     * @throws IllegalStateException if the {@linkplain #commandType() command type} is not
+     *                               {@link Socks4CommandType#BIND}
+     */
+    public Future<InetSocketAddress> bindFuture() {
+        if (bindPromise == null) {
+            throw new IllegalStateException("commandType: " + commandType + " (expected: BIND)");
+        }
+        return bindPromise.asFuture();
+    }
+
+    /**
+     * Returns the address of the peer which connected to the proxy server, as sent in the second reply to the
+     * {@link Socks4CommandType#BIND} request, or {@code null} if it has not connected yet.
+     */
+    public InetSocketAddress bindPeerAddress() {
+        return bindPeerAddress;
+    }
+
     @Override
     protected void addCodec(ChannelHandlerContext ctx) throws Exception {
         ChannelPipeline p = ctx.pipeline();
         String name = ctx.name();
 
-        Socks4ClientDecoder decoder = new Socks4ClientDecoder();
+        Socks4ClientDecoder decoder = new Socks4ClientDecoder(commandType);
         p.addBefore(name, null, decoder);
 
         decoderName = p.context(decoder).name();
@@ -99,17 +162,36 @@ public final class Socks4ProxyHandler extends ProxyHandler {
             rhost = raddr.getAddress().getHostAddress();
         }
         return new DefaultSocks4CommandRequest(
-                Socks4CommandType.CONNECT, rhost, raddr.getPort(), username != null? username : "");
+                commandType, rhost, raddr.getPort(), username != null? username : "");
+    }
+
+    @Override
+    protected boolean isWholeRequestInInitialMessage() {
+        // A BIND request is answered twice, and nothing may be sent before the peer has connected.
+        return commandType == Socks4CommandType.CONNECT;
     }
 
     @Override
     protected boolean handleResponse(ChannelHandlerContext ctx, Object response) throws Exception {
         final Socks4CommandResponse res = (Socks4CommandResponse) response;
         final Socks4CommandStatus status = res.status();
-        if (status == Socks4CommandStatus.SUCCESS) {
-            return true;
+        if (status != Socks4CommandStatus.SUCCESS) {
+            throw new ProxyConnectException(exceptionMessage("status: " + status));
+        }
+
+        if (bindPromise != null && !bindPromise.isDone()) {
+            bindPromise.trySuccess(toSocketAddress(res));
+            return false;
         }
+        if (bindPromise != null) {
+            bindPeerAddress = toSocketAddress(res);
+        }
+        return true;
+    }
 
-        throw new ProxyConnectException(exceptionMessage("status: " + status));
+    private static InetSocketAddress toSocketAddress(Socks4CommandResponse res) {
+        final String dstAddr = res.dstAddr();
+        return new InetSocketAddress(
+                dstAddr != null? NetUtil.createInetAddressFromIpAddressString(dstAddr) : null, res.dstPort());
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.DefaultBufferAllocators;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ClientEncoder;
+
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A username and password for {@link Socks5ProxyHandler}, with their password authentication request encoded once.
+ * The handlers created with the same instance write read-only buffers which share the encoded request, rather than
+ * encode it for every connection, so an application which connects with fixed credentials should keep one instance
+ * for as long as it uses them.
+ */
+public final class Socks5Credentials {
+
+    private final String username;
+    private final String password;
+    private final Supplier<Buffer> passwordAuthFrame;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param username the username, which may be empty
+     * @param password the password, which may be empty
+     */
+    public Socks5Credentials(String username, String password) {
+        this.username = requireNonNull(username, "username");
+        this.password = requireNonNull(password, "password");
+        if (username.isEmpty() && password.isEmpty()) {
+            throw new IllegalArgumentException("username and password are both empty");
+        }
+        // Validates the credentials.
+        final DefaultSocks5PasswordAuthRequest request = new DefaultSocks5PasswordAuthRequest(username, password);
+        try {
+            passwordAuthFrame = Socks5ClientEncoder.DEFAULT.newConstBufferSupplier(
+                    DefaultBufferAllocators.preferredAllocator(), request);
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to encode the password authentication request", e);
+        }
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public String password() {
+        return password;
+    }
+
+    /**
+     * Returns a read-only buffer which holds the encoded password authentication request.
+     */
+    Buffer newPasswordAuthFrame() {
+        return passwordAuthFrame.get();
+    }
+
+    @Override
+    public String toString() {
+        // Leaves out the password.
+        return "Socks5Credentials(username: " + username + ')';
+    }
+}
@@ -15,45 +15,75 @@
  */
 package io.netty.contrib.handler.proxy;
 
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.DefaultBufferAllocators;
+import io.netty5.channel.ChannelHandler;
 import io.netty5.channel.ChannelHandlerContext;
 import io.netty5.channel.ChannelPipeline;
 import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandRequest;
 import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialRequest;
 import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressDecoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5BinaryAddress;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5ClientEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandResponse;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandResponseDecoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandStatus;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
-import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialRequest;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialResponse;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialResponseDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5Message;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthResponse;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthResponseDecoder;
 import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PipelinedResponseDecoder;
 import io.netty5.util.NetUtil;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
 import io.netty5.util.internal.StringUtil;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.function.Supplier;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connects to the destination through a SOCKS5 proxy server.  With {@link Socks5CommandType#BIND}, it asks the proxy
+ * server to accept one connection from the destination instead: {@link #bindFuture()} is notified with the address
+ * the proxy server listens on, which the application passes to the destination, and {@link #connectFuture()} once
+ * the destination has connected to it.  The {@linkplain #connectTimeoutMillis() connect timeout} covers both phases.
+ * With {@link Socks5CommandType#UDP_ASSOCIATE}, {@link #bindFuture()} is notified with the address of the UDP relay
+ * of the proxy server, as used by {@link Socks5UdpProxyHandler}.
+ */
 public final class Socks5ProxyHandler extends ProxyHandler {
 
     private static final String PROTOCOL = "socks5";
     private static final String AUTH_PASSWORD = "password";
 
-    private static final Socks5InitialRequest INIT_REQUEST_NO_AUTH =
-            new DefaultSocks5InitialRequest(Collections.singletonList(Socks5AuthMethod.NO_AUTH));
+    // The initial requests never change, so they are encoded only once and written as read-only buffers.
+    private static final Supplier<Buffer> INIT_REQUEST_NO_AUTH = newConstFrame(
+            new DefaultSocks5InitialRequest(Collections.singletonList(Socks5AuthMethod.NO_AUTH)));
 
-    private static final Socks5InitialRequest INIT_REQUEST_PASSWORD =
-            new DefaultSocks5InitialRequest(Arrays.asList(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD));
+    private static final Supplier<Buffer> INIT_REQUEST_PASSWORD = newConstFrame(
+            new DefaultSocks5InitialRequest(Arrays.asList(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD)));
+
+    private static final Supplier<Buffer> INIT_REQUEST_PASSWORD_ONLY = newConstFrame(
+            new DefaultSocks5InitialRequest(Collections.singletonList(Socks5AuthMethod.PASSWORD)));
 
     private final String username;
     private final String password;
+    private final Socks5Credentials credentials;
+    private final boolean pipelinedHandshake;
+    private final Socks5CommandType commandType;
+    private final Promise<InetSocketAddress> bindPromise;
+    private volatile InetSocketAddress bindPeerAddress;
 
     private String decoderName;
     private String encoderName;
@@ -63,7 +93,61 @@ public final class Socks5ProxyHandler extends ProxyHandler {
     }
 
     public Socks5ProxyHandler(SocketAddress proxyAddress, String username, String password) {
+        this(proxyAddress, username, password, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pipelinedHandshake {@code true} to write the initial request, the password authentication request (if
+     *                           credentials are given) and the {@code CONNECT} request at once, and then validate the
+     *                           responses in order. This saves up to two round trips, but the server must read the
+     *                           requests one after another, and it can only select the authentication method this
+     *                           handler offers. That is {@link Socks5AuthMethod#PASSWORD} when credentials are given,
+     *                           and {@link Socks5AuthMethod#NO_AUTH} otherwise.
+     */
+    public Socks5ProxyHandler(
+            SocketAddress proxyAddress, String username, String password, boolean pipelinedHandshake) {
+        this(proxyAddress, username, password, pipelinedHandshake, Socks5CommandType.CONNECT);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pipelinedHandshake see {@link #Socks5ProxyHandler(SocketAddress, String, String, boolean)}
+     * @param commandType {@link Socks5CommandType#CONNECT}, {@link Socks5CommandType#BIND} to accept a connection
+     *                    from the destination, whose address is the one the channel is connected to, or
+     *                    {@link Socks5CommandType#UDP_ASSOCIATE} to relay the datagrams of the client whose address
+     *                    is the one the channel is connected to
+     */
+    public Socks5ProxyHandler(SocketAddress proxyAddress, String username, String password,
+                              boolean pipelinedHandshake, Socks5CommandType commandType) {
+        this(proxyAddress, username, password, null, pipelinedHandshake, commandType);
+    }
+
+    /**
+     * Creates a new instance which authenticates with the specified credentials, whose encoded password
+     * authentication request is shared by all the handlers created with them.
+     *
+     * @param pipelinedHandshake see {@link #Socks5ProxyHandler(SocketAddress, String, String, boolean)}
+     * @param commandType see {@link #Socks5ProxyHandler(SocketAddress, String, String, boolean, Socks5CommandType)}
+     */
+    public Socks5ProxyHandler(SocketAddress proxyAddress, Socks5Credentials credentials,
+                              boolean pipelinedHandshake, Socks5CommandType commandType) {
+        this(proxyAddress, requireNonNull(credentials, "credentials").username(), credentials.password(),
+             credentials, pipelinedHandshake, commandType);
+    }
+
+    private Socks5ProxyHandler(SocketAddress proxyAddress, String username, String password,
+                               Socks5Credentials credentials, boolean pipelinedHandshake,
+                               Socks5CommandType commandType) {
         super(proxyAddress);
+        requireNonNull(commandType, "commandType");
+        if (commandType != Socks5CommandType.CONNECT && commandType != Socks5CommandType.BIND &&
+            commandType != Socks5CommandType.UDP_ASSOCIATE) {
+            throw new IllegalArgumentException(
+                    "commandType: " + commandType + " (expected: CONNECT, BIND or UDP_ASSOCIATE)");
+        }
         if (username != null && username.isEmpty()) {
             username = null;
         }
@@ -72,6 +156,19 @@ public final class Socks5ProxyHandler extends ProxyHandler {
         }
         this.username = username;
         this.password = password;
+        this.credentials = credentials;
+        this.pipelinedHandshake = pipelinedHandshake;
+        this.commandType = commandType;
+        if (commandType != Socks5CommandType.CONNECT) {
+            bindPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+            connectFuture().addListener(future -> {
+                if (future.isFailed()) {
+                    bindPromise.tryFailure(future.cause());
+                }
+            });
+        } else {
+            bindPromise = null;
+        }
     }
 
     @Override
@@ -92,12 +189,51 @@ public final class Socks5ProxyHandler extends ProxyHandler {
         return password;
     }
 
+    /**
+     * Returns {@code true} if this handler sends all its handshake requests at once.
+     */
+    public boolean isPipelinedHandshake() {
+        return pipelinedHandshake;
+    }
+
+    /**
+     * Returns the type of the command this handler sends.
+     */
+    public Socks5CommandType commandType() {
+        return commandType;
+    }
+
+    /**
+     * Returns a {@link Future} that is notified with the address the proxy server listens on for the connection from
+     * the destination, as sent in the first reply to the {@link Socks5CommandType#BIND} request, or with the address
+     * of the UDP relay, as sent in the reply to the {@link Socks5CommandType#UDP_ASSOCIATE} request.
+     *
+     * @throws IllegalStateException if the {@linkplain #commandType() command type} is
+     *                               {@link Socks5CommandType#CONNECT}
+     */
+    public Future<InetSocketAddress> bindFuture() {
+        if (bindPromise == null) {
+            throw new IllegalStateException("commandType: " + commandType + " (expected: BIND or UDP_ASSOCIATE)");
+        }
+        return bindPromise.asFuture();
+    }
+
+    /**
+     * Returns the address of the peer which connected to the proxy server, as sent in the second reply to the
+     * {@link Socks5CommandType#BIND} request, or {@code null} if it has not connected yet.
+     */
+    public InetSocketAddress bindPeerAddress() {
+        return bindPeerAddress;
+    }
+
     @Override
     protected void addCodec(ChannelHandlerContext ctx) throws Exception {
         ChannelPipeline p = ctx.pipeline();
         String name = ctx.name();
 
-        Socks5InitialResponseDecoder decoder = new Socks5InitialResponseDecoder();
+        ChannelHandler decoder = pipelinedHandshake?
+                new Socks5PipelinedResponseDecoder(Socks5AddressDecoder.DEFAULT, commandType)
+                : new Socks5InitialResponseDecoder();
         p.addBefore(name, null, decoder);
 
         decoderName = p.context(decoder).name();
@@ -121,7 +257,43 @@ public final class Socks5ProxyHandler extends ProxyHandler {
 
     @Override
     protected Object newInitialMessage(ChannelHandlerContext ctx) throws Exception {
-        return socksAuthMethod() == Socks5AuthMethod.PASSWORD? INIT_REQUEST_PASSWORD : INIT_REQUEST_NO_AUTH;
+        if (pipelinedHandshake) {
+            if (socksAuthMethod() == Socks5AuthMethod.PASSWORD) {
+                writeToProxyServer(INIT_REQUEST_PASSWORD_ONLY.get());
+                writeToProxyServer(newPasswordAuthRequest());
+            } else {
+                writeToProxyServer(INIT_REQUEST_NO_AUTH.get());
+            }
+            return newCommand();
+        }
+        return (socksAuthMethod() == Socks5AuthMethod.PASSWORD? INIT_REQUEST_PASSWORD : INIT_REQUEST_NO_AUTH).get();
+    }
+
+    @Override
+    protected boolean isWholeRequestInInitialMessage() {
+        return pipelinedHandshake && commandType == Socks5CommandType.CONNECT;
+    }
+
+    @Override
+    protected Object newWarmUpMessage(ChannelHandlerContext ctx) throws Exception {
+        // The greeting and the authentication do not depend on the destination; only the command does.
+        if (pipelinedHandshake && socksAuthMethod() == Socks5AuthMethod.PASSWORD) {
+            writeToProxyServer(INIT_REQUEST_PASSWORD_ONLY.get());
+            return newPasswordAuthRequest();
+        }
+        if (pipelinedHandshake) {
+            return INIT_REQUEST_NO_AUTH.get();
+        }
+        return (socksAuthMethod() == Socks5AuthMethod.PASSWORD? INIT_REQUEST_PASSWORD : INIT_REQUEST_NO_AUTH).get();
+    }
+
+    @Override
+    protected Object newDestinationMessage(ChannelHandlerContext ctx) throws Exception {
+        if (!pipelinedHandshake) {
+            ctx.pipeline().replace(decoderName, decoderName,
+                    new Socks5CommandResponseDecoder(Socks5AddressDecoder.DEFAULT, commandType));
+        }
+        return newCommand();
     }
 
     @Override
@@ -130,22 +302,32 @@ public final class Socks5ProxyHandler extends ProxyHandler {
             Socks5InitialResponse res = (Socks5InitialResponse) response;
             Socks5AuthMethod authMethod = socksAuthMethod();
             Socks5AuthMethod resAuthMethod = res.authMethod();
+            if (pipelinedHandshake) {
+                // The requests that follow have been sent already for the only method offered.
+                if (resAuthMethod != authMethod) {
+                    throw new ProxyConnectException(exceptionMessage("unexpected authMethod: " + res.authMethod()));
+                }
+                if (resAuthMethod == Socks5AuthMethod.NO_AUTH && destinationAddress() == null) {
+                    setWarmUpSuccess();
+                }
+                return false;
+            }
             if (resAuthMethod != Socks5AuthMethod.NO_AUTH && resAuthMethod != authMethod) {
                 // Server did not allow unauthenticated access nor accept the requested authentication scheme.
                 throw new ProxyConnectException(exceptionMessage("unexpected authMethod: " + res.authMethod()));
             }
 
             if (resAuthMethod == Socks5AuthMethod.NO_AUTH) {
-                sendConnectCommand(ctx);
+                sendConnectCommandOrWarmUp(ctx);
             } else if (resAuthMethod == Socks5AuthMethod.PASSWORD) {
                 // In case of password authentication, send an authentication request.
                 ctx.pipeline().replace(decoderName, decoderName, new Socks5PasswordAuthResponseDecoder());
-                sendToProxyServer(new DefaultSocks5PasswordAuthRequest(
-                        username != null? username : "", password != null? password : ""));
+                sendToProxyServer(newPasswordAuthRequest());
             } else {
                 // Should never reach here.
                 throw new Error();
             }
+            return false;
         }
 
         if (response instanceof Socks5PasswordAuthResponse) {
@@ -155,19 +337,39 @@ public final class Socks5ProxyHandler extends ProxyHandler {
                 throw new ProxyConnectException(exceptionMessage("authStatus: " + res.status()));
             }
 
-            sendConnectCommand(ctx);
+            if (destinationAddress() == null) {
+                setWarmUpSuccess();
+            } else if (!pipelinedHandshake) {
+                sendConnectCommand(ctx);
+            }
             return false;
         }
 
-        // This should be the last message from the server.
+        // This should be the last message from the server, unless it is the first reply to a BIND request.
         Socks5CommandResponse res = (Socks5CommandResponse) response;
         if (res.status() != Socks5CommandStatus.SUCCESS) {
             throw new ProxyConnectException(exceptionMessage("status: " + res.status()));
         }
 
+        if (bindPromise != null && !bindPromise.isDone()) {
+            bindPromise.trySuccess(toSocketAddress(res));
+            // Only a BIND request has a second reply.
+            return commandType != Socks5CommandType.BIND;
+        }
+        if (bindPromise != null) {
+            bindPeerAddress = toSocketAddress(res);
+        }
         return true;
     }
 
+    private static InetSocketAddress toSocketAddress(Socks5CommandResponse res) {
+        final Socks5BinaryAddress bndAddr = res.binaryBndAddr();
+        if (bndAddr != null) {
+            return bndAddr.toSocketAddress(res.bndPort());
+        }
+        return InetSocketAddress.createUnresolved(String.valueOf(res.bndAddr()), res.bndPort());
+    }
+
     private Socks5AuthMethod socksAuthMethod() {
         Socks5AuthMethod authMethod;
         if (username == null && password == null) {
@@ -178,7 +380,36 @@ public final class Socks5ProxyHandler extends ProxyHandler {
         return authMethod;
     }
 
+    private Object newPasswordAuthRequest() {
+        if (credentials != null) {
+            return credentials.newPasswordAuthFrame();
+        }
+        return new DefaultSocks5PasswordAuthRequest(username != null? username : "", password != null? password : "");
+    }
+
+    private static Supplier<Buffer> newConstFrame(Socks5Message msg) {
+        try {
+            return Socks5ClientEncoder.DEFAULT.newConstBufferSupplier(
+                    DefaultBufferAllocators.preferredAllocator(), msg);
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private void sendConnectCommandOrWarmUp(ChannelHandlerContext ctx) throws Exception {
+        if (destinationAddress() == null) {
+            // Warming up; the command is sent once the destination is known.
+            setWarmUpSuccess();
+        } else {
+            sendConnectCommand(ctx);
+        }
+    }
+
     private void sendConnectCommand(ChannelHandlerContext ctx) throws Exception {
+        sendToProxyServer(newDestinationMessage(ctx));
+    }
+
+    private Socks5CommandRequest newCommand() throws Exception {
         InetSocketAddress raddr = destinationAddress();
         Socks5AddressType addrType;
         String rhost;
@@ -197,7 +428,6 @@ public final class Socks5ProxyHandler extends ProxyHandler {
             }
         }
 
-        ctx.pipeline().replace(decoderName, decoderName, new Socks5CommandResponseDecoder());
-        sendToProxyServer(new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, addrType, rhost, raddr.getPort()));
+        return new DefaultSocks5CommandRequest(commandType, addrType, rhost, raddr.getPort());
     }
 }
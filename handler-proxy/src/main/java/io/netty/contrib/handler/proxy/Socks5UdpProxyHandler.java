@@ -0,0 +1,343 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty.contrib.handler.codec.socksx.SocksIdnUtil;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5BinaryAddress;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacket;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketEncoder;
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.PendingWriteQueue;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.util.Resource;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+import io.netty5.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends and receives the {@link DatagramPacket}s of a datagram channel through the UDP relay of a SOCKS5 proxy
+ * server.  When the datagram channel becomes active, a control connection to the proxy server is made with the
+ * specified {@link Bootstrap} and a {@link Socks5CommandType#UDP_ASSOCIATE} request is sent over it.  Once the proxy
+ * server has replied with the address of its relay, which {@link #relayFuture()} is notified with, every outbound
+ * datagram is prefixed with a SOCKS5 UDP request header that names its recipient and sent to the relay, and every
+ * inbound datagram from the relay is stripped of its header and passed on as if it came from the destination.  The
+ * datagrams from anywhere else are dropped, so that they cannot pass for datagrams relayed by the proxy server.
+ * <p>
+ * The datagrams written before the association is ready are queued.  The header of each destination is encoded only
+ * once and shared, read-only, by all the datagrams sent to it, so that wrapping a datagram costs neither an
+ * allocation for its header nor a copy of its payload.  The control connection and the datagram channel are closed
+ * together, as the proxy server ends the association when the control connection is closed.
+ */
+public final class Socks5UdpProxyHandler implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(Socks5UdpProxyHandler.class);
+
+    private static final int MAX_CACHED_HEADERS = 256;
+
+    private final Bootstrap controlBootstrap;
+    private final SocketAddress proxyAddress;
+    private final String username;
+    private final String password;
+    private final Promise<InetSocketAddress> relayPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+
+    // Only accessed from the event loop of the datagram channel.
+    private final Map<InetSocketAddress, Supplier<Buffer>> headers =
+            new LinkedHashMap<InetSocketAddress, Supplier<Buffer>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Supplier<Buffer>> eldest) {
+                    return size() > MAX_CACHED_HEADERS;
+                }
+            };
+
+    private ChannelHandlerContext ctx;
+    private String decoderName;
+    private boolean associating;
+    private Channel controlChannel;
+    private InetSocketAddress relayAddress;
+    private PendingWriteQueue pendingWrites;
+
+    /**
+     * Creates a new instance that does not authenticate to the proxy server.
+     *
+     * @param controlBootstrap the {@link Bootstrap} the control connection is made with, whose event loop group and
+     *                         channel type are already set; its handler is replaced
+     */
+    public Socks5UdpProxyHandler(Bootstrap controlBootstrap, SocketAddress proxyAddress) {
+        this(controlBootstrap, proxyAddress, null, null);
+    }
+
+    /**
+     * Creates a new instance that authenticates to the proxy server with the specified credentials.
+     *
+     * @param controlBootstrap the {@link Bootstrap} the control connection is made with, whose event loop group and
+     *                         channel type are already set; its handler is replaced
+     */
+    public Socks5UdpProxyHandler(Bootstrap controlBootstrap, SocketAddress proxyAddress,
+                                 String username, String password) {
+        this.controlBootstrap = requireNonNull(controlBootstrap, "controlBootstrap");
+        this.proxyAddress = requireNonNull(proxyAddress, "proxyAddress");
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Returns the address of the proxy server the control connection is made to.
+     */
+    public SocketAddress proxyAddress() {
+        return proxyAddress;
+    }
+
+    /**
+     * Returns a {@link Future} that is notified with the address of the UDP relay of the proxy server once the
+     * association is ready, or with the cause of the failure.
+     */
+    public Future<InetSocketAddress> relayFuture() {
+        return relayPromise.asFuture();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        final RelayPacketDecoder decoder = new RelayPacketDecoder();
+        ctx.pipeline().addBefore(ctx.name(), null, decoder);
+        decoderName = ctx.pipeline().context(decoder).name();
+        if (ctx.channel().isActive()) {
+            associate();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (ctx.pipeline().context(decoderName) != null) {
+            ctx.pipeline().remove(decoderName);
+        }
+        final ProxyConnectException cause = new ProxyConnectException("handler removed");
+        relayPromise.tryFailure(cause);
+        failPendingWrites(cause);
+        headers.clear();
+        if (controlChannel != null) {
+            controlChannel.close();
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        associate();
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        fail(new ClosedChannelException());
+        ctx.fireChannelInactive();
+    }
+
+    private void associate() {
+        if (associating) {
+            return;
+        }
+        associating = true;
+
+        // The proxy server only relays the datagrams sent from the port named in the request.
+        final SocketAddress localAddress = ctx.channel().localAddress();
+        final int localPort = localAddress instanceof InetSocketAddress?
+                ((InetSocketAddress) localAddress).getPort() : 0;
+        final Socks5ProxyHandler proxyHandler = new Socks5ProxyHandler(
+                proxyAddress, username, password, false, Socks5CommandType.UDP_ASSOCIATE);
+
+        final Bootstrap b = controlBootstrap.clone().handler(proxyHandler);
+        b.connect(new InetSocketAddress(localPort)).addListener(future -> {
+            if (future.isFailed()) {
+                ctx.executor().execute(() -> fail(future.cause()));
+            }
+        });
+        proxyHandler.connectFuture().addListener(future -> {
+            if (future.isFailed()) {
+                ctx.executor().execute(() -> fail(future.cause()));
+                return;
+            }
+            final Channel channel = future.getNow();
+            InetSocketAddress relay = proxyHandler.bindFuture().getNow();
+            if (relay.getAddress() != null && relay.getAddress().isAnyLocalAddress() &&
+                channel.remoteAddress() instanceof InetSocketAddress) {
+                // The relay listens on all the addresses of the proxy server.
+                relay = new InetSocketAddress(((InetSocketAddress) channel.remoteAddress()).getAddress(),
+                                              relay.getPort());
+            }
+            final InetSocketAddress relayAddress = relay;
+            ctx.executor().execute(() -> onAssociated(channel, relayAddress));
+        });
+    }
+
+    private void onAssociated(Channel channel, InetSocketAddress relayAddress) {
+        if (relayPromise.isDone()) {
+            channel.close();
+            return;
+        }
+        controlChannel = channel;
+        channel.closeFuture().addListener(future -> ctx.channel().close());
+        ctx.channel().closeFuture().addListener(future -> channel.close());
+
+        this.relayAddress = relayAddress;
+        relayPromise.trySuccess(relayAddress);
+        if (pendingWrites != null) {
+            final PendingWriteQueue queue = pendingWrites;
+            pendingWrites = null;
+            queue.removeAndTransferAll(this::writeToRelay);
+            ctx.flush();
+        }
+    }
+
+    private void fail(Throwable cause) {
+        if (!relayPromise.tryFailure(cause)) {
+            return;
+        }
+        failPendingWrites(cause);
+        if (ctx.channel().isActive()) {
+            ctx.fireChannelExceptionCaught(cause);
+            ctx.close();
+        }
+    }
+
+    private void failPendingWrites(Throwable cause) {
+        if (pendingWrites != null) {
+            pendingWrites.removeAndFailAll(cause);
+            pendingWrites = null;
+        }
+    }
+
+    @Override
+    public Future<Void> write(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof DatagramPacket)) {
+            return ctx.write(msg);
+        }
+        if (relayAddress != null) {
+            return writeToRelay(msg);
+        }
+        if (relayPromise.isDone()) {
+            Resource.dispose(msg);
+            return ctx.newFailedFuture(relayPromise.cause());
+        }
+
+        final Promise<Void> promise = ctx.newPromise();
+        if (pendingWrites == null) {
+            pendingWrites = new PendingWriteQueue(ctx.executor(),
+                    ctx.channel().getOption(ChannelOption.MESSAGE_SIZE_ESTIMATOR).newHandle());
+        }
+        pendingWrites.add(msg, promise);
+        return promise.asFuture();
+    }
+
+    private Future<Void> writeToRelay(Object msg) {
+        if (!(msg instanceof DatagramPacket)) {
+            return ctx.write(msg);
+        }
+        final Buffer wrapped;
+        try (DatagramPacket datagram = (DatagramPacket) msg) {
+            final Supplier<Buffer> header = header((InetSocketAddress) datagram.recipient());
+            // A composite buffer must be read-only as a whole, as the shared header is.
+            final Buffer payload = datagram.content().split().makeReadOnly();
+            wrapped = ctx.bufferAllocator().compose(Arrays.asList(header.get().send(), payload.send()));
+        } catch (Exception e) {
+            return ctx.newFailedFuture(e);
+        }
+        return ctx.write(new DatagramPacket(wrapped, relayAddress));
+    }
+
+    private Supplier<Buffer> header(InetSocketAddress recipient) throws Exception {
+        Supplier<Buffer> header = headers.get(recipient);
+        if (header == null) {
+            final Socks5BinaryAddress dstAddr;
+            if (recipient.isUnresolved()) {
+                dstAddr = Socks5BinaryAddress.valueOf(
+                        Socks5AddressType.DOMAIN, SocksIdnUtil.toAscii(recipient.getHostString()));
+            } else {
+                dstAddr = Socks5BinaryAddress.valueOf(recipient.getAddress());
+            }
+            header = Socks5UdpPacketEncoder.DEFAULT.newConstHeaderSupplier(
+                    ctx.bufferAllocator(), dstAddr, recipient.getPort());
+            headers.put(recipient, header);
+        }
+        return header;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof DatagramPacket) {
+            // Not from the relay, or the relay would have been decoded.
+            logger.debug("{} Dropped a datagram from {}", ctx.channel(), ((DatagramPacket) msg).sender());
+            Resource.dispose(msg);
+            return;
+        }
+        if (!(msg instanceof Socks5UdpPacket)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try (Socks5UdpPacket packet = (Socks5UdpPacket) msg) {
+            if (packet.frag() != 0) {
+                logger.debug("{} Dropped a fragmented datagram: {}", ctx.channel(), packet);
+                return;
+            }
+            ctx.fireChannelRead(new DatagramPacket(packet.content().split(), packet.recipient(),
+                                                   packet.dstAddr().toSocketAddress(packet.dstPort())));
+        }
+    }
+
+    @Override
+    public void channelExceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (cause instanceof DecoderException) {
+            // A malformed datagram from the relay spoils only itself.
+            logger.debug("{} Dropped a malformed datagram", ctx.channel(), cause);
+            return;
+        }
+        ctx.fireChannelExceptionCaught(cause);
+    }
+
+    /**
+     * Decodes the datagrams from the relay only, and lets the others through.
+     */
+    private final class RelayPacketDecoder extends Socks5UdpPacketDecoder {
+
+        @Override
+        public boolean acceptInboundMessage(Object msg) throws Exception {
+            return relayAddress != null && msg instanceof DatagramPacket &&
+                   relayAddress.equals(((DatagramPacket) msg).sender());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.local.LocalAddress;
+import io.netty5.channel.local.LocalChannel;
+import io.netty5.channel.local.LocalHandler;
+import io.netty5.channel.local.LocalServerChannel;
+import io.netty5.handler.codec.http.DefaultFullHttpResponse;
+import io.netty5.handler.codec.http.HttpHeaderNames;
+import io.netty5.handler.codec.http.HttpResponseEncoder;
+import io.netty5.handler.codec.http.HttpResponseStatus;
+import io.netty5.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgedProxyConnectorTest {
+
+    private static final LocalAddress FAST_PROXY = new LocalAddress("hedged-fast");
+    private static final LocalAddress SLOW_PROXY = new LocalAddress("hedged-slow");
+    private static final LocalAddress DEAD_PROXY = new LocalAddress("hedged-dead");
+    private static final InetSocketAddress DESTINATION = InetSocketAddress.createUnresolved("example.com", 443);
+
+    private static EventLoopGroup group;
+    private static Channel fastProxy;
+    private static Channel slowProxy;
+    private static volatile CountDownLatch slowProxyClosed = new CountDownLatch(1);
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        group = new MultithreadEventLoopGroup(2, LocalHandler.newFactory());
+        fastProxy = new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new HttpResponseEncoder(), new ChannelHandler() {
+                            @Override
+                            public void channelActive(ChannelHandlerContext ctx) {
+                                DefaultFullHttpResponse response = new DefaultFullHttpResponse(
+                                        HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                                        preferredAllocator().allocate(0));
+                                response.headers().add(HttpHeaderNames.CONTENT_LENGTH, "0");
+                                ctx.writeAndFlush(response);
+                            }
+                        });
+                    }
+                }).bind(FAST_PROXY).asStage().get();
+        // Accepts the connection, but never answers the request.
+        slowProxy = new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        final CountDownLatch closed = slowProxyClosed;
+                        ch.closeFuture().addListener(future -> closed.countDown());
+                    }
+                }).bind(SLOW_PROXY).asStage().get();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        if (fastProxy != null) {
+            fastProxy.close().asStage().sync();
+        }
+        if (slowProxy != null) {
+            slowProxy.close().asStage().sync();
+        }
+        group.shutdownGracefully();
+    }
+
+    private static HedgedProxyConnector newConnector(long hedgeDelayMillis, LocalAddress... proxies) {
+        return new HedgedProxyConnector(new Bootstrap().channel(LocalChannel.class).group(group),
+                                        HttpProxyHandler::new, Arrays.asList(proxies), hedgeDelayMillis);
+    }
+
+    private static void assertProxiedThrough(LocalAddress expected, Channel channel) {
+        assertEquals(expected, channel.pipeline().get(HttpProxyHandler.class).proxyAddress());
+    }
+
+    @Test
+    public void testSlowProxyIsHedged() throws Exception {
+        slowProxyClosed = new CountDownLatch(1);
+        Channel channel = newConnector(50, SLOW_PROXY, FAST_PROXY)
+                .connect(DESTINATION).asStage().get(5, TimeUnit.SECONDS);
+        try {
+            assertProxiedThrough(FAST_PROXY, channel);
+            // The losing connection is closed.
+            assertTrue(slowProxyClosed.await(5, TimeUnit.SECONDS));
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testFastProxyNeedsNoHedge() throws Exception {
+        Channel channel = newConnector(60000, FAST_PROXY, SLOW_PROXY)
+                .connect(DESTINATION).asStage().get(5, TimeUnit.SECONDS);
+        try {
+            assertProxiedThrough(FAST_PROXY, channel);
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testUnreachableProxyFailsOverAtOnce() throws Exception {
+        // The hedge delay is longer than the test waits, so only the failure can start the next handshake.
+        Channel channel = newConnector(60000, DEAD_PROXY, FAST_PROXY)
+                .connect(DESTINATION).asStage().get(5, TimeUnit.SECONDS);
+        try {
+            assertProxiedThrough(FAST_PROXY, channel);
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testHedgeDelayStartsOverAfterFailure() throws Exception {
+        LocalAddress failingProxyAddress = new LocalAddress("hedged-failing");
+        LocalAddress timedProxyAddress = new LocalAddress("hedged-slow-timed");
+        // Closes the connection without an answer, just before the hedge delay.
+        Channel failingProxy = new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.executor().schedule(ch::close, 600, TimeUnit.MILLISECONDS);
+                    }
+                }).bind(failingProxyAddress).asStage().get();
+        final AtomicLong acceptedNanos = new AtomicLong();
+        Channel timedProxy = new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        acceptedNanos.set(System.nanoTime());
+                    }
+                }).bind(timedProxyAddress).asStage().get();
+        try {
+            Channel channel = newConnector(1000, failingProxyAddress, timedProxyAddress, FAST_PROXY)
+                    .connect(DESTINATION).asStage().get(5, TimeUnit.SECONDS);
+            try {
+                assertProxiedThrough(FAST_PROXY, channel);
+                // The fast proxy server is only tried once the slow one has had a full hedge delay, rather than
+                // what was left of the delay of the failed handshake.
+                long hedgedAfterMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedNanos.get());
+                assertTrue(hedgedAfterMillis >= 800, "hedged after " + hedgedAfterMillis + " ms");
+            } finally {
+                channel.close().asStage().sync();
+            }
+        } finally {
+            failingProxy.close().asStage().sync();
+            timedProxy.close().asStage().sync();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.local.LocalAddress;
+import io.netty5.channel.local.LocalChannel;
+import io.netty5.channel.local.LocalHandler;
+import io.netty5.channel.local.LocalServerChannel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tunnels through two SOCKS4 hops, both played by one stand-in proxy server, as the whole chain runs over the one
+ * connection to the first proxy server.
+ */
+public class ProxyChainHandlerTest {
+
+    private static final InetSocketAddress SECOND_PROXY = new InetSocketAddress("10.0.0.2", 1080);
+    private static final InetSocketAddress DESTINATION = new InetSocketAddress("10.0.0.3", 80);
+    private static final int SUCCESS = 0x5a;
+    private static final int REJECTED = 0x5b;
+
+    private static EventLoopGroup group;
+
+    @BeforeAll
+    public static void setUp() {
+        group = new MultithreadEventLoopGroup(2, LocalHandler.newFactory());
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    /**
+     * Reads SOCKS4 {@code CONNECT} requests with an IPv4 address and no user ID, and replies to them with the
+     * specified statuses, in order, once it has read the specified number of requests.
+     */
+    private static final class ScriptedProxy implements ChannelHandler {
+        private static final int REQUEST_LENGTH = 9;
+
+        final List<InetSocketAddress> requests = new CopyOnWriteArrayList<>();
+        volatile int requestsBeforeFirstReply = -1;
+        private final int repliesAfter;
+        private final int[] statuses;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private int replies;
+
+        ScriptedProxy(int repliesAfter, int... statuses) {
+            this.repliesAfter = repliesAfter;
+            this.statuses = statuses;
+        }
+
+        @Override
+        public boolean isSharable() {
+            return true;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            try (Buffer buf = (Buffer) msg) {
+                while (buf.readableBytes() > 0) {
+                    received.write(buf.readByte());
+                }
+            }
+            byte[] bytes = received.toByteArray();
+            while (requests.size() < statuses.length && bytes.length >= (requests.size() + 1) * REQUEST_LENGTH) {
+                int offset = requests.size() * REQUEST_LENGTH;
+                byte[] address = Arrays.copyOfRange(bytes, offset + 4, offset + 8);
+                int port = (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+                requests.add(new InetSocketAddress(InetAddress.getByAddress(address), port));
+            }
+            if (requests.size() < repliesAfter) {
+                return;
+            }
+            if (requestsBeforeFirstReply < 0) {
+                requestsBeforeFirstReply = requests.size();
+            }
+            while (replies < requests.size()) {
+                ctx.write(ctx.bufferAllocator().copyOf(new byte[] { 0, (byte) statuses[replies++], 0, 0, 0, 0, 0, 0 }));
+            }
+            ctx.flush();
+        }
+    }
+
+    private static Channel startProxy(LocalAddress address, ScriptedProxy proxy) throws Exception {
+        return new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(proxy)
+                                    .bind(address).asStage().get();
+    }
+
+    private static ProxyChainHandler connect(LocalAddress proxyAddress, boolean pipelined) throws Exception {
+        ProxyChainHandler chain = new ProxyChainHandler(
+                pipelined, new Socks4ProxyHandler(proxyAddress), new Socks4ProxyHandler(SECOND_PROXY));
+        Channel channel = new Bootstrap().channel(LocalChannel.class).group(group).handler(chain)
+                                         .register().asStage().get();
+        channel.connect(DESTINATION);
+        return chain;
+    }
+
+    @Test
+    public void testHopsInOrder() throws Exception {
+        LocalAddress address = new LocalAddress("proxy-chain-order");
+        ScriptedProxy proxy = new ScriptedProxy(1, SUCCESS, SUCCESS);
+        Channel server = startProxy(address, proxy);
+        try {
+            ProxyChainHandler chain = connect(address, false);
+            Channel channel = chain.connectFuture().asStage().get(5, TimeUnit.SECONDS);
+            try {
+                // The first hop is asked for the second proxy server, and the second one for the destination.
+                assertEquals(Arrays.asList(SECOND_PROXY, DESTINATION), proxy.requests);
+                // Without pipelining, the request of the second hop waits for the reply to the first one.
+                assertEquals(1, proxy.requestsBeforeFirstReply);
+
+                List<ProxyConnectionEvent> events = chain.connectionEvents();
+                assertEquals(2, events.size());
+                assertEquals(address, events.get(0).proxyAddress());
+                assertEquals(SECOND_PROXY, events.get(0).destinationAddress());
+                assertEquals(SECOND_PROXY, events.get(1).proxyAddress());
+                assertEquals(DESTINATION, events.get(1).destinationAddress());
+                assertTrue(events.get(0).handshakeNanos() >= 0);
+                assertTrue(events.get(1).handshakeNanos() >= 0);
+                for (ProxyHandler hop : chain.hops()) {
+                    assertTrue(hop.isConnected());
+                }
+            } finally {
+                channel.close().asStage().sync();
+            }
+        } finally {
+            server.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testPipelinedWritesReleased() throws Exception {
+        LocalAddress address = new LocalAddress("proxy-chain-pipelined");
+        // Replies only once both requests are in, which only a pipelined chain sends before the first reply.
+        ScriptedProxy proxy = new ScriptedProxy(2, SUCCESS, SUCCESS);
+        Channel server = startProxy(address, proxy);
+        try {
+            ProxyChainHandler chain = connect(address, true);
+            assertTrue(chain.isPipelined());
+            Channel channel = chain.connectFuture().asStage().get(5, TimeUnit.SECONDS);
+            try {
+                assertEquals(Arrays.asList(SECOND_PROXY, DESTINATION), proxy.requests);
+                assertEquals(2, proxy.requestsBeforeFirstReply);
+                assertEquals(2, chain.connectionEvents().size());
+            } finally {
+                channel.close().asStage().sync();
+            }
+        } finally {
+            server.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testFailureOfLaterHop() throws Exception {
+        LocalAddress address = new LocalAddress("proxy-chain-failure");
+        ScriptedProxy proxy = new ScriptedProxy(1, SUCCESS, REJECTED);
+        Channel server = startProxy(address, proxy);
+        try {
+            ProxyChainHandler chain = connect(address, false);
+            assertTrue(chain.connectFuture().asStage().await(5, TimeUnit.SECONDS));
+            assertInstanceOf(ProxyConnectException.class, chain.connectFuture().cause());
+            assertSame(chain.hops().get(1).connectFuture().cause(), chain.connectFuture().cause());
+
+            // Only the first hop got through.
+            assertEquals(1, chain.connectionEvents().size());
+            assertTrue(chain.hops().get(0).connectFuture().isSuccess());
+        } finally {
+            server.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testFailureOfFirstHop() throws Exception {
+        LocalAddress address = new LocalAddress("proxy-chain-first-failure");
+        ScriptedProxy proxy = new ScriptedProxy(1, REJECTED);
+        Channel server = startProxy(address, proxy);
+        try {
+            ProxyChainHandler chain = connect(address, false);
+            assertTrue(chain.connectFuture().asStage().await(5, TimeUnit.SECONDS));
+            assertInstanceOf(ProxyConnectException.class, chain.connectFuture().cause());
+            assertTrue(chain.connectionEvents().isEmpty());
+            // The second hop never sent its request.
+            assertEquals(1, proxy.requests.size());
+        } finally {
+            server.close().asStage().sync();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.local.LocalAddress;
+import io.netty5.channel.local.LocalChannel;
+import io.netty5.channel.local.LocalHandler;
+import io.netty5.channel.local.LocalServerChannel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProxyConnectionPoolTest {
+
+    private static final LocalAddress PROXY = new LocalAddress("proxy-connection-pool");
+    private static final InetSocketAddress DESTINATION = InetSocketAddress.createUnresolved("destination.com", 42);
+
+    private static EventLoopGroup group;
+    private static Channel proxy;
+    // The connections the proxy server has accepted, in order.
+    private static final Queue<Channel> accepted = new ConcurrentLinkedQueue<>();
+
+    private ProxyConnectionPool pool;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        group = new MultithreadEventLoopGroup(2, LocalHandler.newFactory());
+        // Accepts no authentication and connects to any destination.
+        proxy = new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        accepted.add(ch);
+                        ch.pipeline().addLast(new ChannelHandler() {
+                            private int received;
+
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                try (Buffer buf = (Buffer) msg) {
+                                    final int before = received;
+                                    received += buf.readableBytes();
+                                    if (before < 3 && received >= 3) {
+                                        ctx.writeAndFlush(ctx.bufferAllocator().copyOf(new byte[] { 5, 0 }));
+                                    }
+                                    if (received > 3) {
+                                        ctx.writeAndFlush(ctx.bufferAllocator().copyOf(
+                                                new byte[] { 5, 0, 0, 1, 0, 0, 0, 0, 0, 0 }));
+                                        ctx.pipeline().remove(this);
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }).bind(PROXY).asStage().get();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.close().asStage().sync();
+        }
+        group.shutdownGracefully();
+    }
+
+    @BeforeEach
+    public void clearAccepted() {
+        accepted.clear();
+    }
+
+    @AfterEach
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private static ProxyConnectionPool newPool(int maxWarmConnections) {
+        return new ProxyConnectionPool(new Bootstrap().channel(LocalChannel.class).group(group),
+                                       () -> new Socks5ProxyHandler(PROXY), maxWarmConnections);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Channel acquire(ProxyConnectionPool pool) throws Exception {
+        return pool.acquire(DESTINATION).asStage().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAcquireWarmAndRefill() throws Exception {
+        pool = newPool(2);
+        waitFor(() -> pool.warmConnections() == 2);
+        List<SocketAddress> warmAddresses = new ArrayList<>();
+        for (Channel warm : accepted) {
+            warmAddresses.add(warm.remoteAddress());
+        }
+        assertEquals(2, warmAddresses.size());
+
+        Channel channel = acquire(pool);
+        try {
+            // One of the warm connections is used, and another one is warmed up to replace it.
+            assertTrue(warmAddresses.contains(channel.localAddress()));
+            waitFor(() -> pool.warmConnections() == 2);
+            assertEquals(3, accepted.size());
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testFallBackWhenNoWarmConnectionIsLeft() throws Exception {
+        pool = newPool(1);
+        waitFor(() -> pool.warmConnections() == 1);
+
+        // At most one of them gets the warm connection, and the others connect as if no pool was used.
+        Channel first = acquire(pool);
+        Channel second = acquire(pool);
+        Channel third = acquire(pool);
+        try {
+            assertTrue(first.isActive());
+            assertTrue(second.isActive());
+            assertTrue(third.isActive());
+            waitFor(() -> pool.warmConnections() == 1);
+        } finally {
+            first.close().asStage().sync();
+            second.close().asStage().sync();
+            third.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testReplaceWarmConnectionClosedByProxy() throws Exception {
+        pool = newPool(1);
+        waitFor(() -> pool.warmConnections() == 1);
+        accepted.poll().close().asStage().sync();
+
+        waitFor(() -> accepted.size() == 1 && pool.warmConnections() == 1);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        pool = newPool(2);
+        waitFor(() -> pool.warmConnections() == 2);
+
+        pool.close();
+        assertEquals(0, pool.warmConnections());
+        for (Channel channel : accepted) {
+            assertTrue(channel.closeFuture().asStage().await(5, TimeUnit.SECONDS));
+        }
+        Throwable cause = assertThrows(Exception.class,
+                                       () -> pool.acquire(DESTINATION).asStage().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, cause.getCause());
+
+        // No connection is warmed up after the pool is closed.
+        Thread.sleep(100);
+        assertEquals(2, accepted.size());
+        assertEquals(0, pool.warmConnections());
+    }
+}
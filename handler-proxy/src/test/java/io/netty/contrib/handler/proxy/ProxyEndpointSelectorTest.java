@@ -0,0 +1,175 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProxyEndpointSelectorTest {
+
+    private static final SocketAddress A = InetSocketAddress.createUnresolved("a.proxy", 1080);
+    private static final SocketAddress B = InetSocketAddress.createUnresolved("b.proxy", 1080);
+    private static final SocketAddress C = InetSocketAddress.createUnresolved("c.proxy", 1080);
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testPrefersLowerLatency() {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B));
+        for (int i = 0; i < 10; i++) {
+            selector.recordSuccess(A, millis(10));
+            selector.recordSuccess(B, millis(100));
+        }
+        assertEquals(millis(10), selector.latencyNanos(A));
+        // With two proxy servers, both choices are always compared.
+        for (int i = 0; i < 100; i++) {
+            assertEquals(A, selector.select());
+        }
+    }
+
+    @Test
+    public void testFailureRateOutweighsLatency() {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B), 100, 10000);
+        for (int i = 0; i < 10; i++) {
+            selector.recordSuccess(A, millis(10));
+            selector.recordFailure(A);
+            selector.recordFailure(A);
+            selector.recordSuccess(B, millis(15));
+        }
+        assertTrue(selector.failureRate(A) > 0.5);
+        assertFalse(selector.isCircuitOpen(A));
+        assertEquals(B, selector.select());
+    }
+
+    @Test
+    public void testUnmeasuredProxyIsTried() {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B));
+        selector.recordSuccess(A, millis(1));
+        assertEquals(0, selector.latencyNanos(B));
+        assertEquals(B, selector.select());
+        assertEquals(-1, selector.latencyNanos(C));
+    }
+
+    @Test
+    public void testExcluded() {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B, C));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(C, selector.select(Arrays.asList(A, B)));
+            assertNotEquals(A, selector.select(Collections.singletonList(A)));
+        }
+        assertNull(selector.select(Arrays.asList(A, B, C)));
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B, C), 2, 200);
+        selector.recordSuccess(B, millis(10));
+        selector.recordSuccess(C, millis(10));
+
+        selector.recordFailure(A);
+        assertFalse(selector.isCircuitOpen(A));
+        selector.recordFailure(A);
+        assertTrue(selector.isCircuitOpen(A));
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(A, selector.select());
+        }
+
+        // Once the circuit has been open long enough, one probe is let through.
+        Thread.sleep(250);
+        int probes = 0;
+        for (int i = 0; i < 100; i++) {
+            if (A.equals(selector.select())) {
+                probes++;
+            }
+        }
+        assertEquals(1, probes);
+
+        // A failed probe opens the circuit again, and a successful one closes it.
+        selector.recordFailure(A);
+        assertTrue(selector.isCircuitOpen(A));
+        Thread.sleep(250);
+        while (!A.equals(selector.select())) {
+            continue;
+        }
+        selector.recordSuccess(A, millis(1));
+        assertFalse(selector.isCircuitOpen(A));
+    }
+
+    @Test
+    public void testAllCircuitsOpen() {
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Arrays.asList(A, B), 1, 60000);
+        selector.recordFailure(A);
+        selector.recordFailure(B);
+        assertNotNull(selector.select());
+    }
+
+    @Test
+    public void testProbeTakenByAnotherCaller() throws Exception {
+        // With a single proxy server whose circuit is open, the callers which lose the race for its probe fall back
+        // to it, rather than finding every proxy server excluded.
+        ProxyEndpointSelector selector = new ProxyEndpointSelector(Collections.singletonList(A), 1, 1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 50; round++) {
+                selector.recordFailure(A);
+                assertTrue(selector.isCircuitOpen(A));
+                Thread.sleep(2);
+                CyclicBarrier barrier = new CyclicBarrier(threads);
+                List<Future<SocketAddress>> selected = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    selected.add(executor.submit(() -> {
+                        barrier.await();
+                        return selector.select();
+                    }));
+                }
+                for (Future<SocketAddress> future : selected) {
+                    assertEquals(A, future.get(5, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ProxyEndpointSelector(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> new ProxyEndpointSelector(Arrays.asList(A, A)));
+        assertThrows(IllegalArgumentException.class, () -> new ProxyEndpointSelector(Arrays.asList(A), 0, 1));
+    }
+}
@@ -427,7 +427,29 @@ public class ProxyHandlerTest {
                         clientSslCtx.newHandler(preferredAllocator()),
                         new HttpProxyHandler(interHttpsProxy.address()), // HTTPS
                         new HttpProxyHandler(interHttpProxy.address()), // HTTP
-                        new HttpProxyHandler(anonHttpProxy.address()))
+                        new HttpProxyHandler(anonHttpProxy.address())),
+
+                // ProxyChainHandler
+
+                new SuccessTestItem(
+                        "Chain handler: successful connection, AUTO_READ on",
+                        DESTINATION,
+                        true,
+                        new ProxyChainHandler(
+                                new Socks5ProxyHandler(interSocks5Proxy.address()), // SOCKS5
+                                new Socks4ProxyHandler(interSocks4Proxy.address()), // SOCKS4
+                                new HttpProxyHandler(interHttpProxy.address()), // HTTP
+                                new HttpProxyHandler(anonHttpProxy.address()))),
+
+                new SuccessTestItem(
+                        "Chain handler: successful connection, pipelined, AUTO_READ off",
+                        DESTINATION,
+                        false,
+                        new ProxyChainHandler(
+                                true,
+                                new Socks4ProxyHandler(interSocks4Proxy.address()), // SOCKS4
+                                new Socks4ProxyHandler(interSocks4Proxy.address()), // SOCKS4
+                                new HttpProxyHandler(anonHttpProxy.address())))
         );
 
         // Convert the test items to the list of constructor parameters.
@@ -611,6 +633,13 @@ public class ProxyHandlerTest {
                     ProxyHandler ph = (ProxyHandler) h;
                     assertTrue(ph.connectFuture().isDone());
                     assertEquals(success, ph.connectFuture().isSuccess());
+                } else if (h instanceof ProxyChainHandler) {
+                    ProxyChainHandler ch = (ProxyChainHandler) h;
+                    assertTrue(ch.connectFuture().isDone());
+                    assertEquals(success, ch.connectFuture().isSuccess());
+                    if (success) {
+                        assertEquals(ch.hops().size(), ch.connectionEvents().size());
+                    }
                 }
             }
         }
@@ -639,6 +668,8 @@ public class ProxyHandlerTest {
             for (ChannelHandler h: clientHandlers) {
                 if (h instanceof ProxyHandler) {
                     expectedEventCount++;
+                } else if (h instanceof ProxyChainHandler) {
+                    expectedEventCount += ((ProxyChainHandler) h).hops().size();
                 }
             }
 
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProxyHandshakeHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        ProxyHandshakeHistogram histogram = new ProxyHandshakeHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.valueAtPercentile(99), 0);
+        assertEquals(0, histogram.mean(), 0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        ProxyHandshakeHistogram histogram = new ProxyHandshakeHistogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        assertEquals(8, histogram.count());
+        assertEquals(3, histogram.valueAtPercentile(50));
+        assertEquals(7, histogram.valueAtPercentile(100));
+        assertEquals(3.5, histogram.mean(), 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        ProxyHandshakeHistogram histogram = new ProxyHandshakeHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000, histogram.max());
+        assertWithin(500000, histogram.valueAtPercentile(50));
+        assertWithin(990000, histogram.valueAtPercentile(99));
+        assertEquals(1000000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void testLargeAndNegativeValues() {
+        ProxyHandshakeHistogram histogram = new ProxyHandshakeHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.valueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.valueAtPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.valueAtPercentile(101));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.125, expected + " ~ " + actual);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandType;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks4ProxyHandlerTest {
+
+    private static final InetSocketAddress PROXY = new InetSocketAddress("127.0.0.1", 1080);
+    private static final InetSocketAddress PEER = new InetSocketAddress("10.0.0.2", 4000);
+
+    private static byte[] readOutbound(EmbeddedChannel channel) {
+        try (Buffer buf = channel.readOutbound()) {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+
+    private static void writeInbound(EmbeddedChannel channel, int... response) {
+        byte[] bytes = new byte[response.length];
+        for (int i = 0; i < response.length; i ++) {
+            bytes[i] = (byte) response[i];
+        }
+        channel.writeInbound(channel.bufferAllocator().copyOf(bytes));
+    }
+
+    private static EmbeddedChannel newBindChannel(Socks4ProxyHandler handler) {
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        // SOCKS4 has nothing to say before the destination is known.
+        assertNull(channel.readOutbound());
+        assertTrue(channel.connect(PEER).isSuccess());
+        assertArrayEquals(new byte[] { 4, 2, 0x0f, (byte) 0xa0, 10, 0, 0, 2, 0 }, readOutbound(channel));
+
+        writeInbound(channel, 0, 0x5a, 0x1f, 0x90, 10, 0, 0, 1);
+        assertEquals(new InetSocketAddress("10.0.0.1", 8080), handler.bindFuture().getNow());
+        assertFalse(handler.connectFuture().isDone());
+        return channel;
+    }
+
+    @Test
+    public void testBind() {
+        Socks4ProxyHandler handler = new Socks4ProxyHandler(PROXY, null, Socks4CommandType.BIND);
+        EmbeddedChannel channel = newBindChannel(handler);
+
+        writeInbound(channel, 0, 0x5a, 0x30, 0x39, 10, 0, 0, 2);
+        assertTrue(handler.connectFuture().isSuccess());
+        assertEquals(new InetSocketAddress("10.0.0.2", 12345), handler.bindPeerAddress());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testBindWithoutPeer() {
+        Socks4ProxyHandler handler = new Socks4ProxyHandler(PROXY, null, Socks4CommandType.BIND);
+        EmbeddedChannel channel = newBindChannel(handler);
+
+        assertThrows(ProxyConnectException.class, () -> writeInbound(channel, 0, 0x5b, 0, 0, 0, 0, 0, 0));
+        assertTrue(handler.bindFuture().isSuccess());
+        assertTrue(handler.connectFuture().isFailed());
+        assertNull(handler.bindPeerAddress());
+        assertFalse(channel.isActive());
+    }
+
+    @Test
+    public void testBindFutureOfConnect() {
+        assertThrows(IllegalStateException.class, () -> new Socks4ProxyHandler(PROXY).bindFuture());
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import io.netty5.channel.local.LocalAddress;
+import io.netty5.channel.local.LocalChannel;
+import io.netty5.channel.local.LocalHandler;
+import io.netty5.channel.local.LocalServerChannel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Socks5ProxyHandlerTest {
+
+    private static final InetSocketAddress PROXY = new InetSocketAddress("127.0.0.1", 1080);
+    private static final InetSocketAddress DESTINATION = InetSocketAddress.createUnresolved("destination.com", 42);
+    private static final InetSocketAddress PEER = new InetSocketAddress("10.0.0.2", 4000);
+
+    private static EventLoopGroup group;
+
+    @BeforeAll
+    public static void setUp() {
+        group = new MultithreadEventLoopGroup(1, LocalHandler.newFactory());
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    private static byte[] readOutbound(EmbeddedChannel channel) {
+        try (Buffer buf = channel.readOutbound()) {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+
+    private static byte[] connectRequest() {
+        byte[] host = DESTINATION.getHostString().getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = new byte[7 + host.length];
+        bytes[0] = 5;
+        bytes[1] = 1;
+        bytes[3] = 3;
+        bytes[4] = (byte) host.length;
+        System.arraycopy(host, 0, bytes, 5, host.length);
+        bytes[bytes.length - 1] = (byte) DESTINATION.getPort();
+        return bytes;
+    }
+
+    private static void writeInbound(EmbeddedChannel channel, byte... response) {
+        channel.writeInbound(channel.bufferAllocator().copyOf(response));
+    }
+
+    private static void testConnectWarm(EmbeddedChannel channel, Socks5ProxyHandler handler) {
+        assertTrue(handler.warmUpFuture().isSuccess());
+        assertNull(channel.readOutbound());
+
+        // Only the command is left to send once the destination is known.
+        assertTrue(channel.connect(DESTINATION).isSuccess());
+        assertSame(DESTINATION, handler.destinationAddress());
+        assertArrayEquals(connectRequest(), readOutbound(channel));
+        assertFalse(handler.isConnected());
+
+        writeInbound(channel, 5, 0, 0, 1, 0, 0, 0, 0, 0, 0);
+        assertTrue(handler.connectFuture().isSuccess());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testWarmUpNoAuth() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        assertArrayEquals(new byte[] { 5, 1, 0 }, readOutbound(channel));
+        assertFalse(handler.warmUpFuture().isDone());
+        writeInbound(channel, 5, 0);
+        testConnectWarm(channel, handler);
+    }
+
+    @Test
+    public void testWarmUpPassword() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY, "u", "p");
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        assertArrayEquals(new byte[] { 5, 2, 0, 2 }, readOutbound(channel));
+        writeInbound(channel, 5, 2);
+        assertArrayEquals(new byte[] { 1, 1, 'u', 1, 'p' }, readOutbound(channel));
+        assertFalse(handler.warmUpFuture().isDone());
+        writeInbound(channel, 1, 0);
+        testConnectWarm(channel, handler);
+    }
+
+    @Test
+    public void testPipelinedWarmUpPassword() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY, "u", "p", true);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        assertArrayEquals(new byte[] { 5, 1, 2 }, readOutbound(channel));
+        assertArrayEquals(new byte[] { 1, 1, 'u', 1, 'p' }, readOutbound(channel));
+        writeInbound(channel, 5, 2, 1, 0);
+        testConnectWarm(channel, handler);
+    }
+
+    @Test
+    public void testSharedCredentials() {
+        Socks5Credentials credentials = new Socks5Credentials("u", "p");
+        for (int i = 0; i < 2; i++) {
+            Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY, credentials, false, Socks5CommandType.CONNECT);
+            assertEquals("u", handler.username());
+            EmbeddedChannel channel = new EmbeddedChannel(handler);
+            assertArrayEquals(new byte[] { 5, 2, 0, 2 }, readOutbound(channel));
+            writeInbound(channel, 5, 2);
+            try (Buffer buf = channel.readOutbound()) {
+                // A read-only view of the request encoded with the credentials.
+                assertTrue(buf.readOnly());
+                byte[] bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes, 0, bytes.length);
+                assertArrayEquals(new byte[] { 1, 1, 'u', 1, 'p' }, bytes);
+            }
+            writeInbound(channel, 1, 0);
+            testConnectWarm(channel, handler);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Socks5Credentials("", ""));
+    }
+
+    private static byte[] pipelinedPasswordRequests() {
+        byte[] connectRequest = connectRequest();
+        byte[] bytes = new byte[8 + connectRequest.length];
+        System.arraycopy(new byte[] { 5, 1, 2, 1, 1, 'u', 1, 'p' }, 0, bytes, 0, 8);
+        System.arraycopy(connectRequest, 0, bytes, 8, connectRequest.length);
+        return bytes;
+    }
+
+    /**
+     * Starts a proxy server which records what it receives, and writes the specified reply once it has received the
+     * specified number of bytes.
+     */
+    private static Channel startProxy(LocalAddress address, ByteArrayOutputStream received, int expectedBytes,
+                                      CountDownLatch receivedAll, byte... reply) throws Exception {
+        return new ServerBootstrap().channel(LocalServerChannel.class).group(group).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelHandler() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                try (Buffer buf = (Buffer) msg) {
+                                    byte[] bytes = new byte[buf.readableBytes()];
+                                    buf.readBytes(bytes, 0, bytes.length);
+                                    received.write(bytes, 0, bytes.length);
+                                }
+                                if (received.size() >= expectedBytes && receivedAll.getCount() > 0) {
+                                    receivedAll.countDown();
+                                    if (reply.length > 0) {
+                                        ctx.writeAndFlush(ctx.bufferAllocator().copyOf(reply));
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }).bind(address).asStage().get();
+    }
+
+    private static Channel connect(Socks5ProxyHandler handler, AtomicInteger flushes) throws Exception {
+        Channel channel = new Bootstrap().channel(LocalChannel.class).group(group).handler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        // Sees every flush the proxy handler and its codec let through.
+                        ch.pipeline().addLast(new ChannelHandler() {
+                            @Override
+                            public void flush(ChannelHandlerContext ctx) {
+                                flushes.incrementAndGet();
+                                ctx.flush();
+                            }
+                        }, handler);
+                    }
+                }).register().asStage().get();
+        channel.connect(DESTINATION);
+        return channel;
+    }
+
+    @Test
+    public void testPipelinedConnectInOneFlush() throws Exception {
+        LocalAddress proxyAddress = new LocalAddress("socks5-pipelined-flush");
+        byte[] requests = pipelinedPasswordRequests();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch receivedAll = new CountDownLatch(1);
+        // Never replies, so nothing but the handshake requests can have been flushed.
+        Channel proxy = startProxy(proxyAddress, received, requests.length, receivedAll);
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(proxyAddress, "u", "p", true);
+        AtomicInteger flushes = new AtomicInteger();
+        Channel channel = connect(handler, flushes);
+        try {
+            assertTrue(receivedAll.await(5, TimeUnit.SECONDS));
+            assertArrayEquals(requests, received.toByteArray());
+            assertEquals(1, flushes.get());
+            assertFalse(handler.connectFuture().isDone());
+        } finally {
+            channel.close().asStage().sync();
+            proxy.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testPipelinedAuthFailure() throws Exception {
+        LocalAddress proxyAddress = new LocalAddress("socks5-pipelined-auth-failure");
+        byte[] requests = pipelinedPasswordRequests();
+        // Selects the password method, but rejects the credentials.
+        Channel proxy = startProxy(proxyAddress, new ByteArrayOutputStream(), requests.length,
+                                   new CountDownLatch(1), 5, 2, 1, 1);
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(proxyAddress, "u", "p", true);
+        Channel channel = connect(handler, new AtomicInteger());
+        try {
+            assertTrue(handler.connectFuture().asStage().await(5, TimeUnit.SECONDS));
+            Throwable cause = handler.connectFuture().cause();
+            assertInstanceOf(ProxyConnectException.class, cause);
+            assertTrue(cause.getMessage().contains("authStatus"), cause.getMessage());
+            // The CONNECT request went out before the failure, but the destination is never reported as connected.
+            assertFalse(handler.isConnected());
+            assertTrue(channel.closeFuture().asStage().await(5, TimeUnit.SECONDS));
+        } finally {
+            channel.close().asStage().sync();
+            proxy.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testBind() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY, null, null, false, Socks5CommandType.BIND);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        assertArrayEquals(new byte[] { 5, 1, 0 }, readOutbound(channel));
+        writeInbound(channel, 5, 0);
+        assertTrue(channel.connect(PEER).isSuccess());
+        assertArrayEquals(new byte[] { 5, 2, 0, 1, 10, 0, 0, 2, 0x0f, (byte) 0xa0 }, readOutbound(channel));
+
+        // The first reply tells where the proxy server listens for the peer.
+        writeInbound(channel, 5, 0, 0, 1, 10, 0, 0, 1, 0x1f, (byte) 0x90);
+        assertEquals(new InetSocketAddress("10.0.0.1", 8080), handler.bindFuture().getNow());
+        assertFalse(handler.connectFuture().isDone());
+        assertNull(handler.bindPeerAddress());
+
+        // The second one tells which peer connected.
+        writeInbound(channel, 5, 0, 0, 1, 10, 0, 0, 2, 0x30, 0x39);
+        assertTrue(handler.connectFuture().isSuccess());
+        assertEquals(new InetSocketAddress("10.0.0.2", 12345), handler.bindPeerAddress());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testBindWithoutPeer() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY, null, null, false, Socks5CommandType.BIND);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        readOutbound(channel);
+        writeInbound(channel, 5, 0);
+        assertTrue(channel.connect(PEER).isSuccess());
+        readOutbound(channel);
+        writeInbound(channel, 5, 0, 0, 1, 10, 0, 0, 1, 0x1f, (byte) 0x90);
+
+        // No peer connected in time.
+        assertThrows(ProxyConnectException.class, () -> writeInbound(channel, 5, 4, 0, 1, 0, 0, 0, 0, 0, 0));
+        assertTrue(handler.bindFuture().isSuccess());
+        assertTrue(handler.connectFuture().isFailed());
+        assertNull(handler.bindPeerAddress());
+        assertFalse(channel.isActive());
+    }
+
+    @Test
+    public void testConnectWhileWarmingUp() {
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        assertArrayEquals(new byte[] { 5, 1, 0 }, readOutbound(channel));
+        assertFalse(channel.connect(DESTINATION).isSuccess());
+        assertNull(handler.destinationAddress());
+
+        // Closed before the warm-up is done.
+        assertThrows(ProxyConnectException.class, channel::finish);
+        assertTrue(handler.warmUpFuture().isFailed());
+        assertTrue(handler.connectFuture().isFailed());
+    }
+
+    @Test
+    public void testHandshakeListener() {
+        List<ProxyHandshakePhase> phases = new ArrayList<>();
+        List<ProxyHandshakeTimings> completed = new ArrayList<>();
+        Socks5ProxyHandler handler = new Socks5ProxyHandler(PROXY);
+        handler.setHandshakeListener(new ProxyHandshakeListener() {
+            @Override
+            public void phaseReached(ProxyHandler handler, ProxyHandshakePhase phase, long elapsedNanos) {
+                phases.add(phase);
+            }
+
+            @Override
+            public void handshakeCompleted(ProxyHandler handler, ProxyHandshakeTimings timings, Throwable cause) {
+                assertNull(cause);
+                completed.add(timings);
+            }
+        });
+
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        readOutbound(channel);
+        writeInbound(channel, 5, 0);
+        // The warm-up is not part of the connection attempt.
+        assertTrue(phases.isEmpty());
+
+        testConnectWarm(channel, handler);
+        assertEquals(Arrays.asList(ProxyHandshakePhase.INITIAL_MESSAGE_SENT, ProxyHandshakePhase.RESPONSE_RECEIVED,
+                                   ProxyHandshakePhase.CODEC_REMOVED, ProxyHandshakePhase.PENDING_WRITES_FLUSHED),
+                     phases);
+        assertEquals(1, completed.size());
+
+        ProxyHandshakeTimings timings = completed.get(0);
+        assertEquals(-1, timings.phaseNanos(ProxyHandshakePhase.CONNECTED));
+        assertEquals(1, timings.responses());
+        assertTrue(timings.handshakeNanos() >= 0);
+        assertTrue(timings.phaseNanos(ProxyHandshakePhase.PENDING_WRITES_FLUSHED) >=
+                   timings.phaseNanos(ProxyHandshakePhase.INITIAL_MESSAGE_SENT));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.proxy;
+
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketDecoder;
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.nio.NioHandler;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.channel.socket.nio.NioDatagramChannel;
+import io.netty5.channel.socket.nio.NioServerSocketChannel;
+import io.netty5.channel.socket.nio.NioSocketChannel;
+import io.netty5.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the association against a stand-in SOCKS5 proxy server over loopback sockets, as the control connection and
+ * the relay need real addresses.
+ */
+public class Socks5UdpProxyHandlerTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+    private static final InetSocketAddress DESTINATION = new InetSocketAddress("10.0.0.7", 53);
+
+    private static EventLoopGroup group;
+
+    @BeforeAll
+    public static void setUp() {
+        group = new MultithreadEventLoopGroup(1, NioHandler.newFactory());
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    /**
+     * Starts a SOCKS5 proxy server which accepts no authentication and answers any command with the address of the
+     * relay on all interfaces, so that the client has to take the address of the proxy server instead.
+     */
+    private static Channel startProxy(int relayPort) throws Exception {
+        return new ServerBootstrap().group(group).channel(NioServerSocketChannel.class).childHandler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelHandler() {
+                            private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                try (Buffer buf = (Buffer) msg) {
+                                    while (buf.readableBytes() > 0) {
+                                        received.write(buf.readByte());
+                                        if (received.size() == 3) {
+                                            // The greeting.
+                                            ctx.writeAndFlush(ctx.bufferAllocator().copyOf(new byte[] { 5, 0 }));
+                                        } else if (received.size() == 13) {
+                                            // The UDP ASSOCIATE request, with an IPv4 address.
+                                            ctx.writeAndFlush(ctx.bufferAllocator().copyOf(new byte[] {
+                                                    5, 0, 0, 1, 0, 0, 0, 0,
+                                                    (byte) (relayPort >>> 8), (byte) relayPort }));
+                                        }
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }).bind(new InetSocketAddress(LOOPBACK, 0)).asStage().get();
+    }
+
+    private static Channel bindDatagramChannel(ChannelHandler... handlers) throws Exception {
+        return new Bootstrap().group(group).channel(NioDatagramChannel.class).handler(
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(handlers);
+                    }
+                }).bind(new InetSocketAddress(LOOPBACK, 0)).asStage().get();
+    }
+
+    private static ChannelHandler collector(BlockingQueue<DatagramPacket> received) {
+        return new ChannelHandler() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                received.add((DatagramPacket) msg);
+            }
+        };
+    }
+
+    private static byte[] toBytes(Buffer buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Test
+    public void testAssociateWrapAndUnwrap() throws Exception {
+        BlockingQueue<DatagramPacket> relayed = new LinkedBlockingQueue<>();
+        BlockingQueue<DatagramPacket> received = new LinkedBlockingQueue<>();
+        Channel relay = bindDatagramChannel(collector(relayed));
+        InetSocketAddress relayAddress = (InetSocketAddress) relay.localAddress();
+        Channel proxy = startProxy(relayAddress.getPort());
+        Socks5UdpProxyHandler handler = new Socks5UdpProxyHandler(
+                new Bootstrap().group(group).channel(NioSocketChannel.class), proxy.localAddress());
+        Channel channel = bindDatagramChannel(handler, collector(received));
+        Channel stranger = bindDatagramChannel();
+        try {
+            // Written before the association is ready, so it is queued.
+            Future<Void> written = channel.writeAndFlush(
+                    new DatagramPacket(channel.bufferAllocator().copyOf(new byte[] { 1, 2, 3 }), DESTINATION));
+            assertEquals(new InetSocketAddress(LOOPBACK, relayAddress.getPort()),
+                         handler.relayFuture().asStage().get(5, TimeUnit.SECONDS));
+            assertTrue(written.asStage().await(5, TimeUnit.SECONDS));
+            assertTrue(written.isSuccess());
+
+            DatagramPacket request = relayed.poll(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            try (request) {
+                assertEquals(channel.localAddress(), request.sender());
+                assertArrayEquals(new byte[] { 0, 0, 0, 1, 10, 0, 0, 7, 0, 53, 1, 2, 3 }, toBytes(request.content()));
+            }
+
+            // A datagram from anywhere but the relay is dropped; the one from the relay is unwrapped.
+            stranger.writeAndFlush(new DatagramPacket(
+                    stranger.bufferAllocator().copyOf(new byte[] { 9 }), (InetSocketAddress) channel.localAddress()))
+                    .asStage().sync();
+            relay.writeAndFlush(new DatagramPacket(
+                    relay.bufferAllocator().copyOf(new byte[] { 0, 0, 0, 1, 10, 0, 0, 7, 0, 53, 4, 5 }),
+                    (InetSocketAddress) channel.localAddress())).asStage().sync();
+            DatagramPacket response = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(response);
+            try (response) {
+                assertEquals(DESTINATION, response.sender());
+                assertArrayEquals(new byte[] { 4, 5 }, toBytes(response.content()));
+            }
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+
+            // Removing the handler removes its decoder too.
+            channel.pipeline().remove(handler);
+            assertNull(channel.pipeline().get(Socks5UdpPacketDecoder.class));
+        } finally {
+            channel.close().asStage().sync();
+            stranger.close().asStage().sync();
+            relay.close().asStage().sync();
+            proxy.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testProxyUnreachable() throws Exception {
+        // Nothing listens on the port of a closed server.
+        Channel proxy = startProxy(1);
+        InetSocketAddress proxyAddress = (InetSocketAddress) proxy.localAddress();
+        proxy.close().asStage().sync();
+
+        Socks5UdpProxyHandler handler = new Socks5UdpProxyHandler(
+                new Bootstrap().group(group).channel(NioSocketChannel.class), proxyAddress);
+        Channel channel = bindDatagramChannel(handler);
+        Future<Void> written = channel.writeAndFlush(
+                new DatagramPacket(channel.bufferAllocator().copyOf(new byte[] { 1 }), DESTINATION));
+        assertTrue(handler.relayFuture().asStage().await(5, TimeUnit.SECONDS));
+        assertFalse(handler.relayFuture().isSuccess());
+        // The queued datagram fails with the association, and the datagram channel is closed.
+        assertTrue(written.asStage().await(5, TimeUnit.SECONDS));
+        assertTrue(written.isFailed());
+        assertTrue(channel.closeFuture().asStage().await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.microbench.socksx;
+
+import io.netty.contrib.handler.codec.socksx.v4.DefaultSocks4CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v4.DefaultSocks4CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4ClientDecoder;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4ClientEncoder;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandStatus;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandType;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4ServerDecoder;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4ServerEncoder;
+import io.netty.contrib.microbench.util.AbstractMicrobenchmark;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the cost of decoding and encoding SOCKS4 and SOCKS4a messages.
+ */
+public class Socks4CodecBenchmark extends AbstractMicrobenchmark {
+
+    private static final Socks4CommandRequest COMMAND_REQUEST =
+            new DefaultSocks4CommandRequest(Socks4CommandType.CONNECT, "192.168.1.10", 443, "username");
+    private static final Socks4CommandRequest COMMAND_REQUEST_SOCKS4A =
+            new DefaultSocks4CommandRequest(Socks4CommandType.CONNECT, "www.example.com", 443, "username");
+    private static final Socks4CommandResponse COMMAND_RESPONSE =
+            new DefaultSocks4CommandResponse(Socks4CommandStatus.SUCCESS, "192.168.1.10", 443);
+
+    private Buffer commandRequest;
+    private Buffer commandRequestSocks4a;
+    private Buffer commandResponse;
+    private EmbeddedChannel client;
+    private EmbeddedChannel server;
+
+    @Setup
+    public void setup() {
+        commandRequest = template(SocksxBenchmarkUtil.encode(Socks4ClientEncoder.INSTANCE, COMMAND_REQUEST));
+        commandRequestSocks4a = template(
+                SocksxBenchmarkUtil.encode(Socks4ClientEncoder.INSTANCE, COMMAND_REQUEST_SOCKS4A));
+        commandResponse = template(SocksxBenchmarkUtil.encode(Socks4ServerEncoder.INSTANCE, COMMAND_RESPONSE));
+
+        client = new EmbeddedChannel(Socks4ClientEncoder.INSTANCE);
+        client.setOption(ChannelOption.BUFFER_ALLOCATOR, allocator());
+        server = new EmbeddedChannel(Socks4ServerEncoder.INSTANCE);
+        server.setOption(ChannelOption.BUFFER_ALLOCATOR, allocator());
+    }
+
+    @TearDown
+    public void tearDown() {
+        commandRequest.close();
+        commandRequestSocks4a.close();
+        commandResponse.close();
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object decodeCommandRequest() {
+        return SocksxBenchmarkUtil.decode(new Socks4ServerDecoder(), commandRequest);
+    }
+
+    @Benchmark
+    public Object decodeCommandRequestSocks4a() {
+        return SocksxBenchmarkUtil.decode(new Socks4ServerDecoder(), commandRequestSocks4a);
+    }
+
+    @Benchmark
+    public Object decodeCommandResponse() {
+        return SocksxBenchmarkUtil.decode(new Socks4ClientDecoder(), commandResponse);
+    }
+
+    @Benchmark
+    public int encodeCommandRequest() {
+        return SocksxBenchmarkUtil.write(client, COMMAND_REQUEST);
+    }
+
+    @Benchmark
+    public int encodeCommandRequestSocks4a() {
+        return SocksxBenchmarkUtil.write(client, COMMAND_REQUEST_SOCKS4A);
+    }
+
+    @Benchmark
+    public int encodeCommandResponse() {
+        return SocksxBenchmarkUtil.write(server, COMMAND_RESPONSE);
+    }
+}
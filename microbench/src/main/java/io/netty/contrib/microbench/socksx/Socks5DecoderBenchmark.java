@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.microbench.socksx;
+
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthResponse;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ClientEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequestDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandResponseDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialRequestDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialResponseDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthRequestDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthResponseDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
+import io.netty.contrib.microbench.util.AbstractMicrobenchmark;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the cost of decoding each SOCKS5 handshake message with a fresh decoder, as it happens once per
+ * connection. {@link #baseline()} measures the {@link EmbeddedChannel} overhead shared by all other benchmarks.
+ */
+public class Socks5DecoderBenchmark extends AbstractMicrobenchmark {
+
+    private Buffer initialRequest;
+    private Buffer passwordAuthRequest;
+    private Buffer commandRequestIPv4;
+    private Buffer commandRequestIPv6;
+    private Buffer commandRequestDomain;
+    private Buffer initialResponse;
+    private Buffer passwordAuthResponse;
+    private Buffer commandResponseIPv4;
+
+    @Setup
+    public void setup() {
+        Socks5ClientEncoder clientEncoder = Socks5ClientEncoder.DEFAULT;
+        Socks5ServerEncoder serverEncoder = Socks5ServerEncoder.DEFAULT;
+
+        initialRequest = template(SocksxBenchmarkUtil.encode(clientEncoder,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD)));
+        passwordAuthRequest = template(SocksxBenchmarkUtil.encode(clientEncoder,
+                new DefaultSocks5PasswordAuthRequest("username", "password")));
+        commandRequestIPv4 = template(SocksxBenchmarkUtil.encode(clientEncoder,
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4,
+                        "192.168.1.10", 443)));
+        commandRequestIPv6 = template(SocksxBenchmarkUtil.encode(clientEncoder,
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv6,
+                        "2001:db8:85a3::8a2e:370:7334", 443)));
+        commandRequestDomain = template(SocksxBenchmarkUtil.encode(clientEncoder,
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.DOMAIN,
+                        "www.example.com", 443)));
+        initialResponse = template(SocksxBenchmarkUtil.encode(serverEncoder,
+                new DefaultSocks5InitialResponse(Socks5AuthMethod.PASSWORD)));
+        passwordAuthResponse = template(SocksxBenchmarkUtil.encode(serverEncoder,
+                new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.SUCCESS)));
+        commandResponseIPv4 = template(SocksxBenchmarkUtil.encode(serverEncoder,
+                new DefaultSocks5CommandResponse(Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4,
+                        "192.168.1.10", 443)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        initialRequest.close();
+        passwordAuthRequest.close();
+        commandRequestIPv4.close();
+        commandRequestIPv6.close();
+        commandRequestDomain.close();
+        initialResponse.close();
+        passwordAuthResponse.close();
+        commandResponseIPv4.close();
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return SocksxBenchmarkUtil.decode(new ChannelHandler() { }, initialRequest);
+    }
+
+    @Benchmark
+    public Object initialRequest() {
+        return SocksxBenchmarkUtil.decode(new Socks5InitialRequestDecoder(), initialRequest);
+    }
+
+    @Benchmark
+    public Object passwordAuthRequest() {
+        return SocksxBenchmarkUtil.decode(new Socks5PasswordAuthRequestDecoder(), passwordAuthRequest);
+    }
+
+    @Benchmark
+    public Object commandRequestIPv4() {
+        return SocksxBenchmarkUtil.decode(new Socks5CommandRequestDecoder(), commandRequestIPv4);
+    }
+
+    @Benchmark
+    public Object commandRequestIPv6() {
+        return SocksxBenchmarkUtil.decode(new Socks5CommandRequestDecoder(), commandRequestIPv6);
+    }
+
+    @Benchmark
+    public Object commandRequestDomain() {
+        return SocksxBenchmarkUtil.decode(new Socks5CommandRequestDecoder(), commandRequestDomain);
+    }
+
+    @Benchmark
+    public Object initialResponse() {
+        return SocksxBenchmarkUtil.decode(new Socks5InitialResponseDecoder(), initialResponse);
+    }
+
+    @Benchmark
+    public Object passwordAuthResponse() {
+        return SocksxBenchmarkUtil.decode(new Socks5PasswordAuthResponseDecoder(), passwordAuthResponse);
+    }
+
+    @Benchmark
+    public Object commandResponseIPv4() {
+        return SocksxBenchmarkUtil.decode(new Socks5CommandResponseDecoder(), commandResponseIPv4);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.microbench.socksx;
+
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthResponse;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ClientEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5Message;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
+import io.netty.contrib.microbench.util.AbstractMicrobenchmark;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the cost of encoding each SOCKS5 handshake message into a {@link Buffer} obtained from the pooled
+ * allocator of the channel.
+ */
+public class Socks5EncoderBenchmark extends AbstractMicrobenchmark {
+
+    private static final Socks5Message INITIAL_REQUEST =
+            new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD);
+    private static final Socks5Message PASSWORD_AUTH_REQUEST =
+            new DefaultSocks5PasswordAuthRequest("username", "password");
+    private static final Socks5Message COMMAND_REQUEST_IPV4 = new DefaultSocks5CommandRequest(
+            Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "192.168.1.10", 443);
+    private static final Socks5Message COMMAND_REQUEST_IPV6 = new DefaultSocks5CommandRequest(
+            Socks5CommandType.CONNECT, Socks5AddressType.IPv6, "2001:db8:85a3::8a2e:370:7334", 443);
+    private static final Socks5Message COMMAND_REQUEST_DOMAIN = new DefaultSocks5CommandRequest(
+            Socks5CommandType.CONNECT, Socks5AddressType.DOMAIN, "www.example.com", 443);
+    private static final Socks5Message INITIAL_RESPONSE = new DefaultSocks5InitialResponse(Socks5AuthMethod.PASSWORD);
+    private static final Socks5Message PASSWORD_AUTH_RESPONSE =
+            new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.SUCCESS);
+    private static final Socks5Message COMMAND_RESPONSE_IPV4 = new DefaultSocks5CommandResponse(
+            Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4, "192.168.1.10", 443);
+    private static final Socks5Message COMMAND_RESPONSE_IPV6 = new DefaultSocks5CommandResponse(
+            Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv6, "2001:db8:85a3::8a2e:370:7334", 443);
+    private static final Socks5Message COMMAND_RESPONSE_DOMAIN = new DefaultSocks5CommandResponse(
+            Socks5CommandStatus.SUCCESS, Socks5AddressType.DOMAIN, "www.example.com", 443);
+
+    private EmbeddedChannel client;
+    private EmbeddedChannel server;
+
+    @Setup
+    public void setup() {
+        client = new EmbeddedChannel(Socks5ClientEncoder.DEFAULT);
+        client.setOption(ChannelOption.BUFFER_ALLOCATOR, allocator());
+        server = new EmbeddedChannel(Socks5ServerEncoder.DEFAULT);
+        server.setOption(ChannelOption.BUFFER_ALLOCATOR, allocator());
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int initialRequest() {
+        return SocksxBenchmarkUtil.write(client, INITIAL_REQUEST);
+    }
+
+    @Benchmark
+    public int passwordAuthRequest() {
+        return SocksxBenchmarkUtil.write(client, PASSWORD_AUTH_REQUEST);
+    }
+
+    @Benchmark
+    public int commandRequestIPv4() {
+        return SocksxBenchmarkUtil.write(client, COMMAND_REQUEST_IPV4);
+    }
+
+    @Benchmark
+    public int commandRequestIPv6() {
+        return SocksxBenchmarkUtil.write(client, COMMAND_REQUEST_IPV6);
+    }
+
+    @Benchmark
+    public int commandRequestDomain() {
+        return SocksxBenchmarkUtil.write(client, COMMAND_REQUEST_DOMAIN);
+    }
+
+    @Benchmark
+    public int initialResponse() {
+        return SocksxBenchmarkUtil.write(server, INITIAL_RESPONSE);
+    }
+
+    @Benchmark
+    public int passwordAuthResponse() {
+        return SocksxBenchmarkUtil.write(server, PASSWORD_AUTH_RESPONSE);
+    }
+
+    @Benchmark
+    public int commandResponseIPv4() {
+        return SocksxBenchmarkUtil.write(server, COMMAND_RESPONSE_IPV4);
+    }
+
+    @Benchmark
+    public int commandResponseIPv6() {
+        return SocksxBenchmarkUtil.write(server, COMMAND_RESPONSE_IPV6);
+    }
+
+    @Benchmark
+    public int commandResponseDomain() {
+        return SocksxBenchmarkUtil.write(server, COMMAND_RESPONSE_DOMAIN);
+    }
+}
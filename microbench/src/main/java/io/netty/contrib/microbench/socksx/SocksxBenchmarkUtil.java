@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.microbench.socksx;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import io.netty5.util.Resource;
+
+final class SocksxBenchmarkUtil {
+
+    /**
+     * Encodes the specified message with the specified encoder and returns the resulting bytes. Used to prepare
+     * the wire representation of the messages that are decoded by the benchmarks.
+     */
+    static byte[] encode(ChannelHandler encoder, Object msg) {
+        EmbeddedChannel channel = new EmbeddedChannel(encoder);
+        try {
+            channel.writeOutbound(msg);
+            try (Buffer encoded = channel.readOutbound()) {
+                byte[] bytes = new byte[encoded.readableBytes()];
+                encoded.readBytes(bytes, 0, bytes.length);
+                return bytes;
+            }
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * Decodes the specified template with the specified single-use decoder, the way a new connection would.
+     */
+    static Object decode(ChannelHandler decoder, Buffer template) {
+        EmbeddedChannel channel = new EmbeddedChannel(decoder);
+        channel.writeInbound(template.copy());
+        Object decoded = channel.readInbound();
+        channel.finishAndReleaseAll();
+        // Only the baseline yields a Buffer; decoded SOCKS messages are not resources.
+        Resource.dispose(decoded);
+        return decoded;
+    }
+
+    /**
+     * Writes the specified message through the encoder of the specified channel and returns the encoded size.
+     */
+    static int write(EmbeddedChannel channel, Object msg) {
+        channel.writeOutbound(msg);
+        try (Buffer encoded = channel.readOutbound()) {
+            return encoded.readableBytes();
+        }
+    }
+
+    private SocksxBenchmarkUtil() { }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.microbench.util;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferAllocator;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for all microbenchmarks of this project. Sets the common JMH defaults (average time in
+ * nanoseconds per operation) and provides the pooled {@link BufferAllocator} selected by {@link #direct}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-XX:+UseParallelGC", "-Xms768m", "-Xmx768m" })
+@State(Scope.Thread)
+public abstract class AbstractMicrobenchmark {
+
+    /**
+     * {@code true} to use the pooled off-heap allocator, {@code false} to use the pooled on-heap allocator.
+     */
+    @Param({ "false", "true" })
+    public boolean direct;
+
+    private BufferAllocator allocator;
+
+    @Setup
+    public final void setupAllocator() {
+        allocator = direct? BufferAllocator.offHeapPooled() : BufferAllocator.onHeapPooled();
+    }
+
+    @TearDown
+    public final void closeAllocator() {
+        allocator.close();
+    }
+
+    /**
+     * Returns the pooled {@link BufferAllocator} chosen for this trial.
+     */
+    protected final BufferAllocator allocator() {
+        return allocator;
+    }
+
+    /**
+     * Returns a new read-only {@link Buffer} that contains the specified bytes, allocated from {@link #allocator()}.
+     * Use {@link Buffer#copy()} on the returned buffer to obtain a fresh input per operation.
+     */
+    protected final Buffer template(byte[] bytes) {
+        return allocator.copyOf(bytes).makeReadOnly();
+    }
+}
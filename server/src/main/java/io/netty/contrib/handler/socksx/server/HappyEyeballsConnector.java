@@ -0,0 +1,267 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker;
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker.Deadline;
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.resolver.AddressResolverGroup;
+import io.netty5.util.concurrent.EventExecutor;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to a destination with the Happy Eyeballs algorithm of RFC 8305.  The addresses of a {@code DOMAIN}
+ * destination are resolved all at once and ordered so that the address families alternate, starting with the
+ * family of the first address.  The first attempt connects to the first address.  Each following attempt starts
+ * once the previous one has failed, or once the connection attempt delay has passed without a connection, so
+ * that a dead address family costs the delay instead of the connect timeout.  The first connected channel wins,
+ * and the attempts still in flight are closed.
+ * <p>
+ * Every attempt is a channel of the given {@link Bootstrap}, whose handler must be {@link #ATTEMPT_HANDLER}; the
+ * caller adds its own handlers to the winning channel only, so that closing the other ones has no effect.
+ */
+final class HappyEyeballsConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(HappyEyeballsConnector.class);
+
+    /**
+     * The handler of the channels of the attempts, which does nothing.
+     */
+    static final ChannelHandler ATTEMPT_HANDLER = new ChannelHandler() {
+        @Override
+        public boolean isSharable() {
+            return true;
+        }
+    };
+
+    private final Bootstrap bootstrap;
+    private final EventExecutor executor;
+    private final AddressResolverGroup<InetSocketAddress> resolverGroup;
+    private final long attemptDelayMillis;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bootstrap the bootstrap of the attempts, whose group is the event loop of the caller
+     * @param executor the event loop of the caller, which notifies the returned {@link Future}s
+     * @param resolverGroup the resolvers of the {@code DOMAIN} destinations
+     * @param attemptDelayMillis the delay after which the next attempt starts while the previous one is pending
+     */
+    HappyEyeballsConnector(Bootstrap bootstrap, EventExecutor executor,
+                           AddressResolverGroup<InetSocketAddress> resolverGroup, long attemptDelayMillis) {
+        this.bootstrap = bootstrap;
+        this.executor = executor;
+        this.resolverGroup = resolverGroup;
+        this.attemptDelayMillis = attemptDelayMillis;
+    }
+
+    /**
+     * Connects to the specified destination, resolving it first if it is unresolved.  Cancelling the returned
+     * {@link Future} closes the channels of all attempts.  Must be called from the event loop.
+     *
+     * @return the {@link Future} which is notified with the channel of the winning attempt, whose
+     *         {@linkplain Channel#remoteAddress() remote address} is the address that won
+     */
+    Future<Channel> connect(InetSocketAddress destination) {
+        if (!destination.isUnresolved()) {
+            return connect(Collections.singletonList(destination));
+        }
+
+        final Promise<Channel> promise = executor.newPromise();
+        resolverGroup.getResolver(executor).resolveAll(destination).addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+                return;
+            }
+            final List<InetSocketAddress> addresses = interleave(future.getNow());
+            // Another event loop may have completed a resolution shared with this one.
+            if (executor.inEventLoop()) {
+                new Race(promise, addresses).start();
+            } else {
+                executor.execute(() -> new Race(promise, addresses).start());
+            }
+        });
+        return promise.asFuture();
+    }
+
+    /**
+     * Connects to the first of the specified resolved addresses that accepts the connection, racing them in the
+     * given order.  Must be called from the event loop.
+     */
+    Future<Channel> connect(List<InetSocketAddress> addresses) {
+        final Promise<Channel> promise = executor.newPromise();
+        new Race(promise, addresses).start();
+        return promise.asFuture();
+    }
+
+    /**
+     * Orders the specified addresses so that the address families alternate, starting with the first one, as
+     * recommended by section 4 of RFC 8305.  The order within each family is kept.
+     */
+    static List<InetSocketAddress> interleave(List<InetSocketAddress> addresses) {
+        if (addresses.size() <= 1) {
+            return addresses;
+        }
+        final boolean firstIsIpv6 = isIpv6(addresses.get(0));
+        final List<InetSocketAddress> first = new ArrayList<>(addresses.size());
+        final List<InetSocketAddress> second = new ArrayList<>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            (isIpv6(address) == firstIsIpv6? first : second).add(address);
+        }
+        if (second.isEmpty()) {
+            return addresses;
+        }
+
+        final List<InetSocketAddress> interleaved = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                interleaved.add(first.get(i));
+            }
+            if (i < second.size()) {
+                interleaved.add(second.get(i));
+            }
+        }
+        return interleaved;
+    }
+
+    private static boolean isIpv6(InetSocketAddress address) {
+        return address.getAddress() instanceof Inet6Address;
+    }
+
+    /**
+     * The attempts to connect to the addresses of one destination.  Only accessed from the event loop.
+     */
+    private final class Race {
+
+        private final Promise<Channel> promise;
+        private final List<InetSocketAddress> addresses;
+        private final List<Channel> attempts = new ArrayList<>(2);
+        private final Deadline attemptDelay = new Deadline(this::startNextAttempt);
+        private final long startNanos = System.nanoTime();
+        private int nextAddress;
+        private int pendingAttempts;
+        private Throwable lastCause;
+
+        Race(Promise<Channel> promise, List<InetSocketAddress> addresses) {
+            this.promise = promise;
+            this.addresses = addresses;
+        }
+
+        void start() {
+            if (addresses.isEmpty()) {
+                promise.tryFailure(new IllegalStateException("no address to connect to"));
+                return;
+            }
+            promise.asFuture().addListener(future -> {
+                if (future.isCancelled()) {
+                    attemptDelay.cancel();
+                    closeAttempts(null);
+                }
+            });
+            startNextAttempt();
+        }
+
+        private void startNextAttempt() {
+            if (promise.isDone() || nextAddress == addresses.size()) {
+                return;
+            }
+            final InetSocketAddress address = addresses.get(nextAddress++);
+            pendingAttempts++;
+            if (nextAddress < addresses.size()) {
+                HandshakeDeadlineTracker.get(executor)
+                        .schedule(attemptDelay, attemptDelayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            bootstrap.register().addListener(registered -> {
+                if (!registered.isSuccess()) {
+                    attemptFailed(address, registered.cause());
+                    return;
+                }
+                final Channel channel = registered.getNow();
+                if (promise.isDone()) {
+                    pendingAttempts--;
+                    channel.close();
+                    return;
+                }
+                attempts.add(channel);
+                channel.connect(address).addListener(connected -> {
+                    attempts.remove(channel);
+                    if (connected.isSuccess()) {
+                        attemptSucceeded(channel);
+                    } else {
+                        channel.close();
+                        attemptFailed(address, connected.cause());
+                    }
+                });
+            });
+        }
+
+        private void attemptSucceeded(Channel channel) {
+            pendingAttempts--;
+            if (!promise.trySuccess(channel)) {
+                channel.close();
+                return;
+            }
+            attemptDelay.cancel();
+            closeAttempts(channel);
+            if (addresses.size() > 1) {
+                logger.debug("{} Won the race of {} addresses after {} ms: {}", channel, addresses.size(),
+                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), addresses);
+            }
+        }
+
+        private void attemptFailed(InetSocketAddress address, Throwable cause) {
+            pendingAttempts--;
+            if (promise.isDone()) {
+                return;
+            }
+            if (addresses.size() > 1) {
+                logger.debug("Failed to connect to {}", address, cause);
+            }
+            lastCause = cause;
+            if (nextAddress < addresses.size()) {
+                // A failure starts the next attempt right away.
+                attemptDelay.cancel();
+                startNextAttempt();
+            } else if (pendingAttempts == 0) {
+                promise.tryFailure(lastCause);
+            }
+        }
+
+        private void closeAttempts(Channel winner) {
+            // Closing an attempt fails its connection, whose listener removes it from the list.
+            final List<Channel> losers = new ArrayList<>(attempts);
+            attempts.clear();
+            for (Channel channel : losers) {
+                if (channel != winner) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelOption;
+import io.netty5.util.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes everything read from one channel to the other one.
+ * <p>
+ * The data of one read cycle is flushed at once when the cycle completes, or after every {@code maxReadsPerFlush}
+ * reads if the cycle is longer, so that a burst of small messages costs one {@code writev(2)} instead of one
+ * {@code write(2)} per message.
+ * <p>
+ * Reading from this channel is suspended while the other channel is not writable, and resumed by the
+ * {@link RelayHandler} of the other channel once it is writable again.  The memory a slow peer can make the relay
+ * hold is therefore bounded by the {@link ChannelOption#WRITE_BUFFER_WATER_MARK} of its channel.
+ */
+final class RelayHandler implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelayHandler.class);
+
+    private final Channel relayChannel;
+    private final int maxReadsPerFlush;
+    private int pendingReads;
+
+    RelayHandler(Channel relayChannel, int maxReadsPerFlush) {
+        this.relayChannel = relayChannel;
+        this.maxReadsPerFlush = maxReadsPerFlush;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (relayChannel.isActive()) {
+            relayChannel.write(msg);
+            if (!relayChannel.isWritable()) {
+                ctx.channel().setOption(ChannelOption.AUTO_READ, false);
+                flush();
+            } else if (++pendingReads >= maxReadsPerFlush) {
+                flush();
+            }
+        } else {
+            Resource.dispose(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (pendingReads > 0) {
+            flush();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    private void flush() {
+        pendingReads = 0;
+        relayChannel.flush();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (ctx.channel().isWritable()) {
+            // The other channel stopped reading when this one became unwritable.
+            relayChannel.setOption(ChannelOption.AUTO_READ, true);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        SocksServerUtil.closeOnFlush(relayChannel);
+    }
+
+    @Override
+    public void channelExceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("{} Relay failed", ctx.channel(), cause);
+        ctx.close();
+    }
+}
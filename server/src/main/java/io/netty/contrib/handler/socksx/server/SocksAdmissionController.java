@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.Channel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the connections a {@link SocksServer} serves: in total, per client address, and while their handshake is
+ * in progress.  A connection over any of the limits is closed as soon as it is accepted, before anything is read
+ * from it, so that a flood of connections costs no more than accepting and closing them.
+ * <p>
+ * The counters are atomic, and the per-client counters live in a {@link ConcurrentHashMap} whose entries are
+ * removed once they drop to zero, so admitting never locks and the map only holds the clients currently connected.
+ */
+final class SocksAdmissionController {
+
+    private final int maxConnections;
+    private final int maxHandshakes;
+    private final int maxConnectionsPerClient;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final ConcurrentMap<InetAddress, AtomicInteger> connectionsPerClient = new ConcurrentHashMap<>();
+
+    SocksAdmissionController(int maxConnections, int maxHandshakes, int maxConnectionsPerClient) {
+        this.maxConnections = maxConnections;
+        this.maxHandshakes = maxHandshakes;
+        this.maxConnectionsPerClient = maxConnectionsPerClient;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int handshakes() {
+        return handshakes.get();
+    }
+
+    int clients() {
+        return connectionsPerClient.size();
+    }
+
+    /**
+     * Admits the specified connection if it is within all the limits, and releases it when it is closed.
+     *
+     * @return the {@link Ticket} of the admitted connection, or {@code null} if it is over a limit
+     */
+    Ticket admit(Channel channel) {
+        return admit(channel, channel.remoteAddress());
+    }
+
+    // Visible for testing, as the channels of tests rarely have an internet address.
+    Ticket admit(Channel channel, SocketAddress remoteAddress) {
+        // Clients are not tracked unless they are limited.
+        final InetAddress clientAddress = maxConnectionsPerClient != Integer.MAX_VALUE?
+                clientAddress(remoteAddress) : null;
+        if (!tryIncrement(connections, maxConnections)) {
+            return null;
+        }
+        if (!tryIncrement(handshakes, maxHandshakes)) {
+            connections.decrementAndGet();
+            return null;
+        }
+        if (clientAddress != null && !tryIncrementClient(clientAddress)) {
+            handshakes.decrementAndGet();
+            connections.decrementAndGet();
+            return null;
+        }
+
+        final Ticket ticket = new Ticket(clientAddress);
+        channel.closeFuture().addListener(future -> ticket.release());
+        return ticket;
+    }
+
+    private static InetAddress clientAddress(SocketAddress remoteAddress) {
+        return remoteAddress instanceof InetSocketAddress? ((InetSocketAddress) remoteAddress).getAddress() : null;
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int max) {
+        for (;;) {
+            final int count = counter.get();
+            if (count >= max) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryIncrementClient(InetAddress clientAddress) {
+        for (;;) {
+            final AtomicInteger counter = connectionsPerClient.computeIfAbsent(clientAddress, a -> new AtomicInteger());
+            final int count = counter.get();
+            if (count < 0) {
+                // Being removed by the last release of the client; help and retry with a new counter.
+                connectionsPerClient.remove(clientAddress, counter);
+                continue;
+            }
+            if (count >= maxConnectionsPerClient) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void decrementClient(InetAddress clientAddress) {
+        final AtomicInteger counter = connectionsPerClient.get(clientAddress);
+        // Marks the counter dead before removing it, so that no connection is counted in a removed counter.
+        if (counter != null && counter.decrementAndGet() == 0 && counter.compareAndSet(0, -1)) {
+            connectionsPerClient.remove(clientAddress, counter);
+        }
+    }
+
+    /**
+     * The admission of one connection.  Only accessed from the event loop of the connection.
+     */
+    final class Ticket {
+
+        private final InetAddress clientAddress;
+        private boolean handshaking = true;
+        private boolean released;
+
+        private Ticket(InetAddress clientAddress) {
+            this.clientAddress = clientAddress;
+        }
+
+        /**
+         * Stops counting the connection as handshaking.  Does nothing if called again.
+         */
+        void handshakeCompleted() {
+            if (handshaking) {
+                handshaking = false;
+                handshakes.decrementAndGet();
+            }
+        }
+
+        void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            handshakeCompleted();
+            if (clientAddress != null) {
+                decrementClient(clientAddress);
+            }
+            connections.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.Channel;
+import io.netty5.util.concurrent.Future;
+
+/**
+ * Verifies the credentials of a SOCKS5 client that uses the username/password authentication.
+ * <p>
+ * The returned {@link Future} may be completed by any thread, so that the credentials can be checked against a
+ * remote service or a local store without blocking the event loop of the connection.  A check that is cheap enough
+ * to run on the event loop can simply return {@code channel.executor().newSucceededFuture(result)}.
+ */
+@FunctionalInterface
+public interface SocksAuthenticator {
+
+    /**
+     * Verifies the specified credentials.
+     *
+     * @param channel the connection from the client
+     * @return a {@link Future} that is completed with {@code true} if the credentials are valid, or {@code false}
+     *         otherwise.  A failed {@link Future} is treated as {@code false}.
+     */
+    Future<Boolean> authenticate(Channel channel, String username, String password);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.SocksMessage;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest;
+import io.netty5.channel.Channel;
+import io.netty5.util.concurrent.Future;
+
+/**
+ * Decides whether a client may run the requested SOCKS command.
+ * <p>
+ * Like {@link SocksAuthenticator}, the returned {@link Future} may be completed by any thread.
+ */
+@FunctionalInterface
+public interface SocksAuthorizer {
+
+    /**
+     * Allows every request.
+     */
+    SocksAuthorizer ALLOW_ALL = (channel, username, request) -> channel.executor().newSucceededFuture(true);
+
+    /**
+     * Decides whether the specified request is allowed.
+     *
+     * @param channel the connection from the client
+     * @param username the name the client authenticated with, or {@code null} if the client did not authenticate
+     * @param request the {@link io.netty.contrib.handler.codec.socksx.v4.Socks4CommandRequest} or the
+     *                {@link io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest} of the client
+     * @return a {@link Future} that is completed with {@code true} if the request is allowed, or {@code false}
+     *         otherwise.  A failed {@link Future} is treated as {@code false}.
+     */
+    Future<Boolean> authorize(Channel channel, String username, SocksMessage request);
+
+    /**
+     * Decides whether the client of a {@code UDP ASSOCIATE} association may send datagrams to a destination it has
+     * not sent to recently.  The datagrams to a destination that is not allowed are dropped.
+     * <p>
+     * The default implementation decides as {@link #authorize(Channel, String, SocksMessage)} does for the specified
+     * {@code CONNECT} request, so that a client cannot reach over UDP what it may not connect to.
+     *
+     * @param channel the control connection of the association
+     * @param username the name the client authenticated with, or {@code null} if the client did not authenticate
+     * @param request a {@code CONNECT} request with the {@code DST.ADDR} and {@code DST.PORT} of the datagram
+     * @return a {@link Future} that is completed with {@code true} if the destination is allowed, or {@code false}
+     *         otherwise.  A failed {@link Future} is treated as {@code false}.
+     */
+    default Future<Boolean> authorizeUdpFlow(Channel channel, String username, Socks5CommandRequest request) {
+        return authorize(channel, username, request);
+    }
+}
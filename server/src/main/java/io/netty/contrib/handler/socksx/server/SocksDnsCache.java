@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.EventLoop;
+import io.netty5.handler.codec.dns.DnsRecord;
+import io.netty5.resolver.dns.DnsCache;
+import io.netty5.resolver.dns.DnsCacheEntry;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link DnsCache} of the destination resolver of a {@link SocksServer}.  Unlike the default cache of
+ * {@link io.netty5.resolver.dns.DnsNameResolver}, which grows with every name ever resolved, it holds at most a given
+ * number of names, so that clients cannot grow it without bounds by requesting distinct destinations.  Every address
+ * is kept for the TTL of its record; failed resolutions are not cached.
+ * <p>
+ * The cache is shared by the resolvers of all event loops.  Lookups never lock; expired names are dropped when
+ * looked up, and the oldest names when the cache is full.  While names are being added concurrently, the cache may
+ * briefly hold a few more names than the maximum, until the threads adding them have evicted as many.
+ */
+final class SocksDnsCache implements DnsCache {
+
+    private final ConcurrentMap<String, Entries> entries = new ConcurrentHashMap<>();
+    // The names in the order they were added, including those dropped since, which are skipped when polled.
+    private final Queue<Name> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedNames = new AtomicInteger();
+    private final int maxEntries;
+
+    SocksDnsCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries: " + maxEntries + " (expected: > 0)");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int queuedNames() {
+        return queuedNames.get();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public boolean clear(String hostname) {
+        return entries.remove(hostname) != null;
+    }
+
+    @Override
+    public List<? extends DnsCacheEntry> get(String hostname, DnsRecord[] additionals) {
+        if (!isCacheable(additionals)) {
+            return null;
+        }
+        final Entries cached = entries.get(hostname);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(System.nanoTime())) {
+            entries.remove(hostname, cached);
+            return null;
+        }
+        return cached.list;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, InetAddress address, long originalTtl,
+                               EventLoop loop) {
+        final long nowNanos = System.nanoTime();
+        final Entry entry = new Entry(hostname, address, nowNanos + TimeUnit.SECONDS.toNanos(originalTtl));
+        if (originalTtl <= 0 || !isCacheable(additionals)) {
+            return entry;
+        }
+
+        entries.compute(hostname, (name, cached) -> {
+            if (cached != null && !cached.isExpired(nowNanos)) {
+                return cached.add(entry);
+            }
+            final Entries added = new Entries(new Name(name), entry);
+            insertionOrder.offer(added.name);
+            queuedNames.incrementAndGet();
+            return added;
+        });
+        evict();
+        return entry;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, Throwable cause, EventLoop loop) {
+        return new Entry(hostname, cause);
+    }
+
+    /**
+     * Drops the oldest names while there are more than {@code maxEntries}, and then skips the queued names which
+     * were dropped otherwise while they are more than the names in the cache, so that the queue stays bounded too.
+     * Each added name is queued once and dropped from the queue by a later poll, so adding a name costs O(1) amortized.
+     */
+    private void evict() {
+        while (entries.size() > maxEntries) {
+            final Name name = pollName();
+            if (name == null) {
+                break;
+            }
+            entries.computeIfPresent(name.hostname, (hostname, cached) -> cached.name == name? null : cached);
+        }
+        while (queuedNames.get() > 2 * maxEntries) {
+            final Name name = pollName();
+            if (name == null) {
+                break;
+            }
+            final Entries cached = entries.get(name.hostname);
+            if (cached != null && cached.name == name) {
+                // Still cached: requeue it, which lets it be evicted a little later than its age would have.
+                insertionOrder.offer(name);
+                queuedNames.incrementAndGet();
+            }
+        }
+    }
+
+    private Name pollName() {
+        final Name name = insertionOrder.poll();
+        if (name != null) {
+            queuedNames.decrementAndGet();
+        }
+        return name;
+    }
+
+    private static boolean isCacheable(DnsRecord[] additionals) {
+        // The answer may depend on the additional records, such as the client subnet; see DefaultDnsCache.
+        return additionals == null || additionals.length == 0;
+    }
+
+    /**
+     * A name as queued for eviction, identifying the {@link Entries} it was added with, so that a name which was
+     * dropped and added again is not evicted by its older place in the queue.
+     */
+    private static final class Name {
+
+        final String hostname;
+
+        Name(String hostname) {
+            this.hostname = hostname;
+        }
+    }
+
+    /**
+     * The addresses of one name, expiring with the first of them, as they are resolved together.
+     */
+    private static final class Entries {
+
+        final Name name;
+        final List<Entry> list;
+        final long expiresAtNanos;
+
+        Entries(Name name, Entry entry) {
+            this(name, Collections.singletonList(entry), entry.expiresAtNanos);
+        }
+
+        private Entries(Name name, List<Entry> list, long expiresAtNanos) {
+            this.name = name;
+            this.list = list;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+
+        Entries add(Entry entry) {
+            final List<Entry> list = new ArrayList<>(this.list.size() + 1);
+            for (Entry e : this.list) {
+                if (!e.address.equals(entry.address)) {
+                    list.add(e);
+                }
+            }
+            list.add(entry);
+            return new Entries(name, Collections.unmodifiableList(list),
+                               Math.min(expiresAtNanos, entry.expiresAtNanos));
+        }
+    }
+
+    private static final class Entry implements DnsCacheEntry {
+
+        private final String hostname;
+        private final InetAddress address;
+        private final Throwable cause;
+        private final long expiresAtNanos;
+
+        Entry(String hostname, InetAddress address, long expiresAtNanos) {
+            this.hostname = hostname;
+            this.address = address;
+            cause = null;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        Entry(String hostname, Throwable cause) {
+            this.hostname = hostname;
+            address = null;
+            this.cause = cause;
+            expiresAtNanos = 0;
+        }
+
+        @Override
+        public InetAddress address() {
+            return address;
+        }
+
+        @Override
+        public Throwable cause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return cause != null? hostname + '/' + cause : address.toString();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.WriteBufferWaterMark;
+import io.netty5.channel.socket.DatagramChannel;
+import io.netty5.resolver.AddressResolverGroup;
+import io.netty5.resolver.dns.DnsAddressResolverGroup;
+import io.netty5.resolver.dns.DnsNameResolverBuilder;
+import io.netty5.resolver.dns.SequentialDnsServerAddressStreamProvider;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.ImmediateEventExecutor;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * A SOCKS4a and SOCKS5 proxy server that serves {@code CONNECT} requests, and optionally {@code BIND} and SOCKS5
+ * {@code UDP ASSOCIATE} requests.
+ * <pre>
+ * SocksServer server = SocksServer.builder()
+ *         .port(1080)
+ *         .authenticator((channel, username, password) -&gt;
+ *                 channel.executor().newSucceededFuture(credentials.matches(username, password)))
+ *         .build();
+ * server.bind().asStage().sync();
+ * </pre>
+ * Authentication and authorization are asynchronous, so that the event loops are never blocked by them.  So is the
+ * resolution of destination names, whose results are cached for the TTL of their records and shared by concurrent
+ * requests for the same name.
+ */
+public final class SocksServer {
+
+    /**
+     * Returns a new {@link SocksServerBuilder}.
+     */
+    public static SocksServerBuilder builder() {
+        return new SocksServerBuilder();
+    }
+
+    private final SocketAddress localAddress;
+    private final boolean ownsEventLoopGroups;
+    private final SocksTransport transport;
+    private final SocksAuthenticator authenticator;
+    private final SocksAuthorizer authorizer;
+    private final boolean socks4Enabled;
+    private final long handshakeTimeoutMillis;
+    private final int connectTimeoutMillis;
+    private final long connectionAttemptDelayMillis;
+    private final boolean spliceEnabled;
+    private final int relayMaxReadsPerFlush;
+    private final WriteBufferWaterMark clientWriteBufferWaterMark;
+    private final WriteBufferWaterMark destinationWriteBufferWaterMark;
+    private final boolean bindEnabled;
+    private final boolean udpAssociateEnabled;
+    private final long udpFlowIdleTimeoutMillis;
+    private final int udpMaxFlowsPerAssociation;
+    private final AddressResolverGroup<InetSocketAddress> resolverGroup;
+    private final SocksAdmissionController admissionController;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private volatile Channel channel;
+
+    SocksServer(SocksServerBuilder builder) {
+        localAddress = builder.localAddress;
+        bossGroup = builder.bossGroup;
+        workerGroup = builder.workerGroup;
+        // The own groups are created on bind(), so that a server which is never bound starts no threads.
+        ownsEventLoopGroups = bossGroup == null;
+        if (builder.transport != null) {
+            transport = builder.transport;
+        } else {
+            transport = ownsEventLoopGroups? SocksTransport.best() : SocksTransport.NIO;
+        }
+        authenticator = builder.authenticator;
+        authorizer = builder.authorizer;
+        socks4Enabled = builder.socks4Enabled;
+        handshakeTimeoutMillis = builder.handshakeTimeoutMillis;
+        connectTimeoutMillis = builder.connectTimeoutMillis;
+        connectionAttemptDelayMillis = builder.connectionAttemptDelayMillis;
+        spliceEnabled = builder.spliceEnabled;
+        relayMaxReadsPerFlush = builder.relayMaxReadsPerFlush;
+        clientWriteBufferWaterMark = builder.clientWriteBufferWaterMark;
+        destinationWriteBufferWaterMark = builder.destinationWriteBufferWaterMark;
+        bindEnabled = builder.bindEnabled;
+        udpAssociateEnabled = builder.udpAssociateEnabled;
+        udpFlowIdleTimeoutMillis = builder.udpFlowIdleTimeoutMillis;
+        udpMaxFlowsPerAssociation = builder.udpMaxFlowsPerAssociation;
+        resolverGroup = newResolverGroup(transport, builder);
+        if (builder.maxConnections != Integer.MAX_VALUE || builder.maxHandshakes != Integer.MAX_VALUE ||
+            builder.maxConnectionsPerClient != Integer.MAX_VALUE) {
+            admissionController = new SocksAdmissionController(
+                    builder.maxConnections, builder.maxHandshakes, builder.maxConnectionsPerClient);
+        } else {
+            admissionController = null;
+        }
+    }
+
+    /**
+     * Returns the group of the resolvers of destination names, one per event loop.  The group deduplicates the
+     * resolutions of a name in flight across all of them, and they share one bounded {@link SocksDnsCache}.
+     */
+    @SuppressWarnings("unchecked")
+    private static AddressResolverGroup<InetSocketAddress> newResolverGroup(
+            SocksTransport transport, SocksServerBuilder builder) {
+        final DnsNameResolverBuilder resolverBuilder = new DnsNameResolverBuilder()
+                .datagramChannelType((Class<? extends DatagramChannel>) transport.datagramChannelClass())
+                .resolveCache(new SocksDnsCache(builder.dnsCacheMaxEntries));
+        if (builder.dnsServers != null) {
+            resolverBuilder.nameServerProvider(new SequentialDnsServerAddressStreamProvider(builder.dnsServers));
+        }
+        return new DnsAddressResolverGroup(resolverBuilder);
+    }
+
+    /**
+     * Starts listening on the configured address.
+     *
+     * @return the {@link Future} which is notified with the listening {@link Channel}
+     */
+    public synchronized Future<Channel> bind() {
+        if (bossGroup == null) {
+            bossGroup = new MultithreadEventLoopGroup(1, transport.newIoHandlerFactory());
+            workerGroup = new MultithreadEventLoopGroup(transport.newIoHandlerFactory());
+        }
+        return new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(transport.serverChannelClass())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, clientWriteBufferWaterMark)
+                .childHandler(new SocksServerInitializer(this))
+                .bind(localAddress)
+                .addListener(future -> {
+                    if (future.isSuccess()) {
+                        channel = future.getNow();
+                    }
+                });
+    }
+
+    /**
+     * Returns the address this server listens on, or {@code null} if it is not bound yet.
+     */
+    public SocketAddress localAddress() {
+        Channel channel = this.channel;
+        return channel != null? channel.localAddress() : null;
+    }
+
+    /**
+     * Stops listening, and shuts down the event loops if this server created them.
+     */
+    public synchronized Future<Void> close() {
+        Channel channel = this.channel;
+        resolverGroup.close();
+        if (ownsEventLoopGroups && bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            return workerGroup.shutdownGracefully();
+        }
+        return channel != null? channel.close() : ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+    }
+
+    /**
+     * Returns the I/O transport of this server.
+     */
+    public SocksTransport transport() {
+        return transport;
+    }
+
+    SocksAuthenticator authenticator() {
+        return authenticator;
+    }
+
+    SocksAuthorizer authorizer() {
+        return authorizer;
+    }
+
+    boolean isSocks4Enabled() {
+        return socks4Enabled;
+    }
+
+    long handshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    int connectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    long connectionAttemptDelayMillis() {
+        return connectionAttemptDelayMillis;
+    }
+
+    boolean isSpliceEnabled() {
+        return spliceEnabled;
+    }
+
+    int relayMaxReadsPerFlush() {
+        return relayMaxReadsPerFlush;
+    }
+
+    WriteBufferWaterMark destinationWriteBufferWaterMark() {
+        return destinationWriteBufferWaterMark;
+    }
+
+    boolean isBindEnabled() {
+        return bindEnabled;
+    }
+
+    boolean isUdpAssociateEnabled() {
+        return udpAssociateEnabled;
+    }
+
+    long udpFlowIdleTimeoutMillis() {
+        return udpFlowIdleTimeoutMillis;
+    }
+
+    int udpMaxFlowsPerAssociation() {
+        return udpMaxFlowsPerAssociation;
+    }
+
+    AddressResolverGroup<InetSocketAddress> resolverGroup() {
+        return resolverGroup;
+    }
+
+    /**
+     * Returns the {@link SocksAdmissionController}, or {@code null} if the connections are not limited.
+     */
+    SocksAdmissionController admissionController() {
+        return admissionController;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.WriteBufferWaterMark;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builds a {@link SocksServer}.
+ *
+ * @see SocksServer#builder()
+ */
+public final class SocksServerBuilder {
+
+    SocketAddress localAddress = new InetSocketAddress(1080);
+    EventLoopGroup bossGroup;
+    EventLoopGroup workerGroup;
+    SocksTransport transport;
+    SocksAuthenticator authenticator;
+    SocksAuthorizer authorizer = SocksAuthorizer.ALLOW_ALL;
+    boolean socks4Enabled = true;
+    long handshakeTimeoutMillis = 10000;
+    int connectTimeoutMillis = 10000;
+    long connectionAttemptDelayMillis = 250;
+    boolean spliceEnabled;
+    int relayMaxReadsPerFlush = 16;
+    WriteBufferWaterMark clientWriteBufferWaterMark = WriteBufferWaterMark.DEFAULT;
+    WriteBufferWaterMark destinationWriteBufferWaterMark = WriteBufferWaterMark.DEFAULT;
+    boolean bindEnabled;
+    boolean udpAssociateEnabled;
+    long udpFlowIdleTimeoutMillis = 60000;
+    int udpMaxFlowsPerAssociation = 1024;
+    List<InetSocketAddress> dnsServers;
+    int dnsCacheMaxEntries = 4096;
+    int maxConnections = Integer.MAX_VALUE;
+    int maxHandshakes = Integer.MAX_VALUE;
+    int maxConnectionsPerClient = Integer.MAX_VALUE;
+
+    SocksServerBuilder() { }
+
+    /**
+     * Sets the address to listen on.  The default is port {@code 1080} on the wildcard address.
+     */
+    public SocksServerBuilder localAddress(SocketAddress localAddress) {
+        this.localAddress = requireNonNull(localAddress, "localAddress");
+        return this;
+    }
+
+    /**
+     * Sets the port to listen on the wildcard address.
+     */
+    public SocksServerBuilder port(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException(port + " is not in bounds 0 <= x <= 65535");
+        }
+        localAddress = new InetSocketAddress(port);
+        return this;
+    }
+
+    /**
+     * Sets the {@link EventLoopGroup}s which accept and serve the connections.  The server does not shut them down
+     * when it is closed.  If not set, the server creates its own groups and shuts them down on close.
+     * The groups must be of the {@linkplain #transport(SocksTransport) transport}, which is {@link SocksTransport#NIO}
+     * unless set explicitly.
+     */
+    public SocksServerBuilder eventLoopGroups(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+        this.bossGroup = requireNonNull(bossGroup, "bossGroup");
+        this.workerGroup = requireNonNull(workerGroup, "workerGroup");
+        return this;
+    }
+
+    /**
+     * Sets the I/O transport of the server.  The default is {@link SocksTransport#best()}, or
+     * {@link SocksTransport#NIO} if the {@linkplain #eventLoopGroups(EventLoopGroup, EventLoopGroup) event loop groups}
+     * are given.
+     *
+     * @throws IllegalStateException if the transport is not {@linkplain SocksTransport#isAvailable() available}
+     */
+    public SocksServerBuilder transport(SocksTransport transport) {
+        requireNonNull(transport, "transport");
+        if (!transport.isAvailable()) {
+            throw new IllegalStateException(transport + " transport is not available");
+        }
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Sets the {@link SocksAuthenticator} that SOCKS5 clients have to pass with the username/password
+     * authentication.  If not set, SOCKS5 clients are not authenticated.  Since SOCKS4a has no means of
+     * authentication, SOCKS4a requests are rejected once an authenticator is set.
+     */
+    public SocksServerBuilder authenticator(SocksAuthenticator authenticator) {
+        this.authenticator = requireNonNull(authenticator, "authenticator");
+        return this;
+    }
+
+    /**
+     * Sets the {@link SocksAuthorizer} that decides on every command request.  The default allows every request.
+     */
+    public SocksServerBuilder authorizer(SocksAuthorizer authorizer) {
+        this.authorizer = requireNonNull(authorizer, "authorizer");
+        return this;
+    }
+
+    /**
+     * Sets whether SOCKS4a clients are served.  The default is {@code true}.
+     */
+    public SocksServerBuilder socks4Enabled(boolean socks4Enabled) {
+        this.socks4Enabled = socks4Enabled;
+        return this;
+    }
+
+    /**
+     * Sets how many client connections are served at most.  A connection beyond the limit is closed as soon as it
+     * is accepted.  The default is unlimited.
+     */
+    public SocksServerBuilder maxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections: " + maxConnections + " (expected: > 0)");
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Sets how many client connections may be in the handshake at once, from being accepted until their command
+     * request is received.  A connection beyond the limit is closed as soon as it is accepted, so that a flood of
+     * slow handshakes cannot hold up the clients being served.  The default is unlimited.
+     */
+    public SocksServerBuilder maxHandshakes(int maxHandshakes) {
+        if (maxHandshakes <= 0) {
+            throw new IllegalArgumentException("maxHandshakes: " + maxHandshakes + " (expected: > 0)");
+        }
+        this.maxHandshakes = maxHandshakes;
+        return this;
+    }
+
+    /**
+     * Sets how many connections from one client IP address are served at most.  A connection beyond the limit is
+     * closed as soon as it is accepted.  The default is unlimited.
+     */
+    public SocksServerBuilder maxConnectionsPerClient(int maxConnectionsPerClient) {
+        if (maxConnectionsPerClient <= 0) {
+            throw new IllegalArgumentException(
+                    "maxConnectionsPerClient: " + maxConnectionsPerClient + " (expected: > 0)");
+        }
+        this.maxConnectionsPerClient = maxConnectionsPerClient;
+        return this;
+    }
+
+    /**
+     * Sets how long a client may take from connecting to the server until its command request is received.
+     * A client which has not completed the handshake by then is disconnected.  The default is 10 seconds.
+     */
+    public SocksServerBuilder handshakeTimeoutMillis(long handshakeTimeoutMillis) {
+        if (handshakeTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "handshakeTimeoutMillis: " + handshakeTimeoutMillis + " (expected: > 0)");
+        }
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets the timeout of connecting to the destination of a {@code CONNECT} request.  The default is 10 seconds.
+     */
+    public SocksServerBuilder connectTimeoutMillis(int connectTimeoutMillis) {
+        if (connectTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("connectTimeoutMillis: " + connectTimeoutMillis + " (expected: > 0)");
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets how long a connection attempt to one address of a {@code CONNECT} destination may be pending before the
+     * next address is tried in parallel.  The addresses of a destination name alternate between IPv6 and IPv4 and
+     * are raced this way, as in the Happy Eyeballs algorithm of RFC 8305, so that an unreachable address family
+     * delays the connection by this delay rather than by the {@linkplain #connectTimeoutMillis(int) connect
+     * timeout}.  The default is 250 milliseconds, as recommended by the RFC.
+     */
+    public SocksServerBuilder connectionAttemptDelayMillis(long connectionAttemptDelayMillis) {
+        if (connectionAttemptDelayMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "connectionAttemptDelayMillis: " + connectionAttemptDelayMillis + " (expected: > 0)");
+        }
+        this.connectionAttemptDelayMillis = connectionAttemptDelayMillis;
+        return this;
+    }
+
+    /**
+     * Sets whether the data of a {@code CONNECT} request is relayed with {@code splice(2)} when both connections are
+     * {@link SocksTransport#EPOLL} channels, so that it is copied within the kernel only.  Otherwise, or if
+     * splicing cannot be started, the data is relayed through {@link io.netty5.buffer.Buffer}s.
+     * The default is {@code false}.
+     */
+    public SocksServerBuilder spliceEnabled(boolean spliceEnabled) {
+        this.spliceEnabled = spliceEnabled;
+        return this;
+    }
+
+    /**
+     * Sets how many reads the relay writes at most before it flushes them.  The relay flushes at the end of every
+     * read cycle anyway, so this only limits the delay within a long cycle.  {@code 1} flushes every read.
+     * The default is {@code 16}.
+     */
+    public SocksServerBuilder relayMaxReadsPerFlush(int relayMaxReadsPerFlush) {
+        if (relayMaxReadsPerFlush <= 0) {
+            throw new IllegalArgumentException(
+                    "relayMaxReadsPerFlush: " + relayMaxReadsPerFlush + " (expected: > 0)");
+        }
+        this.relayMaxReadsPerFlush = relayMaxReadsPerFlush;
+        return this;
+    }
+
+    /**
+     * Sets the {@link WriteBufferWaterMark} of the connections from the clients.  While more than its high water mark
+     * is waiting to be written to a client, reading from the destination of the client is suspended until less than
+     * its low water mark is left.  The default is {@link WriteBufferWaterMark#DEFAULT}.
+     */
+    public SocksServerBuilder clientWriteBufferWaterMark(WriteBufferWaterMark clientWriteBufferWaterMark) {
+        this.clientWriteBufferWaterMark = requireNonNull(clientWriteBufferWaterMark, "clientWriteBufferWaterMark");
+        return this;
+    }
+
+    /**
+     * Sets the {@link WriteBufferWaterMark} of the connections to the destinations.  While more than its high water
+     * mark is waiting to be written to a destination, reading from the client is suspended until less than its low
+     * water mark is left.  The default is {@link WriteBufferWaterMark#DEFAULT}.
+     */
+    public SocksServerBuilder destinationWriteBufferWaterMark(WriteBufferWaterMark destinationWriteBufferWaterMark) {
+        this.destinationWriteBufferWaterMark =
+                requireNonNull(destinationWriteBufferWaterMark, "destinationWriteBufferWaterMark");
+        return this;
+    }
+
+    /**
+     * Sets whether {@code BIND} requests are served.  Every request listens on its own port of the address the client
+     * connected to, until one connection is accepted from the address in the request, or from any address if the
+     * request has the wildcard address, or until the {@linkplain #connectTimeoutMillis(int) connect timeout} passes.
+     * The default is {@code false}.
+     */
+    public SocksServerBuilder bindEnabled(boolean bindEnabled) {
+        this.bindEnabled = bindEnabled;
+        return this;
+    }
+
+    /**
+     * Sets whether SOCKS5 {@code UDP ASSOCIATE} requests are served.  Every association binds its own UDP socket,
+     * which is closed together with the connection of the request.  The default is {@code false}.
+     */
+    public SocksServerBuilder udpAssociateEnabled(boolean udpAssociateEnabled) {
+        this.udpAssociateEnabled = udpAssociateEnabled;
+        return this;
+    }
+
+    /**
+     * Sets how long a destination of a {@code UDP ASSOCIATE} association may send datagrams back to the client after
+     * the client last exchanged a datagram with it.  The default is 60 seconds.
+     */
+    public SocksServerBuilder udpFlowIdleTimeoutMillis(long udpFlowIdleTimeoutMillis) {
+        if (udpFlowIdleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "udpFlowIdleTimeoutMillis: " + udpFlowIdleTimeoutMillis + " (expected: > 0)");
+        }
+        this.udpFlowIdleTimeoutMillis = udpFlowIdleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets how many destinations of a {@code UDP ASSOCIATE} association are tracked at most.  Beyond that, the least
+     * recently used destination can no longer send datagrams back to the client.  The default is {@code 1024}.
+     */
+    public SocksServerBuilder udpMaxFlowsPerAssociation(int udpMaxFlowsPerAssociation) {
+        if (udpMaxFlowsPerAssociation <= 0) {
+            throw new IllegalArgumentException(
+                    "udpMaxFlowsPerAssociation: " + udpMaxFlowsPerAssociation + " (expected: > 0)");
+        }
+        this.udpMaxFlowsPerAssociation = udpMaxFlowsPerAssociation;
+        return this;
+    }
+
+    /**
+     * Sets the DNS servers that resolve the destination names of the requests, which are queried in the given order.
+     * If not set, the name servers of the platform are used.
+     */
+    public SocksServerBuilder dnsServers(InetSocketAddress... dnsServers) {
+        requireNonNull(dnsServers, "dnsServers");
+        if (dnsServers.length == 0) {
+            throw new IllegalArgumentException("dnsServers is empty");
+        }
+        final List<InetSocketAddress> list = new ArrayList<>(dnsServers.length);
+        for (InetSocketAddress dnsServer : dnsServers) {
+            requireNonNull(dnsServer, "dnsServer");
+            if (dnsServer.isUnresolved()) {
+                throw new IllegalArgumentException("unresolved DNS server: " + dnsServer);
+            }
+            list.add(dnsServer);
+        }
+        this.dnsServers = list;
+        return this;
+    }
+
+    /**
+     * Sets how many destination names are cached at most.  Every name is cached for the TTL of its records, and
+     * beyond the limit, the oldest names are evicted.  While names are being added concurrently, the cache may
+     * briefly hold a few more.  The default is {@code 4096}.
+     */
+    public SocksServerBuilder dnsCacheMaxEntries(int dnsCacheMaxEntries) {
+        if (dnsCacheMaxEntries <= 0) {
+            throw new IllegalArgumentException(
+                    "dnsCacheMaxEntries: " + dnsCacheMaxEntries + " (expected: > 0)");
+        }
+        this.dnsCacheMaxEntries = dnsCacheMaxEntries;
+        return this;
+    }
+
+    /**
+     * Returns a new {@link SocksServer} with the current settings of this builder.
+     */
+    public SocksServer build() {
+        return new SocksServer(this);
+    }
+}
@@ -0,0 +1,698 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker;
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker.Deadline;
+import io.netty.contrib.handler.codec.socksx.SocksMessage;
+import io.netty.contrib.handler.codec.socksx.v4.DefaultSocks4CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandStatus;
+import io.netty.contrib.handler.codec.socksx.v4.Socks4CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialResponse;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthResponse;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5BinaryAddress;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandStatus;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5InitialRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5PasswordAuthStatus;
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelFutureListeners;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.ConnectTimeoutException;
+import io.netty5.util.NetUtil;
+import io.netty5.util.Resource;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Answers the handshake of one client and connects it to the requested destination.  Once the connection is
+ * established, this handler replaces itself with a {@link RelayHandler}.  A {@code BIND} request is served the same
+ * way once the peer has connected to the listening socket of the request.  For a {@code UDP ASSOCIATE} request, it
+ * binds a UDP socket served by a {@link UdpRelayHandler} instead, and removes itself once the client is told about it.
+ */
+final class SocksServerHandler implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocksServerHandler.class);
+
+    /**
+     * The most data the client may send before its connection is relayed.  Nothing is read once the command request
+     * is received, so this only needs to cover what arrived in the same reads as the requests.
+     */
+    static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private enum State {
+        INITIAL,
+        AUTHENTICATION,
+        AUTHENTICATING,
+        COMMAND,
+        CONNECTING,
+        CLOSED
+    }
+
+    private final SocksServer server;
+    private final SocksAdmissionController.Ticket admissionTicket;
+    private final Deadline handshakeDeadline = new Deadline(this::handshakeTimedOut);
+    private ChannelHandlerContext ctx;
+    private State state = State.INITIAL;
+    private String username;
+    private Socks5CommandRequest pendingCommand;
+    private Channel outboundChannel;
+    private Future<Channel> connectFuture;
+    // Data the client sent right after its command request, relayed once the destination is connected.
+    private final Queue<Object> pendingData = new ArrayDeque<>(2);
+    private int pendingBytes;
+
+    SocksServerHandler(SocksServer server) {
+        this(server, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param admissionTicket the admission of the connection, which is told when the handshake is completed, or
+     *                        {@code null} if the connections are not limited
+     */
+    SocksServerHandler(SocksServer server, SocksAdmissionController.Ticket admissionTicket) {
+        this.server = server;
+        this.admissionTicket = admissionTicket;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        if (ctx.channel().isActive()) {
+            armHandshakeDeadline(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        armHandshakeDeadline(ctx);
+        ctx.fireChannelActive();
+    }
+
+    private void armHandshakeDeadline(ChannelHandlerContext ctx) {
+        if (state == State.INITIAL && !handshakeDeadline.isArmed()) {
+            HandshakeDeadlineTracker.get(ctx.executor())
+                    .schedule(handshakeDeadline, server.handshakeTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void handshakeTimedOut() {
+        if (state != State.CONNECTING && state != State.CLOSED) {
+            logger.debug("{} Handshake timed out in state {}", ctx.channel(), state);
+            close(ctx);
+        }
+    }
+
+    /**
+     * Moves on to serving the command once it is received, which ends the handshake.
+     */
+    private void startCommand() {
+        handshakeDeadline.cancel();
+        if (admissionTicket != null) {
+            admissionTicket.handshakeCompleted();
+        }
+        state = State.CONNECTING;
+        // Nothing more is read from the client until there is somewhere to relay it to.
+        ctx.channel().setOption(ChannelOption.AUTO_READ, false);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof SocksMessage)) {
+            if (state == State.CLOSED) {
+                Resource.dispose(msg);
+                return;
+            }
+            if (msg instanceof Buffer) {
+                pendingBytes += ((Buffer) msg).readableBytes();
+            }
+            pendingData.add(msg);
+            if (pendingBytes > MAX_PENDING_BYTES) {
+                logger.debug("{} Sent more than {} bytes before the connection is relayed",
+                             ctx.channel(), MAX_PENDING_BYTES);
+                close(ctx);
+            }
+            return;
+        }
+
+        final SocksMessage request = (SocksMessage) msg;
+        if (request.decoderResult().isFailure()) {
+            logger.debug("{} Malformed request: {}", ctx.channel(), request, request.decoderResult().cause());
+            close(ctx);
+            return;
+        }
+
+        if (request instanceof Socks4CommandRequest) {
+            handleSocks4(ctx, (Socks4CommandRequest) request);
+        } else if (request instanceof Socks5InitialRequest) {
+            handleInitialRequest(ctx, (Socks5InitialRequest) request);
+        } else if (request instanceof Socks5PasswordAuthRequest) {
+            handlePasswordAuthRequest(ctx, (Socks5PasswordAuthRequest) request);
+        } else if (request instanceof Socks5CommandRequest) {
+            handleCommandRequest(ctx, (Socks5CommandRequest) request);
+        } else {
+            close(ctx);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        // The responses to the requests of one read are sent together.
+        ctx.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        state = State.CLOSED;
+        handshakeDeadline.cancel();
+        releasePendingData();
+        if (connectFuture != null) {
+            connectFuture.cancel();
+        }
+        if (outboundChannel != null) {
+            outboundChannel.close();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void channelExceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("{} Exception during the SOCKS handshake", ctx.channel(), cause);
+        close(ctx);
+    }
+
+    private void handleSocks4(ChannelHandlerContext ctx, Socks4CommandRequest request) {
+        if (state != State.INITIAL) {
+            close(ctx);
+            return;
+        }
+        final boolean bind = request.type() == Socks4CommandType.BIND && server.isBindEnabled();
+        if (!server.isSocks4Enabled() || server.authenticator() != null ||
+            request.type() != Socks4CommandType.CONNECT && !bind) {
+            logger.debug("{} Rejected SOCKS4a request: {}", ctx.channel(), request);
+            reject(ctx, new DefaultSocks4CommandResponse(Socks4CommandStatus.REJECTED_OR_FAILED));
+            return;
+        }
+
+        startCommand();
+        final InetSocketAddress dstAddr = toSocketAddress(request.dstAddr(), request.dstPort());
+        if (bind) {
+            authorizeAndBind(ctx, request, dstAddr.isUnresolved()? null : dstAddr.getAddress());
+        } else {
+            authorizeAndConnect(ctx, request, dstAddr);
+        }
+    }
+
+    private void handleInitialRequest(ChannelHandlerContext ctx, Socks5InitialRequest request) {
+        if (state != State.INITIAL) {
+            close(ctx);
+            return;
+        }
+
+        final Socks5AuthMethod authMethod =
+                server.authenticator() != null? Socks5AuthMethod.PASSWORD : Socks5AuthMethod.NO_AUTH;
+        if (!request.authMethods().contains(authMethod)) {
+            logger.debug("{} No acceptable authentication method: {}", ctx.channel(), request);
+            reject(ctx, new DefaultSocks5InitialResponse(Socks5AuthMethod.UNACCEPTED));
+            return;
+        }
+
+        state = authMethod == Socks5AuthMethod.PASSWORD? State.AUTHENTICATION : State.COMMAND;
+        ctx.write(new DefaultSocks5InitialResponse(authMethod));
+    }
+
+    private void handlePasswordAuthRequest(ChannelHandlerContext ctx, Socks5PasswordAuthRequest request) {
+        if (state != State.AUTHENTICATION) {
+            close(ctx);
+            return;
+        }
+
+        state = State.AUTHENTICATING;
+        final String username = request.username();
+        final Future<Boolean> future =
+                server.authenticator().authenticate(ctx.channel(), username, request.password());
+        whenComplete(ctx, future, authenticated -> {
+            if (!authenticated) {
+                logger.debug("{} Authentication failed: {}", ctx.channel(), username);
+                reject(ctx, new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.FAILURE));
+                return;
+            }
+
+            this.username = username;
+            state = State.COMMAND;
+            ctx.writeAndFlush(new DefaultSocks5PasswordAuthResponse(Socks5PasswordAuthStatus.SUCCESS));
+
+            final Socks5CommandRequest command = pendingCommand;
+            if (command != null) {
+                pendingCommand = null;
+                handleCommandRequest(ctx, command);
+                ctx.flush();
+            }
+        });
+    }
+
+    private void handleCommandRequest(ChannelHandlerContext ctx, Socks5CommandRequest request) {
+        if (state == State.AUTHENTICATING && pendingCommand == null) {
+            // The client did not wait for the result of the authentication.
+            pendingCommand = request;
+            return;
+        }
+        if (state != State.COMMAND) {
+            close(ctx);
+            return;
+        }
+        if (request.type() == Socks5CommandType.UDP_ASSOCIATE && server.isUdpAssociateEnabled()) {
+            startCommand();
+            authorizeAndAssociate(ctx, request);
+            return;
+        }
+        final boolean bind = request.type() == Socks5CommandType.BIND && server.isBindEnabled();
+        if (request.type() != Socks5CommandType.CONNECT && !bind) {
+            reject(ctx, newFailureResponse(request, Socks5CommandStatus.COMMAND_UNSUPPORTED));
+            return;
+        }
+        final Socks5BinaryAddress dstAddr = request.binaryDstAddr();
+        if (dstAddr == null) {
+            reject(ctx, newFailureResponse(request, Socks5CommandStatus.ADDRESS_UNSUPPORTED));
+            return;
+        }
+
+        startCommand();
+        if (bind) {
+            authorizeAndBind(ctx, request,
+                             dstAddr.type() == Socks5AddressType.DOMAIN? null : dstAddr.toInetAddress());
+        } else {
+            authorizeAndConnect(ctx, request, dstAddr.toSocketAddress(request.dstPort()));
+        }
+    }
+
+    private void authorizeAndBind(ChannelHandlerContext ctx, SocksMessage request, InetAddress peerAddress) {
+        whenComplete(ctx, server.authorizer().authorize(ctx.channel(), username, request), authorized -> {
+            if (!authorized) {
+                logger.debug("{} Unauthorized request: {}", ctx.channel(), request);
+                reject(ctx, newFailureResponse(request, Socks5CommandStatus.FORBIDDEN));
+                return;
+            }
+            bind(ctx, request, peerAddress);
+        });
+    }
+
+    /**
+     * Listens on the address the client connected to for one connection from the peer of a {@code BIND} request, and
+     * replies twice: once listening, with the address to connect to, and once the peer has connected, with its
+     * address.  The connection is then relayed like the one of a {@code CONNECT} request.
+     *
+     * @param peerAddress the only address the peer may connect from, or {@code null} to accept any peer
+     */
+    private void bind(ChannelHandlerContext ctx, SocksMessage request, InetAddress peerAddress) {
+        final Channel inboundChannel = ctx.channel();
+        if (!(inboundChannel.localAddress() instanceof InetSocketAddress)) {
+            reject(ctx, newFailureResponse(request, Socks5CommandStatus.FAILURE));
+            return;
+        }
+        final InetAddress localAddress = ((InetSocketAddress) inboundChannel.localAddress()).getAddress();
+        final boolean anyPeer = peerAddress == null || peerAddress.isAnyLocalAddress();
+        final Promise<Channel> accepted = inboundChannel.executor().newPromise();
+
+        final SocksTransport transport = SocksTransport.of(inboundChannel);
+        final ServerBootstrap b = new ServerBootstrap()
+                .group(inboundChannel.executor(), inboundChannel.executor())
+                .channel((transport != null? transport : server.transport()).serverChannelClass())
+                .option(ChannelOption.SO_BACKLOG, 1)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, server.destinationWriteBufferWaterMark())
+                // Nothing is read from the peer until the client has received the second reply.
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        final SocketAddress remoteAddress = ch.remoteAddress();
+                        if (!anyPeer && (!(remoteAddress instanceof InetSocketAddress) ||
+                                         !peerAddress.equals(((InetSocketAddress) remoteAddress).getAddress()))) {
+                            logger.debug("{} Refused a connection from {}", inboundChannel, remoteAddress);
+                            ch.close();
+                            return;
+                        }
+                        ch.pipeline().addLast(new RelayHandler(inboundChannel, server.relayMaxReadsPerFlush()));
+                        if (!accepted.trySuccess(ch)) {
+                            ch.close();
+                        }
+                    }
+                });
+
+        b.bind(new InetSocketAddress(localAddress, 0)).addListener(future -> {
+            if (state == State.CLOSED) {
+                if (future.isSuccess()) {
+                    future.getNow().close();
+                }
+                return;
+            }
+            if (!future.isSuccess()) {
+                logger.debug("{} Failed to listen for a BIND request", inboundChannel, future.cause());
+                reject(ctx, newFailureResponse(request, Socks5CommandStatus.FAILURE));
+                return;
+            }
+
+            final Channel serverChannel = future.getNow();
+            outboundChannel = serverChannel;
+            serverChannel.closeFuture().addListener(closed -> accepted.tryFailure(new ClosedChannelException()));
+            final Future<?> timeoutFuture = inboundChannel.executor().schedule(
+                    () -> accepted.tryFailure(new ConnectTimeoutException(
+                            "no connection within " + server.connectTimeoutMillis() + "ms")),
+                    server.connectTimeoutMillis(), TimeUnit.MILLISECONDS);
+            ctx.writeAndFlush(newSuccessResponse(request, serverChannel.localAddress()));
+
+            accepted.asFuture().addListener(acceptFuture -> {
+                timeoutFuture.cancel();
+                serverChannel.close();
+                if (state == State.CLOSED) {
+                    if (acceptFuture.isSuccess()) {
+                        acceptFuture.getNow().close();
+                    }
+                    return;
+                }
+                if (!acceptFuture.isSuccess()) {
+                    logger.debug("{} No connection for a BIND request", inboundChannel, acceptFuture.cause());
+                    reject(ctx, newFailureResponse(request, toStatus(acceptFuture.cause())));
+                    return;
+                }
+
+                final Channel peerChannel = acceptFuture.getNow();
+                outboundChannel = peerChannel;
+                final SocksMessage response = newSuccessResponse(request, peerChannel.remoteAddress());
+                ctx.writeAndFlush(response).addListener(written -> {
+                    if (written.isSuccess()) {
+                        relay(ctx, peerChannel);
+                    } else {
+                        peerChannel.close();
+                    }
+                });
+            });
+        });
+    }
+
+    private void authorizeAndAssociate(ChannelHandlerContext ctx, Socks5CommandRequest request) {
+        whenComplete(ctx, server.authorizer().authorize(ctx.channel(), username, request), authorized -> {
+            if (!authorized) {
+                logger.debug("{} Unauthorized request: {}", ctx.channel(), request);
+                reject(ctx, newFailureResponse(request, Socks5CommandStatus.FORBIDDEN));
+                return;
+            }
+            associate(ctx, request);
+        });
+    }
+
+    /**
+     * Binds the UDP socket of a {@code UDP ASSOCIATE} request on the address the client connected to.  The
+     * association lasts as long as the control connection: closing either of them closes the other one.
+     */
+    private void associate(ChannelHandlerContext ctx, Socks5CommandRequest request) {
+        final Channel controlChannel = ctx.channel();
+        if (!(controlChannel.localAddress() instanceof InetSocketAddress) ||
+            !(controlChannel.remoteAddress() instanceof InetSocketAddress)) {
+            reject(ctx, newFailureResponse(request, Socks5CommandStatus.FAILURE));
+            return;
+        }
+        final InetSocketAddress localAddress = (InetSocketAddress) controlChannel.localAddress();
+        final InetSocketAddress remoteAddress = (InetSocketAddress) controlChannel.remoteAddress();
+        // The client may tell the port it sends from, but its address is always the one of the control connection.
+        final InetSocketAddress clientAddress = new InetSocketAddress(remoteAddress.getAddress(), request.dstPort());
+
+        final SocksTransport transport = SocksTransport.of(controlChannel);
+        final Bootstrap b = new Bootstrap()
+                .group(controlChannel.executor())
+                .channel((transport != null? transport : server.transport()).datagramChannelClass())
+                .handler(new UdpRelayHandler(controlChannel, username, server.authorizer(), clientAddress,
+                                             server.resolverGroup(), server.udpFlowIdleTimeoutMillis(),
+                                             server.udpMaxFlowsPerAssociation()));
+
+        b.bind(new InetSocketAddress(localAddress.getAddress(), 0)).addListener(future -> {
+            if (state == State.CLOSED) {
+                if (future.isSuccess()) {
+                    future.getNow().close();
+                }
+                return;
+            }
+            if (!future.isSuccess()) {
+                logger.debug("{} Failed to bind a UDP relay", controlChannel, future.cause());
+                reject(ctx, newFailureResponse(request, Socks5CommandStatus.FAILURE));
+                return;
+            }
+
+            final Channel relayChannel = future.getNow();
+            outboundChannel = relayChannel;
+            relayChannel.closeFuture().addListener(controlChannel, ChannelFutureListeners.CLOSE);
+            ctx.writeAndFlush(newSuccessResponse(request, relayChannel.localAddress())).addListener(written -> {
+                if (written.isSuccess() && state != State.CLOSED) {
+                    // Nothing but the end of the control connection is expected from now on.
+                    releasePendingData();
+                    ctx.pipeline().remove(this);
+                    controlChannel.closeFuture().addListener(relayChannel, ChannelFutureListeners.CLOSE);
+                    // Reads again, if only to notice the end of the control connection.
+                    controlChannel.setOption(ChannelOption.AUTO_READ, true);
+                } else {
+                    relayChannel.close();
+                }
+            });
+        });
+    }
+
+    private void authorizeAndConnect(ChannelHandlerContext ctx, SocksMessage request, InetSocketAddress dstAddr) {
+        whenComplete(ctx, server.authorizer().authorize(ctx.channel(), username, request), authorized -> {
+            if (!authorized) {
+                logger.debug("{} Unauthorized request: {}", ctx.channel(), request);
+                reject(ctx, newFailureResponse(request, Socks5CommandStatus.FORBIDDEN));
+                return;
+            }
+            connect(ctx, request, dstAddr);
+        });
+    }
+
+    private void connect(ChannelHandlerContext ctx, SocksMessage request, InetSocketAddress dstAddr) {
+        final Channel inboundChannel = ctx.channel();
+        // The outbound channel runs on the event loop of the inbound one, so it must be of the same transport.
+        final SocksTransport transport = SocksTransport.of(inboundChannel);
+        final Bootstrap b = new Bootstrap()
+                .group(inboundChannel.executor())
+                .channel((transport != null? transport : server.transport()).socketChannelClass())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, server.connectTimeoutMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, server.destinationWriteBufferWaterMark())
+                // Nothing is read from the destination until the client has received the response.
+                .option(ChannelOption.AUTO_READ, false)
+                .handler(HappyEyeballsConnector.ATTEMPT_HANDLER);
+
+        // Races the addresses of a DOMAIN destination, which is resolved asynchronously through the server's cache.
+        final Future<Channel> connectFuture = new HappyEyeballsConnector(
+                b, inboundChannel.executor(), server.resolverGroup(), server.connectionAttemptDelayMillis())
+                .connect(dstAddr);
+        this.connectFuture = connectFuture;
+        connectFuture.addListener(future -> {
+            this.connectFuture = null;
+            if (state == State.CLOSED) {
+                if (future.isSuccess()) {
+                    future.getNow().close();
+                }
+                return;
+            }
+            if (!future.isSuccess()) {
+                logger.debug("{} Failed to connect to {}", inboundChannel, dstAddr, future.cause());
+                reject(ctx, newFailureResponse(request, toStatus(future.cause())));
+                return;
+            }
+
+            final Channel outboundChannel = future.getNow();
+            this.outboundChannel = outboundChannel;
+            outboundChannel.pipeline().addLast(new RelayHandler(inboundChannel, server.relayMaxReadsPerFlush()));
+            ctx.writeAndFlush(newSuccessResponse(request, outboundChannel.localAddress())).addListener(written -> {
+                if (written.isSuccess()) {
+                    relay(ctx, outboundChannel);
+                } else {
+                    outboundChannel.close();
+                }
+            });
+        });
+    }
+
+    private void relay(ChannelHandlerContext ctx, Channel outboundChannel) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        final Channel inboundChannel = ctx.channel();
+        // The relay handlers stay in place when splicing, to close one channel when the other is closed.
+        ctx.pipeline().addLast(new RelayHandler(outboundChannel, server.relayMaxReadsPerFlush()));
+        ctx.pipeline().remove(this);
+
+        Object data;
+        while ((data = pendingData.poll()) != null) {
+            outboundChannel.write(data);
+        }
+        pendingBytes = 0;
+
+        if (!server.isSpliceEnabled() || !SpliceRelay.isSupported(inboundChannel, outboundChannel)) {
+            outboundChannel.flush();
+            outboundChannel.setOption(ChannelOption.AUTO_READ, true);
+            // Otherwise, the RelayHandler of the destination resumes reading once it becomes writable.
+            if (outboundChannel.isWritable()) {
+                inboundChannel.setOption(ChannelOption.AUTO_READ, true);
+            }
+            return;
+        }
+
+        // splice(2) writes to the socket directly, so it may only start once the data that went through user space
+        // has been written.  Until then, nothing more is read from the client.
+        outboundChannel.writeAndFlush(outboundChannel.bufferAllocator().allocate(0)).addListener(future -> {
+            if (future.isFailed()) {
+                outboundChannel.close();
+                return;
+            }
+            if (SpliceRelay.splice(inboundChannel, outboundChannel)) {
+                SpliceRelay.splice(outboundChannel, inboundChannel);
+            }
+            inboundChannel.setOption(ChannelOption.AUTO_READ, true);
+            outboundChannel.setOption(ChannelOption.AUTO_READ, true);
+        });
+    }
+
+    private void reject(ChannelHandlerContext ctx, SocksMessage response) {
+        state = State.CLOSED;
+        releasePendingData();
+        ctx.write(response);
+        SocksServerUtil.closeOnFlush(ctx.channel());
+    }
+
+    private void close(ChannelHandlerContext ctx) {
+        state = State.CLOSED;
+        releasePendingData();
+        SocksServerUtil.closeOnFlush(ctx.channel());
+    }
+
+    private void releasePendingData() {
+        Object data;
+        while ((data = pendingData.poll()) != null) {
+            Resource.dispose(data);
+        }
+        pendingBytes = 0;
+    }
+
+    /**
+     * Runs the specified action on the event loop of the channel once the specified {@link Future} of the
+     * {@link SocksAuthenticator} or the {@link SocksAuthorizer} is complete, which may be completed by any thread.
+     */
+    private void whenComplete(ChannelHandlerContext ctx, Future<Boolean> future, Consumer<Boolean> action) {
+        requireNonNull(future, "future");
+        future.addListener(f -> {
+            final boolean result = f.isSuccess() && Boolean.TRUE.equals(f.getNow());
+            if (f.isFailed()) {
+                logger.debug("{} Failed to authenticate or authorize", ctx.channel(), f.cause());
+            }
+            if (ctx.executor().inEventLoop()) {
+                complete(action, result);
+            } else {
+                ctx.executor().execute(() -> complete(action, result));
+            }
+        });
+    }
+
+    private void complete(Consumer<Boolean> action, boolean result) {
+        if (state != State.CLOSED) {
+            action.accept(result);
+        }
+    }
+
+    private static SocksMessage newSuccessResponse(SocksMessage request, SocketAddress address) {
+        if (request instanceof Socks4CommandRequest) {
+            if (((Socks4CommandRequest) request).type() == Socks4CommandType.BIND &&
+                address instanceof InetSocketAddress &&
+                ((InetSocketAddress) address).getAddress().getAddress().length == 4) {
+                final InetSocketAddress bndAddr = (InetSocketAddress) address;
+                return new DefaultSocks4CommandResponse(Socks4CommandStatus.SUCCESS,
+                        NetUtil.toAddressString(bndAddr.getAddress()), bndAddr.getPort());
+            }
+            return new DefaultSocks4CommandResponse(Socks4CommandStatus.SUCCESS);
+        }
+        if (!(address instanceof InetSocketAddress)) {
+            return new DefaultSocks5CommandResponse(Socks5CommandStatus.SUCCESS, Socks5AddressType.IPv4);
+        }
+        final InetSocketAddress bndAddr = (InetSocketAddress) address;
+        final InetAddress bndInetAddr = bndAddr.getAddress();
+        return new DefaultSocks5CommandResponse(
+                Socks5CommandStatus.SUCCESS,
+                bndInetAddr.getAddress().length == 4? Socks5AddressType.IPv4 : Socks5AddressType.IPv6,
+                NetUtil.toAddressString(bndInetAddr), bndAddr.getPort());
+    }
+
+    private static SocksMessage newFailureResponse(SocksMessage request, Socks5CommandStatus status) {
+        if (request instanceof Socks4CommandRequest) {
+            return new DefaultSocks4CommandResponse(Socks4CommandStatus.REJECTED_OR_FAILED);
+        }
+        return new DefaultSocks5CommandResponse(status, ((Socks5CommandRequest) request).dstAddrType());
+    }
+
+    private static Socks5CommandStatus toStatus(Throwable cause) {
+        if (cause instanceof ConnectTimeoutException || cause instanceof NoRouteToHostException ||
+            cause instanceof UnknownHostException) {
+            return Socks5CommandStatus.HOST_UNREACHABLE;
+        }
+        if (cause instanceof ConnectException) {
+            return Socks5CommandStatus.CONNECTION_REFUSED;
+        }
+        return Socks5CommandStatus.FAILURE;
+    }
+
+    private static InetSocketAddress toSocketAddress(String host, int port) {
+        final byte[] address = NetUtil.createByteArrayFromIpAddressString(host);
+        if (address != null) {
+            try {
+                return new InetSocketAddress(InetAddress.getByAddress(address), port);
+            } catch (UnknownHostException e) {
+                // Never happens for an address of a valid length.
+            }
+        }
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.SocksPortUnificationServerHandler;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+final class SocksServerInitializer extends ChannelInitializer<Channel> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocksServerInitializer.class);
+
+    private final SocksServer server;
+
+    SocksServerInitializer(SocksServer server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        SocksAdmissionController.Ticket ticket = null;
+        final SocksAdmissionController admissionController = server.admissionController();
+        if (admissionController != null) {
+            ticket = admissionController.admit(ch);
+            if (ticket == null) {
+                // Rejected before any handler reads from the connection.
+                logger.debug("{} Over the connection limits; closing", ch);
+                ch.close();
+                return;
+            }
+        }
+        ch.pipeline().addLast(
+                new SocksPortUnificationServerHandler(Socks5ServerEncoder.DEFAULT, true),
+                new SocksServerHandler(server, ticket));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.Channel;
+import io.netty5.channel.IoHandlerFactory;
+import io.netty5.channel.ServerChannel;
+import io.netty5.channel.nio.NioHandler;
+import io.netty5.channel.socket.nio.NioDatagramChannel;
+import io.netty5.channel.socket.nio.NioServerSocketChannel;
+import io.netty5.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+
+/**
+ * The I/O transports a {@link SocksServer} can run on.
+ * <p>
+ * The native transports are looked up at runtime, so they are only {@linkplain #isAvailable() available} if their
+ * classes and native libraries are on the class path and the operating system supports them:
+ * {@code netty5-transport-native-epoll} for {@link #EPOLL} and {@code netty5-transport-native-io_uring} for
+ * {@link #IO_URING}.
+ */
+public enum SocksTransport {
+
+    /**
+     * The transport based on Java NIO, which is available everywhere.
+     */
+    NIO,
+
+    /**
+     * The native transport based on Linux epoll, with edge-triggered I/O and {@code splice(2)}.
+     */
+    EPOLL,
+
+    /**
+     * The native transport based on Linux io_uring.
+     */
+    IO_URING;
+
+    private static final Logger logger = LoggerFactory.getLogger(SocksTransport.class);
+
+    /**
+     * Returns the preferred transport which is available: {@link #EPOLL}, {@link #IO_URING} and then {@link #NIO}.
+     */
+    public static SocksTransport best() {
+        if (EPOLL.isAvailable()) {
+            return EPOLL;
+        }
+        if (IO_URING.isAvailable()) {
+            return IO_URING;
+        }
+        return NIO;
+    }
+
+    /**
+     * Returns the transport of the specified {@link Channel}, or {@code null} if it is none of the known ones.
+     */
+    static SocksTransport of(Channel channel) {
+        for (SocksTransport transport : values()) {
+            final Support support = transport.support();
+            if (support.available && support.socketChannelClass.isInstance(channel)) {
+                return transport;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} if this transport can be used on the running system.
+     */
+    public boolean isAvailable() {
+        return support().available;
+    }
+
+    /**
+     * Returns a new {@link IoHandlerFactory} for the event loops of this transport.
+     *
+     * @throws IllegalStateException if this transport is not {@linkplain #isAvailable() available}
+     */
+    public IoHandlerFactory newIoHandlerFactory() {
+        return ensureAvailable().ioHandlerFactory();
+    }
+
+    /**
+     * Returns the type of the listening channels of this transport.
+     *
+     * @throws IllegalStateException if this transport is not {@linkplain #isAvailable() available}
+     */
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return ensureAvailable().serverChannelClass;
+    }
+
+    /**
+     * Returns the type of the connected channels of this transport.
+     *
+     * @throws IllegalStateException if this transport is not {@linkplain #isAvailable() available}
+     */
+    public Class<? extends Channel> socketChannelClass() {
+        return ensureAvailable().socketChannelClass;
+    }
+
+    /**
+     * Returns the type of the UDP channels of this transport.
+     *
+     * @throws IllegalStateException if this transport is not {@linkplain #isAvailable() available}
+     */
+    public Class<? extends Channel> datagramChannelClass() {
+        return ensureAvailable().datagramChannelClass;
+    }
+
+    private Support ensureAvailable() {
+        final Support support = support();
+        if (!support.available) {
+            throw new IllegalStateException(name() + " transport is not available", support.cause);
+        }
+        return support;
+    }
+
+    private Support support() {
+        switch (this) {
+        case EPOLL:
+            return NativeSupport.EPOLL;
+        case IO_URING:
+            return NativeSupport.IO_URING;
+        default:
+            return Support.NIO_SUPPORT;
+        }
+    }
+
+    private static final class Support {
+
+        static final Support NIO_SUPPORT = new Support(
+                NioServerSocketChannel.class, NioSocketChannel.class, NioDatagramChannel.class, null, null);
+
+        final boolean available;
+        final Throwable cause;
+        final Class<? extends ServerChannel> serverChannelClass;
+        final Class<? extends Channel> socketChannelClass;
+        final Class<? extends Channel> datagramChannelClass;
+        private final Method newFactory;
+
+        Support(Class<? extends ServerChannel> serverChannelClass, Class<? extends Channel> socketChannelClass,
+                Class<? extends Channel> datagramChannelClass, Method newFactory, Throwable cause) {
+            this.available = cause == null;
+            this.cause = cause;
+            this.serverChannelClass = serverChannelClass;
+            this.socketChannelClass = socketChannelClass;
+            this.datagramChannelClass = datagramChannelClass;
+            this.newFactory = newFactory;
+        }
+
+        IoHandlerFactory ioHandlerFactory() {
+            if (newFactory == null) {
+                return NioHandler.newFactory();
+            }
+            try {
+                return (IoHandlerFactory) newFactory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("failed to create an IoHandlerFactory", e);
+            }
+        }
+    }
+
+    /**
+     * Loads the native transports on first use only, so that using {@link #NIO} never touches them.
+     */
+    private static final class NativeSupport {
+
+        static final Support EPOLL = load("io.netty5.channel.epoll", "Epoll", "EpollHandler",
+                "EpollServerSocketChannel", "EpollSocketChannel", "EpollDatagramChannel");
+        static final Support IO_URING = load("io.netty5.channel.uring", "IOUring", "IOUringHandler",
+                "IOUringServerSocketChannel", "IOUringSocketChannel", "IOUringDatagramChannel");
+
+        private static Support load(String pkg, String availability, String handler,
+                                    String serverChannel, String socketChannel, String datagramChannel) {
+            final ClassLoader loader = SocksTransport.class.getClassLoader();
+            Throwable cause;
+            try {
+                final Class<?> availabilityClass = Class.forName(pkg + '.' + availability, true, loader);
+                if ((Boolean) availabilityClass.getMethod("isAvailable").invoke(null)) {
+                    return new Support(
+                            Class.forName(pkg + '.' + serverChannel, false, loader)
+                                 .asSubclass(ServerChannel.class),
+                            Class.forName(pkg + '.' + socketChannel, false, loader).asSubclass(Channel.class),
+                            Class.forName(pkg + '.' + datagramChannel, false, loader).asSubclass(Channel.class),
+                            Class.forName(pkg + '.' + handler, true, loader).getMethod("newFactory"),
+                            null);
+                }
+                cause = (Throwable) availabilityClass.getMethod("unavailabilityCause").invoke(null);
+            } catch (Throwable t) {
+                cause = t;
+            }
+            logger.debug("{}.{} is not available", pkg, availability, cause);
+            return new Support(null, null, null, null, cause != null? cause : new UnsupportedOperationException());
+        }
+    }
+}
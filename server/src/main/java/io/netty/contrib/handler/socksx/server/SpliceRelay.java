@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.Channel;
+import io.netty5.channel.epoll.Epoll;
+import io.netty5.channel.epoll.EpollSocketChannel;
+import io.netty5.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Relays the data between two native epoll channels with {@code splice(2)}, so that it never enters user space.
+ * <p>
+ * The epoll transport is optional, so the code which uses its classes is in {@link EpollSplice}, which is only
+ * loaded once {@link SocksTransport#EPOLL} is known to be available.  If it is not, or the channels are not epoll
+ * channels, {@link #isSupported(Channel, Channel)} returns {@code false} and the caller keeps relaying with
+ * {@link RelayHandler}.
+ */
+final class SpliceRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpliceRelay.class);
+
+    /**
+     * Returns {@code true} if the data between the specified channels can be relayed with {@code splice(2)}.  This
+     * requires both to be epoll channels of the same event loop.
+     */
+    static boolean isSupported(Channel a, Channel b) {
+        return SocksTransport.EPOLL.isAvailable() && EpollSplice.isSupported(a, b);
+    }
+
+    /**
+     * Starts splicing everything received by {@code from} to {@code to} until either channel is closed.  Both
+     * channels are closed if splicing fails.  Only called if {@link #isSupported(Channel, Channel)} returned
+     * {@code true} for the channels.
+     *
+     * @return {@code false} if splicing could not be started, in which case the caller has to relay the data itself
+     */
+    static boolean splice(Channel from, Channel to) {
+        final Future<Void> future;
+        try {
+            future = EpollSplice.spliceTo(from, to);
+        } catch (RuntimeException e) {
+            logger.debug("{} Failed to splice to {}", from, to, e);
+            return false;
+        }
+        future.addListener(f -> {
+            if (f.isFailed()) {
+                logger.debug("{} Splicing to {} failed", from, to, f.cause());
+                from.close();
+                to.close();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Links against the epoll transport, which is an optional dependency.
+     */
+    private static final class EpollSplice {
+
+        static boolean isSupported(Channel a, Channel b) {
+            return Epoll.isAvailable() && a instanceof EpollSocketChannel && b instanceof EpollSocketChannel &&
+                   a.executor() == b.executor();
+        }
+
+        static Future<Void> spliceTo(Channel from, Channel to) {
+            return ((EpollSocketChannel) from).spliceTo((EpollSocketChannel) to, Integer.MAX_VALUE);
+        }
+
+        private EpollSplice() { }
+    }
+
+    private SpliceRelay() { }
+}
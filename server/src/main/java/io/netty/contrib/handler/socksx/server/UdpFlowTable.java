@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The destinations a client of one {@code UDP ASSOCIATE} association has sent datagrams to, which are the only
+ * senders whose datagrams are relayed back to the client.
+ * <p>
+ * The flows are kept in least recently used order, so that the idle ones are always at the head: they are evicted
+ * whenever a new flow is added, in time proportional to the number of evicted flows, and the number of flows is
+ * capped at {@code maxFlows}.  No timer is needed, and the memory of a client which sends one datagram to each of
+ * many destinations, such as a DNS client, stays bounded.  The table is confined to the event loop of its
+ * association, so it needs no locking.
+ */
+final class UdpFlowTable {
+
+    private static final class Flow {
+        long lastActiveNanos;
+    }
+
+    private final long idleTimeoutNanos;
+    private final Map<InetSocketAddress, Flow> flows;
+
+    UdpFlowTable(long idleTimeoutNanos, int maxFlows) {
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        flows = new LinkedHashMap<InetSocketAddress, Flow>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Flow> eldest) {
+                return size() > maxFlows;
+            }
+        };
+    }
+
+    /**
+     * Records that a datagram was sent to the specified destination.
+     */
+    void touch(InetSocketAddress destination, long nanoTime) {
+        Flow flow = flows.get(destination);
+        if (flow == null) {
+            evictIdle(nanoTime);
+            flow = new Flow();
+            flows.put(destination, flow);
+        }
+        flow.lastActiveNanos = nanoTime;
+    }
+
+    /**
+     * Records that a datagram was received from the specified sender if it is the destination of an active flow.
+     *
+     * @return {@code true} if the datagram should be relayed to the client
+     */
+    boolean touchIfActive(InetSocketAddress sender, long nanoTime) {
+        final Flow flow = flows.get(sender);
+        if (flow == null) {
+            return false;
+        }
+        if (nanoTime - flow.lastActiveNanos >= idleTimeoutNanos) {
+            flows.remove(sender);
+            return false;
+        }
+        flow.lastActiveNanos = nanoTime;
+        return true;
+    }
+
+    /**
+     * Removes the flows which have been idle for the idle timeout.
+     */
+    void evictIdle(long nanoTime) {
+        final Iterator<Flow> i = flows.values().iterator();
+        while (i.hasNext()) {
+            if (nanoTime - i.next().lastActiveNanos < idleTimeoutNanos) {
+                // The following flows are more recently used.
+                break;
+            }
+            i.remove();
+        }
+    }
+
+    int size() {
+        return flows.size();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5BinaryAddress;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacket;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketDecoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketEncoder;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.handler.codec.DecoderException;
+import io.netty5.resolver.AddressResolverGroup;
+import io.netty5.util.Resource;
+import io.netty5.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays the datagrams of one {@code UDP ASSOCIATE} association through its own UDP socket: the datagrams of the
+ * client are stripped of their SOCKS5 UDP request header and sent to their {@code DST.ADDR}, and the datagrams of
+ * the destinations are prefixed with a header that names them and sent to the client.
+ * <p>
+ * Only datagrams from the address of the client's control connection are taken as client datagrams.  Only the
+ * destinations the client has recently sent to, as recorded in an {@link UdpFlowTable}, may send datagrams back, so
+ * that the relay cannot be used to reach the client from anywhere else.  A destination only enters the table once
+ * {@link SocksAuthorizer#authorizeUdpFlow} allows it, and the datagrams to a denied one are dropped.  Fragmented
+ * datagrams are dropped, as required by RFC 1928 of an implementation that does not support fragmentation.
+ */
+final class UdpRelayHandler implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpRelayHandler.class);
+
+    private final InetAddress clientAddress;
+    private int clientPort;
+    private InetSocketAddress client;
+    private final Channel controlChannel;
+    private final String username;
+    private final SocksAuthorizer authorizer;
+    private final AddressResolverGroup<InetSocketAddress> resolverGroup;
+    private final UdpFlowTable flows;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param controlChannel the control connection of the association, which new flows are authorized for
+     * @param username the name the client authenticated with, or {@code null} if the client did not authenticate
+     * @param clientAddress the address the client sends its datagrams from; its port is {@code 0} if the client did
+     *                      not tell it in the {@code UDP ASSOCIATE} request, in which case it is learned from the
+     *                      first datagram of the client
+     * @param resolverGroup the resolvers of the {@code DOMAIN} destinations
+     */
+    UdpRelayHandler(Channel controlChannel, String username, SocksAuthorizer authorizer,
+                    InetSocketAddress clientAddress, AddressResolverGroup<InetSocketAddress> resolverGroup,
+                    long flowIdleTimeoutMillis, int maxFlows) {
+        this.controlChannel = controlChannel;
+        this.username = username;
+        this.authorizer = authorizer;
+        this.clientAddress = clientAddress.getAddress();
+        clientPort = clientAddress.getPort();
+        if (clientPort != 0) {
+            client = clientAddress;
+        }
+        this.resolverGroup = resolverGroup;
+        flows = new UdpFlowTable(TimeUnit.MILLISECONDS.toNanos(flowIdleTimeoutMillis), maxFlows);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        ctx.pipeline().addBefore(ctx.name(), null, new ClientPacketDecoder());
+        ctx.pipeline().addBefore(ctx.name(), null, Socks5UdpPacketEncoder.DEFAULT);
+    }
+
+    private boolean isFromClient(SocketAddress sender) {
+        if (!(sender instanceof InetSocketAddress)) {
+            return false;
+        }
+        final InetSocketAddress address = (InetSocketAddress) sender;
+        return clientAddress.equals(address.getAddress()) && (clientPort == 0 || clientPort == address.getPort());
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof Socks5UdpPacket) {
+            relayToDestination(ctx, (Socks5UdpPacket) msg);
+        } else if (msg instanceof DatagramPacket) {
+            relayToClient(ctx, (DatagramPacket) msg);
+        } else {
+            Resource.dispose(msg);
+        }
+    }
+
+    private void relayToDestination(ChannelHandlerContext ctx, Socks5UdpPacket packet) {
+        if (packet.frag() != 0) {
+            logger.debug("{} Dropped a fragmented datagram: {}", ctx.channel(), packet);
+            packet.close();
+            return;
+        }
+        if (client == null) {
+            client = (InetSocketAddress) packet.sender();
+            clientPort = client.getPort();
+        }
+
+        final Socks5BinaryAddress dstAddr = packet.dstAddr();
+        final int dstPort = packet.dstPort();
+        final InetSocketAddress destination = dstAddr.toSocketAddress(dstPort);
+        final Buffer payload = packet.content().split();
+        packet.close();
+
+        if (dstAddr.type() != Socks5AddressType.DOMAIN) {
+            send(ctx, dstAddr, dstPort, destination, payload);
+            return;
+        }
+        resolverGroup.getResolver(ctx.executor()).resolve(destination).addListener(future -> {
+            if (future.isSuccess() && ctx.channel().isActive()) {
+                send(ctx, dstAddr, dstPort, future.getNow(), payload);
+                ctx.flush();
+            } else {
+                logger.debug("{} Failed to resolve {}", ctx.channel(), destination, future.cause());
+                payload.close();
+            }
+        });
+    }
+
+    private void send(ChannelHandlerContext ctx, Socks5BinaryAddress dstAddr, int dstPort,
+                      InetSocketAddress destination, Buffer payload) {
+        if (flows.touchIfActive(destination, System.nanoTime())) {
+            ctx.write(new DatagramPacket(payload, destination));
+            return;
+        }
+
+        // A new flow is authorized like a connection to the destination the client named.
+        final Future<Boolean> future = authorizer.authorizeUdpFlow(
+                controlChannel, username, new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, dstAddr, dstPort));
+        future.addListener(f -> {
+            final boolean authorized = f.isSuccess() && Boolean.TRUE.equals(f.getNow());
+            if (ctx.executor().inEventLoop()) {
+                sendAuthorized(ctx, destination, payload, authorized);
+            } else {
+                ctx.executor().execute(() -> sendAuthorized(ctx, destination, payload, authorized));
+            }
+        });
+    }
+
+    private void sendAuthorized(ChannelHandlerContext ctx, InetSocketAddress destination, Buffer payload,
+                                boolean authorized) {
+        if (!authorized || !ctx.channel().isActive()) {
+            logger.debug("{} Dropped a datagram to {}", ctx.channel(), destination);
+            payload.close();
+            return;
+        }
+        flows.touch(destination, System.nanoTime());
+        ctx.writeAndFlush(new DatagramPacket(payload, destination));
+    }
+
+    private void relayToClient(ChannelHandlerContext ctx, DatagramPacket datagram) {
+        final SocketAddress sender = datagram.sender();
+        if (client == null || !(sender instanceof InetSocketAddress) ||
+            !flows.touchIfActive((InetSocketAddress) sender, System.nanoTime())) {
+            logger.debug("{} Dropped a datagram from {}", ctx.channel(), sender);
+            datagram.close();
+            return;
+        }
+
+        final InetSocketAddress source = (InetSocketAddress) sender;
+        final Buffer payload = datagram.content().split();
+        datagram.close();
+        ctx.write(new Socks5UdpPacket(
+                payload, Socks5BinaryAddress.valueOf(source.getAddress()), source.getPort(), client));
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        // The datagrams of one read cycle are flushed at once.
+        ctx.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelExceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (cause instanceof DecoderException) {
+            // A malformed datagram spoils only itself.
+            logger.debug("{} Dropped a malformed datagram", ctx.channel(), cause);
+            return;
+        }
+        logger.debug("{} UDP relay failed", ctx.channel(), cause);
+        ctx.close();
+    }
+
+    /**
+     * Decodes the datagrams of the client only, and lets the others through to {@link #relayToClient}.
+     */
+    private final class ClientPacketDecoder extends Socks5UdpPacketDecoder {
+
+        @Override
+        public boolean acceptInboundMessage(Object msg) throws Exception {
+            return msg instanceof DatagramPacket && isFromClient(((DatagramPacket) msg).sender());
+        }
+    }
+}
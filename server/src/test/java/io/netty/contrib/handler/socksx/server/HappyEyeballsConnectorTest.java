@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.bootstrap.ServerBootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.EventLoop;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.nio.NioHandler;
+import io.netty5.channel.socket.nio.NioServerSocketChannel;
+import io.netty5.channel.socket.nio.NioSocketChannel;
+import io.netty5.resolver.DefaultAddressResolverGroup;
+import io.netty5.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HappyEyeballsConnectorTest {
+
+    private static EventLoopGroup group;
+    private static Channel server;
+    private static InetSocketAddress serverAddress;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        group = new MultithreadEventLoopGroup(1, NioHandler.newFactory());
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(HappyEyeballsConnector.ATTEMPT_HANDLER)
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).asStage().get();
+        serverAddress = (InetSocketAddress) server.localAddress();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        if (server != null) {
+            server.close().asStage().sync();
+        }
+        group.shutdownGracefully();
+    }
+
+    private static InetSocketAddress refusedAddress() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+
+    private static Channel connect(long attemptDelayMillis, InetSocketAddress... addresses) throws Exception {
+        EventLoop loop = group.next();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(loop)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
+                .handler(HappyEyeballsConnector.ATTEMPT_HANDLER);
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(
+                bootstrap, loop, DefaultAddressResolverGroup.INSTANCE, attemptDelayMillis);
+        Future<Channel> future = loop.submit(() -> connector.connect(Arrays.asList(addresses))).asStage().get();
+        return future.asStage().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testInterleave() throws Exception {
+        InetSocketAddress v6a = new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 80);
+        InetSocketAddress v6b = new InetSocketAddress(InetAddress.getByName("2001:db8::2"), 80);
+        InetSocketAddress v4a = new InetSocketAddress("192.0.2.1", 80);
+        InetSocketAddress v4b = new InetSocketAddress("192.0.2.2", 80);
+        InetSocketAddress v4c = new InetSocketAddress("192.0.2.3", 80);
+
+        assertEquals(Arrays.asList(v6a, v4a, v6b, v4b, v4c),
+                     HappyEyeballsConnector.interleave(Arrays.asList(v6a, v6b, v4a, v4b, v4c)));
+        assertEquals(Arrays.asList(v4a, v6a, v4b, v6b, v4c),
+                     HappyEyeballsConnector.interleave(Arrays.asList(v4a, v4b, v4c, v6a, v6b)));
+        List<InetSocketAddress> sameFamily = Arrays.asList(v4a, v4b);
+        assertEquals(sameFamily, HappyEyeballsConnector.interleave(sameFamily));
+    }
+
+    @Test
+    public void testFailedAttemptStartsNextAttempt() throws Exception {
+        // The delay is longer than the test waits, so only the failure of the first attempt can start the second.
+        Channel channel = connect(60000, refusedAddress(), serverAddress);
+        try {
+            assertEquals(serverAddress, channel.remoteAddress());
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testPendingAttemptRacedAfterDelay() throws Exception {
+        // Connecting to a non-routable address either hangs or fails; either way, the next attempt wins.
+        Channel channel = connect(50, new InetSocketAddress("10.255.255.1", 80), serverAddress);
+        try {
+            assertEquals(serverAddress, channel.remoteAddress());
+        } finally {
+            channel.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testAllAttemptsFailed() throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class,
+                                             () -> connect(60000, refusedAddress(), refusedAddress()));
+        assertInstanceOf(ConnectException.class, e.getCause());
+    }
+}
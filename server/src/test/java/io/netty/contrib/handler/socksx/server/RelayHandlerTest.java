@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.WriteBufferWaterMark;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RelayHandlerTest {
+
+    private static final class FlushCounter implements ChannelHandler {
+        int flushes;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushes++;
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Holds back the flushes, so that the written data stays in the outbound buffer of the channel, as it does while
+     * the peer is slow.
+     */
+    private static final class FlushBlocker implements ChannelHandler {
+        private ChannelHandlerContext ctx;
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+        }
+
+        void release() {
+            ctx.flush();
+        }
+    }
+
+    private static Buffer newData() {
+        return preferredAllocator().copyOf(new byte[] { 1, 2, 3 });
+    }
+
+    private static void drain(EmbeddedChannel channel) {
+        Buffer buf;
+        while ((buf = channel.readOutbound()) != null) {
+            buf.close();
+        }
+    }
+
+    @Test
+    public void testFlushOncePerReadCycle() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel destination = new EmbeddedChannel(counter);
+        EmbeddedChannel source = new EmbeddedChannel(new RelayHandler(destination, 16));
+
+        // EmbeddedChannel.writeInbound() ends every call with channelReadComplete().
+        source.writeInbound(newData(), newData(), newData());
+        assertEquals(1, counter.flushes);
+        drain(destination);
+        source.finishAndReleaseAll();
+        destination.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushAfterMaxReads() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel destination = new EmbeddedChannel(counter);
+        EmbeddedChannel source = new EmbeddedChannel(new RelayHandler(destination, 2));
+
+        source.writeInbound(newData(), newData(), newData());
+        assertEquals(2, counter.flushes);
+        drain(destination);
+        source.finishAndReleaseAll();
+        destination.finishAndReleaseAll();
+    }
+
+    /**
+     * Relays from {@code source} to {@code destination}, whose outbound buffer is only drained by
+     * {@link FlushBlocker#release()} and becomes unwritable above 8 bytes, and back.
+     */
+    private static EmbeddedChannel[] newSlowRelay(FlushBlocker blocker) {
+        EmbeddedChannel destination = new EmbeddedChannel(blocker);
+        destination.setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(4, 8));
+        EmbeddedChannel source = new EmbeddedChannel(new RelayHandler(destination, 16));
+        destination.pipeline().addLast(new RelayHandler(source, 16));
+        return new EmbeddedChannel[] { source, destination };
+    }
+
+    @Test
+    public void testStopReadingWhileRelayChannelUnwritable() {
+        FlushBlocker blocker = new FlushBlocker();
+        EmbeddedChannel[] relay = newSlowRelay(blocker);
+        EmbeddedChannel source = relay[0];
+        EmbeddedChannel destination = relay[1];
+
+        source.writeInbound(newData(), newData());
+        assertTrue(destination.isWritable());
+        assertTrue(source.getOption(ChannelOption.AUTO_READ));
+
+        // Over the high water mark: nothing more is read from the source until the destination catches up.
+        source.writeInbound(newData());
+        assertFalse(destination.isWritable());
+        assertFalse(source.getOption(ChannelOption.AUTO_READ));
+        source.finishAndReleaseAll();
+        destination.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testResumeReadingOnceRelayChannelDrains() {
+        FlushBlocker blocker = new FlushBlocker();
+        EmbeddedChannel[] relay = newSlowRelay(blocker);
+        EmbeddedChannel source = relay[0];
+        EmbeddedChannel destination = relay[1];
+
+        source.writeInbound(newData(), newData(), newData());
+        assertFalse(source.getOption(ChannelOption.AUTO_READ));
+
+        // Draining below the low water mark makes the destination writable, whose RelayHandler resumes the source.
+        blocker.release();
+        assertTrue(destination.isWritable());
+        assertTrue(source.getOption(ChannelOption.AUTO_READ));
+        drain(destination);
+        source.finishAndReleaseAll();
+        destination.finishAndReleaseAll();
+    }
+}
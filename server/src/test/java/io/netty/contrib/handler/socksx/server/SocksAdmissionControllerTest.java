@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SocksAdmissionControllerTest {
+
+    private static final InetSocketAddress CLIENT_A = new InetSocketAddress("10.0.0.1", 40000);
+    private static final InetSocketAddress CLIENT_B = new InetSocketAddress("10.0.0.2", 40000);
+
+    @Test
+    public void testMaxConnections() {
+        SocksAdmissionController controller = new SocksAdmissionController(2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+        assertNotNull(controller.admit(first));
+        assertNotNull(controller.admit(second));
+        assertNull(controller.admit(new EmbeddedChannel()));
+        assertEquals(2, controller.connections());
+
+        // Closing a connection makes room for another.
+        first.close();
+        assertEquals(1, controller.connections());
+        assertNotNull(controller.admit(new EmbeddedChannel()));
+        assertEquals(2, controller.connections());
+    }
+
+    @Test
+    public void testMaxHandshakes() {
+        SocksAdmissionController controller = new SocksAdmissionController(Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+        EmbeddedChannel first = new EmbeddedChannel();
+        SocksAdmissionController.Ticket ticket = controller.admit(first);
+        assertNotNull(ticket);
+        assertNull(controller.admit(new EmbeddedChannel()));
+
+        // A completed handshake stops counting, but the connection still does.
+        ticket.handshakeCompleted();
+        ticket.handshakeCompleted();
+        assertEquals(0, controller.handshakes());
+        assertEquals(1, controller.connections());
+        assertNotNull(controller.admit(new EmbeddedChannel()));
+        assertEquals(1, controller.handshakes());
+
+        first.close();
+        assertEquals(1, controller.handshakes());
+        assertEquals(1, controller.connections());
+    }
+
+    @Test
+    public void testMaxConnectionsPerClient() {
+        SocksAdmissionController controller = new SocksAdmissionController(Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+        EmbeddedChannel first = new EmbeddedChannel();
+        assertNotNull(controller.admit(first, CLIENT_A));
+        assertNull(controller.admit(new EmbeddedChannel(), CLIENT_A));
+        assertNotNull(controller.admit(new EmbeddedChannel(), CLIENT_B));
+        assertEquals(2, controller.clients());
+        assertEquals(2, controller.connections());
+
+        // The client is forgotten once its last connection is closed.
+        first.close();
+        assertEquals(1, controller.clients());
+        assertNotNull(controller.admit(new EmbeddedChannel(), CLIENT_A));
+        assertEquals(2, controller.clients());
+    }
+
+    @Test
+    public void testRejectionCountsNothing() {
+        SocksAdmissionController controller = new SocksAdmissionController(Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+        assertNotNull(controller.admit(new EmbeddedChannel(), CLIENT_A));
+        assertNull(controller.admit(new EmbeddedChannel(), CLIENT_A));
+        assertEquals(1, controller.connections());
+        assertEquals(1, controller.handshakes());
+        assertEquals(1, controller.clients());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.bootstrap.Bootstrap;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.ChannelInitializer;
+import io.netty5.channel.EventLoopGroup;
+import io.netty5.channel.MultithreadEventLoopGroup;
+import io.netty5.channel.SimpleChannelInboundHandler;
+import io.netty5.channel.nio.NioHandler;
+import io.netty5.channel.socket.nio.NioDatagramChannel;
+import io.netty5.handler.codec.dns.DatagramDnsQuery;
+import io.netty5.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty5.handler.codec.dns.DatagramDnsResponse;
+import io.netty5.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty5.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty5.handler.codec.dns.DnsRecord;
+import io.netty5.handler.codec.dns.DnsRecordType;
+import io.netty5.handler.codec.dns.DnsSection;
+import io.netty5.resolver.AddressResolver;
+import io.netty5.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SocksDnsCacheTest {
+
+    private static final DnsRecord[] NO_ADDITIONALS = new DnsRecord[0];
+
+    private static EventLoopGroup group;
+    private static Channel dnsServer;
+    private static final AtomicInteger queries = new AtomicInteger();
+
+    /**
+     * Starts a stand-in DNS server which answers every {@code A} query with {@code 10.0.0.1}, for as many seconds as
+     * the first label of the name if it is a number, and every other query with no records.
+     */
+    @BeforeAll
+    public static void startDnsServer() throws Exception {
+        group = new MultithreadEventLoopGroup(1, NioHandler.newFactory());
+        dnsServer = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new DatagramDnsQueryDecoder(), new DatagramDnsResponseEncoder(),
+                                              new StandInDnsHandler());
+                    }
+                })
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).asStage().get();
+    }
+
+    @AfterAll
+    public static void stopDnsServer() throws Exception {
+        if (dnsServer != null) {
+            dnsServer.close().asStage().sync();
+        }
+        group.shutdownGracefully();
+    }
+
+    private static final class StandInDnsHandler extends SimpleChannelInboundHandler<DatagramDnsQuery> {
+        @Override
+        protected void messageReceived(ChannelHandlerContext ctx, DatagramDnsQuery query) {
+            queries.incrementAndGet();
+            final DnsRecord question = query.recordAt(DnsSection.QUESTION);
+            final DatagramDnsResponse response = new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+            response.addRecord(DnsSection.QUESTION, question);
+            if (question.type() == DnsRecordType.A) {
+                final String label = question.name().substring(0, question.name().indexOf('.'));
+                final long ttl = label.chars().allMatch(Character::isDigit)? Long.parseLong(label) : 60;
+                response.addRecord(DnsSection.ANSWER, new DefaultDnsRawRecord(
+                        question.name(), DnsRecordType.A, ttl,
+                        ctx.bufferAllocator().copyOf(new byte[] { 10, 0, 0, 1 })));
+            }
+            ctx.writeAndFlush(response);
+        }
+    }
+
+    private static InetSocketAddress resolve(SocksServer server, String host) throws Exception {
+        AddressResolver<InetSocketAddress> resolver = server.resolverGroup().getResolver(group.next());
+        return resolver.resolve(InetSocketAddress.createUnresolved(host, 80)).asStage().get();
+    }
+
+    @Test
+    public void testSharedAndCachedResolution() throws Exception {
+        SocksServer server = SocksServer.builder()
+                .eventLoopGroups(group, group)
+                .dnsServers((InetSocketAddress) dnsServer.localAddress())
+                .build();
+        try {
+            int before = queries.get();
+            assertEquals(new InetSocketAddress("10.0.0.1", 80), resolve(server, "once.example.com"));
+            int queriesPerResolution = queries.get() - before;
+
+            // Concurrent resolutions of one name are answered by the same queries.
+            before = queries.get();
+            AddressResolver<InetSocketAddress> resolver = server.resolverGroup().getResolver(group.next());
+            List<Future<InetSocketAddress>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(resolver.resolve(InetSocketAddress.createUnresolved("popular.example.com", 80)));
+            }
+            for (Future<InetSocketAddress> future : futures) {
+                assertEquals(new InetSocketAddress("10.0.0.1", 80), future.asStage().get());
+            }
+            assertEquals(queriesPerResolution, queries.get() - before);
+
+            // And then from the cache, until the TTL passes.
+            before = queries.get();
+            resolve(server, "popular.example.com");
+            resolve(server, "1.example.com");
+            assertEquals(queriesPerResolution, queries.get() - before);
+            resolve(server, "1.example.com");
+            assertEquals(queriesPerResolution, queries.get() - before);
+
+            Thread.sleep(1100);
+            resolve(server, "1.example.com");
+            assertEquals(2 * queriesPerResolution, queries.get() - before);
+        } finally {
+            server.close().asStage().sync();
+        }
+    }
+
+    @Test
+    public void testBoundedByMaxEntries() throws Exception {
+        SocksDnsCache cache = new SocksDnsCache(2);
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        cache.cache("a", NO_ADDITIONALS, address, 60, null);
+        cache.cache("b", NO_ADDITIONALS, address, 60, null);
+        cache.cache("c", NO_ADDITIONALS, address, 60, null);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("c", NO_ADDITIONALS));
+
+        // Several addresses of a name are one entry.
+        cache.cache("c", NO_ADDITIONALS, InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }), 60, null);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.get("c", NO_ADDITIONALS).size());
+    }
+
+    @Test
+    public void testEvictsOldestName() throws Exception {
+        SocksDnsCache cache = new SocksDnsCache(2);
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        cache.cache("a", NO_ADDITIONALS, address, 60, null);
+        cache.cache("b", NO_ADDITIONALS, address, 60, null);
+        cache.cache("c", NO_ADDITIONALS, address, 60, null);
+        assertNull(cache.get("a", NO_ADDITIONALS));
+        assertNotNull(cache.get("b", NO_ADDITIONALS));
+
+        // A name added again after it was dropped counts as new.
+        cache.clear("b");
+        cache.cache("b", NO_ADDITIONALS, address, 60, null);
+        cache.cache("d", NO_ADDITIONALS, address, 60, null);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("c", NO_ADDITIONALS));
+        assertNotNull(cache.get("b", NO_ADDITIONALS));
+        assertNotNull(cache.get("d", NO_ADDITIONALS));
+    }
+
+    @Test
+    public void testQueueOfDroppedNamesBounded() throws Exception {
+        SocksDnsCache cache = new SocksDnsCache(2);
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        cache.cache("a", NO_ADDITIONALS, address, 60, null);
+        for (int i = 0; i < 100; i++) {
+            cache.cache("b", NO_ADDITIONALS, address, 60, null);
+            cache.clear("b");
+        }
+        assertNotNull(cache.get("a", NO_ADDITIONALS));
+        assertEquals(1, cache.size());
+        assertTrue(cache.queuedNames() <= 4);
+    }
+
+    @Test
+    public void testNotCached() throws Exception {
+        SocksDnsCache cache = new SocksDnsCache(16);
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        cache.cache("zero-ttl", NO_ADDITIONALS, address, 0, null);
+        cache.cache("failed", NO_ADDITIONALS, new IllegalStateException(), null);
+        assertNull(cache.get("zero-ttl", NO_ADDITIONALS));
+        assertNull(cache.get("failed", NO_ADDITIONALS));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.HandshakeDeadlineTracker;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5InitialRequest;
+import io.netty.contrib.handler.codec.socksx.v5.DefaultSocks5PasswordAuthRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AddressType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5AuthMethod;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ClientEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5Message;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerEncoder;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5ServerHandshakeDecoder;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelOption;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class SocksServerHandlerTest {
+
+    private SocksServer server;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close().asStage().sync();
+        }
+    }
+
+    private EmbeddedChannel newChannel(SocksServerBuilder builder) {
+        server = builder.build();
+        return new EmbeddedChannel(
+                new Socks5ServerHandshakeDecoder(), Socks5ServerEncoder.DEFAULT, new SocksServerHandler(server));
+    }
+
+    private static void writeRequests(EmbeddedChannel channel, Socks5Message... requests) {
+        Buffer buf = preferredAllocator().allocate(64);
+        EmbeddedChannel encoder = new EmbeddedChannel(Socks5ClientEncoder.DEFAULT);
+        for (Socks5Message request : requests) {
+            encoder.writeOutbound(request);
+            try (Buffer encoded = encoder.readOutbound()) {
+                buf.writeBytes(encoded);
+            }
+        }
+        encoder.finish();
+        channel.writeInbound(buf);
+    }
+
+    private static void assertResponse(EmbeddedChannel channel, int... expected) {
+        Buffer response;
+        while ((response = channel.readOutbound()) != null && response.readableBytes() == 0) {
+            response.close();
+        }
+        try (Buffer actual = response) {
+            byte[] bytes = new byte[actual.readableBytes()];
+            actual.readBytes(bytes, 0, bytes.length);
+            byte[] expectedBytes = new byte[expected.length];
+            for (int i = 0; i < expected.length; i ++) {
+                expectedBytes[i] = (byte) expected[i];
+            }
+            assertArrayEquals(expectedBytes, bytes);
+        }
+    }
+
+    private static void assertClosed(EmbeddedChannel channel) {
+        Buffer buf;
+        while ((buf = channel.readOutbound()) != null) {
+            buf.close();
+        }
+        assertFalse(channel.isActive());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void testUnacceptedAuthMethod() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder());
+        writeRequests(channel, new DefaultSocks5InitialRequest(Socks5AuthMethod.PASSWORD));
+        assertResponse(channel, 5, 0xFF);
+        assertClosed(channel);
+    }
+
+    @Test
+    public void testAuthenticationFailure() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder().authenticator(
+                (ch, username, password) -> ch.executor().newSucceededFuture("secret".equals(password))));
+        writeRequests(channel,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH, Socks5AuthMethod.PASSWORD),
+                new DefaultSocks5PasswordAuthRequest("user", "wrong"),
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 2);
+        assertResponse(channel, 1, 1);
+        assertClosed(channel);
+    }
+
+    @Test
+    public void testAsyncAuthenticationAndForbiddenRequest() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder()
+                .authenticator((ch, username, password) -> ch.executor().submit(() -> "secret".equals(password)))
+                .authorizer((ch, username, request) -> ch.executor().newSucceededFuture(!"user".equals(username))));
+        writeRequests(channel,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.PASSWORD),
+                new DefaultSocks5PasswordAuthRequest("user", "secret"),
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 2);
+        assertTrue(channel.isActive());
+
+        // Completes the authentication, and then the command request that was received before its result.
+        channel.runPendingTasks();
+        assertResponse(channel, 1, 0);
+        assertResponse(channel, 5, 2, 0, 1, 0, 0, 0, 0, 0, 0);
+        assertClosed(channel);
+    }
+
+    @Test
+    public void testUnsupportedCommand() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder());
+        writeRequests(channel,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH),
+                new DefaultSocks5CommandRequest(Socks5CommandType.BIND, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 0);
+        assertResponse(channel, 5, 7, 0, 1, 0, 0, 0, 0, 0, 0);
+        assertClosed(channel);
+    }
+
+    @Test
+    public void testHandshakeTimeout() throws Exception {
+        EmbeddedChannel channel = newChannel(SocksServer.builder().handshakeTimeoutMillis(20));
+        writeRequests(channel, new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH));
+        assertResponse(channel, 5, 0);
+        assertTrue(channel.isActive());
+
+        Thread.sleep(50);
+        channel.runScheduledPendingTasks();
+        assertClosed(channel);
+    }
+
+    @Test
+    public void testHandshakeTimeoutCancelledByCommand() throws Exception {
+        // The authorization never completes, so only the handshake timeout could close the connection.
+        EmbeddedChannel channel = newChannel(SocksServer.builder().handshakeTimeoutMillis(20)
+                .authorizer((ch, username, request) -> ch.executor().<Boolean>newPromise().asFuture()));
+        writeRequests(channel,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH),
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 0);
+        assertEquals(0, HandshakeDeadlineTracker.get(channel.executor()).armedDeadlines());
+
+        Thread.sleep(50);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.isActive());
+        channel.close();
+    }
+
+    @Test
+    public void testStopReadingOnceCommandIsReceived() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder()
+                .authorizer((ch, username, request) -> ch.executor().<Boolean>newPromise().asFuture()));
+        writeRequests(channel, new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH));
+        assertTrue(channel.getOption(ChannelOption.AUTO_READ));
+        writeRequests(channel,
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 0);
+        assertFalse(channel.getOption(ChannelOption.AUTO_READ));
+
+        // Data that was already read is kept for the destination.
+        channel.writeInbound(preferredAllocator().allocate(SocksServerHandler.MAX_PENDING_BYTES).fill((byte) 1)
+                                     .writerOffset(SocksServerHandler.MAX_PENDING_BYTES));
+        assertTrue(channel.isActive());
+        channel.close();
+    }
+
+    @Test
+    public void testTooMuchPendingData() {
+        EmbeddedChannel channel = newChannel(SocksServer.builder()
+                .authorizer((ch, username, request) -> ch.executor().<Boolean>newPromise().asFuture()));
+        writeRequests(channel,
+                new DefaultSocks5InitialRequest(Socks5AuthMethod.NO_AUTH),
+                new DefaultSocks5CommandRequest(Socks5CommandType.CONNECT, Socks5AddressType.IPv4, "10.0.0.1", 80));
+        assertResponse(channel, 5, 0);
+
+        channel.writeInbound(preferredAllocator().allocate(SocksServerHandler.MAX_PENDING_BYTES).fill((byte) 1)
+                                     .writerOffset(SocksServerHandler.MAX_PENDING_BYTES));
+        assertTrue(channel.isActive());
+        channel.writeInbound(preferredAllocator().copyOf(new byte[] { 1 }));
+        assertClosed(channel);
+    }
+
+    /**
+     * Connects to a {@link SocksServer} listening on the loopback address, and sends a {@code BIND} request which
+     * only accepts a peer from the specified address.
+     *
+     * @return the connection to the server, whose first reply has been read into {@code listenAddress}
+     */
+    private Socket bind(SocksServerBuilder builder, InetAddress peerAddress, InetSocketAddress[] listenAddress)
+            throws Exception {
+        server = builder.transport(SocksTransport.NIO).bindEnabled(true)
+                        .localAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).build();
+        server.bind().asStage().sync();
+        Socket client = new Socket();
+        client.setSoTimeout(5000);
+        client.connect(server.localAddress());
+        OutputStream out = client.getOutputStream();
+        out.write(new byte[] { 5, 1, 0 });
+        assertArrayEquals(new byte[] { 5, 0 }, read(client.getInputStream(), 2));
+
+        byte[] peer = peerAddress.getAddress();
+        out.write(new byte[] { 5, 2, 0, 1, peer[0], peer[1], peer[2], peer[3], 0, 0 });
+        listenAddress[0] = readReply(client.getInputStream(), 0);
+        return client;
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(in).readFully(bytes);
+        return bytes;
+    }
+
+    private static InetSocketAddress readReply(InputStream in, int expectedStatus) throws IOException {
+        byte[] reply = read(in, 10);
+        assertEquals(5, reply[0]);
+        assertEquals(expectedStatus, reply[1]);
+        assertEquals(1, reply[3]);
+        byte[] address = { reply[4], reply[5], reply[6], reply[7] };
+        return new InetSocketAddress(InetAddress.getByAddress(address), (reply[8] & 0xff) << 8 | reply[9] & 0xff);
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        InetSocketAddress[] listenAddress = new InetSocketAddress[1];
+        try (Socket client = bind(SocksServer.builder(), InetAddress.getLoopbackAddress(), listenAddress);
+             Socket peer = new Socket()) {
+            assertEquals(InetAddress.getLoopbackAddress(), listenAddress[0].getAddress());
+            peer.setSoTimeout(5000);
+            peer.connect(listenAddress[0]);
+
+            // The second reply names the peer, and the connection is relayed from then on.
+            InetSocketAddress peerAddress = readReply(client.getInputStream(), 0);
+            assertEquals(peer.getLocalSocketAddress(), peerAddress);
+            peer.getOutputStream().write(new byte[] { 1, 2, 3 });
+            assertArrayEquals(new byte[] { 1, 2, 3 }, read(client.getInputStream(), 3));
+            client.getOutputStream().write(new byte[] { 4, 5 });
+            assertArrayEquals(new byte[] { 4, 5 }, read(peer.getInputStream(), 2));
+        }
+    }
+
+    @Test
+    public void testBindRefusesOtherPeer() throws Exception {
+        InetSocketAddress[] listenAddress = new InetSocketAddress[1];
+        InetAddress expectedPeer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        try (Socket client = bind(SocksServer.builder().connectTimeoutMillis(1000), expectedPeer, listenAddress);
+             Socket peer = new Socket()) {
+            peer.setSoTimeout(5000);
+            peer.connect(listenAddress[0]);
+            // The peer is disconnected without a word, and the client is told once nobody else connected in time.
+            assertEquals(-1, peer.getInputStream().read());
+            readReply(client.getInputStream(), 4);
+            assertEquals(-1, client.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void testBindTimeout() throws Exception {
+        InetSocketAddress[] listenAddress = new InetSocketAddress[1];
+        try (Socket client = bind(SocksServer.builder().connectTimeoutMillis(100), InetAddress.getLoopbackAddress(),
+                                  listenAddress)) {
+            readReply(client.getInputStream(), 4);
+            assertEquals(-1, client.getInputStream().read());
+
+            // Nothing listens on the address of the first reply anymore.
+            try (Socket peer = new Socket()) {
+                assertThrows(IOException.class, () -> peer.connect(listenAddress[0], 1000));
+            }
+        }
+    }
+
+    @Test
+    public void testSplice() throws Exception {
+        assumeTrue(SocksTransport.EPOLL.isAvailable(), "splice(2) needs the epoll transport");
+        // Larger than the socket buffers, so that splicing has to wait for the other side.
+        byte[] upstream = new byte[1024 * 1024];
+        byte[] downstream = new byte[1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(upstream);
+        ThreadLocalRandom.current().nextBytes(downstream);
+
+        server = SocksServer.builder().transport(SocksTransport.EPOLL).spliceEnabled(true)
+                            .localAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).build();
+        server.bind().asStage().sync();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (ServerSocket destination = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket()) {
+            destination.setSoTimeout(5000);
+            client.setSoTimeout(5000);
+            client.connect(server.localAddress());
+            OutputStream out = client.getOutputStream();
+            out.write(new byte[] { 5, 1, 0 });
+            assertArrayEquals(new byte[] { 5, 0 }, read(client.getInputStream(), 2));
+            int port = destination.getLocalPort();
+            out.write(new byte[] { 5, 1, 0, 1, 127, 0, 0, 1, (byte) (port >>> 8), (byte) port });
+            try (Socket accepted = destination.accept()) {
+                accepted.setSoTimeout(5000);
+                readReply(client.getInputStream(), 0);
+
+                // Both directions at once.
+                Future<?> written = executor.submit(() -> {
+                    out.write(upstream);
+                    return null;
+                });
+                Future<?> writtenBack = executor.submit(() -> {
+                    accepted.getOutputStream().write(downstream);
+                    return null;
+                });
+                assertArrayEquals(upstream, read(accepted.getInputStream(), upstream.length));
+                assertArrayEquals(downstream, read(client.getInputStream(), downstream.length));
+                written.get(5, TimeUnit.SECONDS);
+                writtenBack.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
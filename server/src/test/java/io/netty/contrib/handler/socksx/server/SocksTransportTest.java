@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty5.channel.socket.nio.NioServerSocketChannel;
+import io.netty5.channel.socket.nio.NioSocketChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SocksTransportTest {
+
+    @Test
+    public void testNioIsAlwaysAvailable() {
+        assertTrue(SocksTransport.NIO.isAvailable());
+        assertSame(NioServerSocketChannel.class, SocksTransport.NIO.serverChannelClass());
+        assertSame(NioSocketChannel.class, SocksTransport.NIO.socketChannelClass());
+        assertNotNull(SocksTransport.NIO.newIoHandlerFactory());
+    }
+
+    @Test
+    public void testBestIsAvailable() {
+        SocksTransport best = SocksTransport.best();
+        assertTrue(best.isAvailable());
+        assertNotNull(best.serverChannelClass());
+        assertNotNull(best.socketChannelClass());
+    }
+
+    @Test
+    public void testUnavailableTransport() {
+        for (SocksTransport transport : SocksTransport.values()) {
+            if (!transport.isAvailable()) {
+                assertThrows(IllegalStateException.class, transport::socketChannelClass);
+                assertThrows(IllegalStateException.class, () -> SocksServer.builder().transport(transport));
+            }
+        }
+    }
+}
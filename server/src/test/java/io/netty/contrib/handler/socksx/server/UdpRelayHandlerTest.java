@@ -0,0 +1,173 @@
+/*
+ * Copyright 2021 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.contrib.handler.socksx.server;
+
+import io.netty.contrib.handler.codec.socksx.SocksMessage;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5BinaryAddress;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandRequest;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5CommandType;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacket;
+import io.netty.contrib.handler.codec.socksx.v5.Socks5UdpPacketEncoder;
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.Channel;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import io.netty5.channel.socket.DatagramPacket;
+import io.netty5.resolver.DefaultAddressResolverGroup;
+import io.netty5.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.netty5.buffer.DefaultBufferAllocators.preferredAllocator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UdpRelayHandlerTest {
+
+    private static final InetSocketAddress RELAY = new InetSocketAddress("127.0.0.1", 1080);
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 40000);
+    private static final InetSocketAddress DNS = new InetSocketAddress("10.0.0.53", 53);
+
+    private static Buffer newData() {
+        return preferredAllocator().copyOf(new byte[] { 1, 2, 3 });
+    }
+
+    private static DatagramPacket fromClient(InetSocketAddress destination, int frag) {
+        EmbeddedChannel encoder = new EmbeddedChannel(Socks5UdpPacketEncoder.DEFAULT);
+        encoder.writeOutbound(new Socks5UdpPacket(
+                newData(), frag, Socks5BinaryAddress.valueOf(destination.getAddress()), destination.getPort(),
+                RELAY, CLIENT));
+        encoder.finish();
+        try (DatagramPacket encoded = encoder.readOutbound()) {
+            return new DatagramPacket(encoded.content().split(), RELAY, CLIENT);
+        }
+    }
+
+    private static UdpRelayHandler newHandler(SocksAuthorizer authorizer, InetSocketAddress clientAddress) {
+        return new UdpRelayHandler(new EmbeddedChannel(), "user", authorizer, clientAddress,
+                                   DefaultAddressResolverGroup.INSTANCE, 60000, 16);
+    }
+
+    private static void assertPayload(Buffer payload) {
+        assertEquals(3, payload.readableBytes());
+        assertEquals(1, payload.readByte());
+        assertEquals(2, payload.readByte());
+        assertEquals(3, payload.readByte());
+    }
+
+    @Test
+    public void testRelayBothWays() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                newHandler(SocksAuthorizer.ALLOW_ALL, new InetSocketAddress(CLIENT.getAddress(), 0)));
+        channel.writeInbound(fromClient(DNS, 0));
+        try (DatagramPacket request = channel.readOutbound()) {
+            assertEquals(DNS, request.recipient());
+            assertPayload(request.content());
+        }
+
+        channel.writeInbound(new DatagramPacket(newData(), RELAY, DNS));
+        try (DatagramPacket response = channel.readOutbound()) {
+            assertEquals(CLIENT, response.recipient());
+            Buffer content = response.content();
+            assertEquals(0, content.readShort());
+            assertEquals(0, content.readByte());
+            assertEquals(1, content.readByte());
+            assertEquals(0x0a000035, content.readInt());
+            assertEquals(53, content.readUnsignedShort());
+            assertPayload(content);
+        }
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testDropUnknownSenderAndFragment() {
+        EmbeddedChannel channel = new EmbeddedChannel(newHandler(SocksAuthorizer.ALLOW_ALL, CLIENT));
+        channel.writeInbound(new DatagramPacket(newData(), RELAY, DNS));
+        channel.writeInbound(fromClient(DNS, 1));
+        assertNull(channel.readOutbound());
+        assertNull(channel.readInbound());
+        assertTrue(channel.isActive());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testAuthorizeNewFlows() {
+        List<Socks5CommandRequest> requests = new ArrayList<>();
+        InetSocketAddress forbidden = new InetSocketAddress("10.0.0.1", 80);
+        EmbeddedChannel channel = new EmbeddedChannel(newHandler(new SocksAuthorizer() {
+            @Override
+            public Future<Boolean> authorize(Channel channel, String username, SocksMessage request) {
+                // Only CONNECT requests to the forbidden address are denied.
+                Socks5CommandRequest command = (Socks5CommandRequest) request;
+                assertEquals("user", username);
+                requests.add(command);
+                return channel.executor().newSucceededFuture(
+                        command.type() != Socks5CommandType.CONNECT || command.dstPort() != forbidden.getPort());
+            }
+        }, CLIENT));
+
+        channel.writeInbound(fromClient(forbidden, 0));
+        assertNull(channel.readOutbound());
+        channel.writeInbound(fromClient(DNS, 0));
+        channel.writeInbound(fromClient(DNS, 0));
+        for (int i = 0; i < 2; i ++) {
+            try (DatagramPacket request = channel.readOutbound()) {
+                assertEquals(DNS, request.recipient());
+            }
+        }
+        assertNull(channel.readOutbound());
+
+        // Only the first datagram to each destination is authorized, as a CONNECT request to the destination.
+        assertEquals(2, requests.size());
+        assertEquals("10.0.0.1", requests.get(0).dstAddr());
+        assertEquals(Socks5CommandType.CONNECT, requests.get(1).type());
+        assertEquals("10.0.0.53", requests.get(1).dstAddr());
+        assertEquals(53, requests.get(1).dstPort());
+
+        // The denied destination did not become a flow, so it cannot send to the client either.
+        channel.writeInbound(new DatagramPacket(newData(), RELAY, forbidden));
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlowTableEviction() {
+        UdpFlowTable flows = new UdpFlowTable(100, 2);
+        InetSocketAddress a = new InetSocketAddress("10.0.0.1", 53);
+        InetSocketAddress b = new InetSocketAddress("10.0.0.2", 53);
+        InetSocketAddress c = new InetSocketAddress("10.0.0.3", 53);
+
+        flows.touch(a, 0);
+        flows.touch(b, 50);
+        assertTrue(flows.touchIfActive(a, 60));
+        // Evicts b, the least recently used flow.
+        flows.touch(c, 70);
+        assertEquals(2, flows.size());
+        assertFalse(flows.touchIfActive(b, 80));
+
+        // Only c is idle for less than the timeout.
+        flows.evictIdle(165);
+        assertEquals(1, flows.size());
+        assertFalse(flows.touchIfActive(a, 165));
+        assertFalse(flows.touchIfActive(c, 170));
+        assertEquals(0, flows.size());
+    }
+}